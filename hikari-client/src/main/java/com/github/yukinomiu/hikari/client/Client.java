@@ -1,17 +1,24 @@
 package com.github.yukinomiu.hikari.client;
 
+import com.github.yukinomiu.hikari.common.HikariAcceptHandle;
+import com.github.yukinomiu.hikari.common.HikariEventLoop;
+import com.github.yukinomiu.hikari.common.HikariEventLoopGroup;
+import com.github.yukinomiu.hikari.common.HikariLoopMonitor;
+import com.github.yukinomiu.hikari.common.HikariResolver;
 import com.github.yukinomiu.hikari.common.LifeCycle;
+import com.github.yukinomiu.hikari.common.util.SocketUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Yukinomiu
@@ -21,8 +28,13 @@ public class Client implements LifeCycle {
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
     private final ClientConfig clientConfig;
 
-    private SelectionKey mainKey;
-    private Thread clientThread;
+    private HikariEventLoopGroup workerGroup;
+    private HikariEventLoop bossLoop;
+    private HikariLoopMonitor loopMonitor;
+    private HikariResolver resolver;
+    private ClientRouter router;
+    private List<ServerSocketChannel> serverChannelList;
+    private DatagramChannel dnsChannel;
 
     public Client(final ClientConfig clientConfig) {
         this.clientConfig = clientConfig;
@@ -43,99 +55,130 @@ public class Client implements LifeCycle {
     private void init() throws IOException {
         logger.info("init resource");
 
-        // open selector and channel
-        Selector selector = Selector.open();
+        // split routing
+        final String routeFile = clientConfig.getRouteFile();
+        if (routeFile != null && !routeFile.isEmpty()) {
+            router = new ClientRouter(clientConfig);
+        }
+
+        // resolver, used by local dns resolve and direct routes
+        if (clientConfig.getLocalDnsResolve() || router != null) {
+            resolver = new HikariResolver("client-resolver", clientConfig);
+        }
+
+        // worker loops
+        final int workerCount = HikariEventLoopGroup.resolveLoopCount(clientConfig.getWorkerCount());
+        workerGroup = new HikariEventLoopGroup("client-worker", workerCount, clientConfig, loop -> new ClientHandler(clientConfig, resolver, router, loop));
+
+        String listenAddress = clientConfig.getListenAddress();
+        Integer listenPort = clientConfig.getListenPort();
+        serverChannelList = new ArrayList<>();
+
+        final Boolean reusePort = clientConfig.getReusePort();
+        if (reusePort != null && reusePort) {
+            // one listen channel per worker, kernel spreads the connections
+            for (HikariEventLoop workerLoop : workerGroup.loops()) {
+                listen(listenAddress, listenPort, true, workerLoop.getSelector());
+            }
+            logger.info("SO_REUSEPORT enabled, {} listen channels", workerCount);
+        }
+        else {
+            // boss loop
+            bossLoop = new HikariEventLoop("client-boss", loop -> new HikariAcceptHandle(workerGroup), clientConfig);
+            listen(listenAddress, listenPort, false, bossLoop.getSelector());
+        }
+
+        // tunneled dns forwarder
+        final Integer dnsListenPort = clientConfig.getDnsListenPort();
+        if (dnsListenPort != null) {
+            listenDns(listenAddress, dnsListenPort, workerGroup.next());
+        }
+
+        // watchdog and stats
+        loopMonitor = new HikariLoopMonitor("client-monitor", clientConfig);
+        for (HikariEventLoop workerLoop : workerGroup.loops()) {
+            loopMonitor.watch(workerLoop);
+        }
+        if (bossLoop != null) {
+            loopMonitor.watch(bossLoop);
+        }
+    }
+
+    private void listen(final String listenAddress,
+                        final Integer listenPort,
+                        final boolean reusePort,
+                        final Selector selector) throws IOException {
+        // open channel
         ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
         serverSocketChannel.configureBlocking(false);
+        serverChannelList.add(serverSocketChannel);
+
+        if (reusePort) {
+            SocketUtil.enableReusePort(serverSocketChannel);
+        }
 
         // bind address
-        String listenAddress = clientConfig.getListenAddress();
-        Integer listenPort = clientConfig.getListenPort();
         SocketAddress socketAddress = new InetSocketAddress(listenAddress, listenPort);
         serverSocketChannel.bind(socketAddress);
         logger.info("listen on {}:{}", listenAddress, listenPort);
 
         // register
-        mainKey = serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    private void listenDns(final String listenAddress,
+                           final Integer dnsListenPort,
+                           final HikariEventLoop workerLoop) throws IOException {
+        // open channel
+        dnsChannel = DatagramChannel.open();
+        dnsChannel.configureBlocking(false);
+
+        // bind address
+        SocketAddress socketAddress = new InetSocketAddress(listenAddress, dnsListenPort);
+        dnsChannel.bind(socketAddress);
+        logger.info("dns forwarder listen on {}:{}", listenAddress, dnsListenPort);
 
-        // init thread
-        clientThread = new Thread(new ClientMainLoop(mainKey));
+        // register, queries and their tunnel stay on one worker
+        SelectionKey dnsKey = dnsChannel.register(workerLoop.getSelector(), SelectionKey.OP_READ);
+        dnsKey.attach(new ClientDnsContext(dnsKey, clientConfig.getBufferSize(), clientConfig));
     }
 
     private void destroy() throws IOException {
         logger.info("destroy resource");
 
-        mainKey.cancel();
-        mainKey.selector().close();
-        mainKey.channel().close();
+        if (dnsChannel != null) {
+            dnsChannel.close();
+        }
+
+        for (ServerSocketChannel serverChannel : serverChannelList) {
+            serverChannel.close();
+        }
+
+        if (bossLoop != null) {
+            bossLoop.close();
+        }
+        workerGroup.close();
     }
 
     private void run() {
-        clientThread.start();
+        workerGroup.start();
+        if (bossLoop != null) {
+            bossLoop.start();
+        }
+        loopMonitor.start();
     }
 
     private void stop() {
-        clientThread.interrupt();
-    }
-
-    private class ClientMainLoop implements Runnable {
-        private final SelectionKey selectionKey;
-
-        private ClientMainLoop(final SelectionKey selectionKey) {
-            this.selectionKey = selectionKey;
+        loopMonitor.stop();
+        if (bossLoop != null) {
+            bossLoop.stop();
         }
-
-        @Override
-        public void run() {
-            logger.info("client thread run...");
-
-            final ClientHandler handler = new ClientHandler(clientConfig);
-            final Selector selector = selectionKey.selector();
-
-            // loop
-            while (true) {
-                try {
-                    int count = selector.select();
-
-                    if (Thread.currentThread().isInterrupted()) {
-                        logger.info("client thread exit loop");
-                        break;
-                    }
-
-                    if (count == 0) {
-                        continue;
-                    }
-
-                    Set<SelectionKey> keys = selector.selectedKeys();
-                    Iterator<SelectionKey> iterator = keys.iterator();
-                    while (iterator.hasNext()) {
-                        SelectionKey key = iterator.next();
-                        iterator.remove();
-
-                        if (!key.isValid()) {
-                            key.cancel();
-                            continue;
-                        }
-
-                        if (key.isReadable()) {
-                            handler.handleRead(key);
-                        }
-                        else if (key.isWritable()) {
-                            handler.handleWrite(key);
-                        }
-                        else if (key.isAcceptable()) {
-                            handler.handleAccept(key);
-                        }
-                        else if (key.isConnectable()) {
-                            handler.handleConnect(key);
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.error("client main loop exception", e);
-                }
-            }
-
-            logger.info("client thread stop");
+        workerGroup.stop();
+        if (resolver != null) {
+            resolver.stop();
+        }
+        if (router != null) {
+            router.stop();
         }
     }
 }
@@ -0,0 +1,90 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.HikariBond;
+import com.github.yukinomiu.hikari.common.HikariStatus;
+import com.github.yukinomiu.hikari.common.PacketContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * hikari connection joining the bond of a local connection, carries bond frames once joined
+ * <p>
+ * one failing before it joined leaves the bond with fewer members
+ * <p>
+ * Yukinomiu
+ * 2018/2/18
+ */
+public class ClientBondContext extends ClientContext {
+    private static final Logger logger = LoggerFactory.getLogger(ClientBondContext.class);
+    private boolean closed = false;
+    private final PacketContext packetContext;
+
+    private HikariStatus status;
+    private final ClientLocalContext localContext;
+    private final HikariBond bond;
+
+    public ClientBondContext(final SelectionKey key,
+                             final Integer bufferSize,
+                             final HikariStatus status,
+                             final ClientLocalContext localContext,
+                             final HikariBond bond) {
+        super(ClientContextType.BOND, key, bufferSize);
+        packetContext = new PacketContext(bufferSize);
+        this.status = status;
+        this.localContext = localContext;
+        this.bond = bond;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancelTimeout();
+
+        final SelectionKey key = key();
+        if (key != null) {
+            key.cancel();
+
+            try {
+                SocketChannel socketChannel = (SocketChannel) key.channel();
+                socketChannel.close();
+            } catch (IOException e) {
+                logger.warn("close bond socket channel exception, msg: {}", e.getMessage());
+            }
+        }
+
+        if (status == HikariStatus.HIKARI_BOND) {
+            bond.close();
+        }
+    }
+
+    public PacketContext getPacketContext() {
+        return packetContext;
+    }
+
+    public HikariStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(HikariStatus status) {
+        this.status = status;
+    }
+
+    public ClientLocalContext getLocalContext() {
+        return localContext;
+    }
+
+    public HikariBond getBond() {
+        return bond;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,225 @@
+package com.github.yukinomiu.hikari.client;
+
+/**
+ * path compressed binary trie of cidr blocks, longest prefix match
+ * <p>
+ * nodes only exist where blocks branch. compile() adds a table indexed by the first 16 bits holding the route
+ * of the shorter blocks and the node to go on from, so lookups skip the top of the trie
+ * <p>
+ * Yukinomiu
+ * 2018/2/17
+ */
+public final class ClientCidrTrie {
+    private static final int STRIDE_BITS = 16;
+
+    private final int addressBits;
+    private Node root;
+    private int size;
+
+    // compiled top of the trie
+    private Node[] strideNodes;
+    private ClientRoute[] strideRoutes;
+
+    public ClientCidrTrie(final int addressBits) {
+        this.addressBits = addressBits;
+    }
+
+    /**
+     * a block put again replaces the route of the earlier one
+     */
+    public void put(final byte[] address, final int prefixLength, final ClientRoute route) {
+        if (address.length << 3 != addressBits || prefixLength < 0 || prefixLength > addressBits) {
+            throw new IllegalArgumentException(String.format("bad cidr block, prefix length: %d", prefixLength));
+        }
+        final byte[] key = mask(address, prefixLength);
+        strideNodes = null;
+        strideRoutes = null;
+
+        if (root == null) {
+            root = new Node(key, prefixLength, route);
+            size++;
+            return;
+        }
+
+        Node parent = null;
+        Node node = root;
+        while (true) {
+            final int common = commonPrefixLength(node.key, key, Math.min(node.length, prefixLength));
+
+            if (common == node.length) {
+                if (common == prefixLength) {
+                    if (node.route == null) {
+                        size++;
+                    }
+                    node.route = route;
+                    return;
+                }
+
+                // descend
+                final Node child = bit(key, node.length) == 0 ? node.zero : node.one;
+                if (child == null) {
+                    setChild(node, new Node(key, prefixLength, route));
+                    size++;
+                    return;
+                }
+
+                parent = node;
+                node = child;
+                continue;
+            }
+
+            // split, the new block or a branch takes the place of the node
+            final Node replacement;
+            if (common == prefixLength) {
+                replacement = new Node(key, prefixLength, route);
+                setChild(replacement, node);
+            }
+            else {
+                replacement = new Node(mask(key, common), common, null);
+                setChild(replacement, node);
+                setChild(replacement, new Node(key, prefixLength, route));
+            }
+            size++;
+
+            if (parent == null) {
+                root = replacement;
+            }
+            else {
+                setChild(parent, replacement);
+            }
+            return;
+        }
+    }
+
+    /**
+     * builds the stride table, blocks put later drop it again
+     */
+    public void compile() {
+        final int count = 1 << STRIDE_BITS;
+        final Node[] nodes = new Node[count];
+        final ClientRoute[] routes = new ClientRoute[count];
+
+        final byte[] address = new byte[addressBits >>> 3];
+        for (int i = 0; i < count; i++) {
+            address[0] = (byte) (i >>> 8);
+            address[1] = (byte) i;
+
+            ClientRoute route = null;
+            Node node = root;
+            while (node != null && node.length < STRIDE_BITS) {
+                if (!matches(node.key, address, node.length)) {
+                    node = null;
+                    break;
+                }
+                if (node.route != null) {
+                    route = node.route;
+                }
+
+                node = bit(address, node.length) == 0 ? node.zero : node.one;
+            }
+
+            nodes[i] = node;
+            routes[i] = route;
+        }
+
+        strideNodes = nodes;
+        strideRoutes = routes;
+    }
+
+    /**
+     * route of the longest block containing the address, null when none does
+     */
+    public ClientRoute lookup(final byte[] address) {
+        ClientRoute route = null;
+
+        Node node = root;
+        if (strideNodes != null) {
+            final int index = ((address[0] & 0xFF) << 8) | (address[1] & 0xFF);
+            route = strideRoutes[index];
+            node = strideNodes[index];
+        }
+
+        while (node != null && matches(node.key, address, node.length)) {
+            if (node.route != null) {
+                route = node.route;
+            }
+            if (node.length == addressBits) {
+                break;
+            }
+
+            node = bit(address, node.length) == 0 ? node.zero : node.one;
+        }
+
+        return route;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static void setChild(final Node parent, final Node child) {
+        if (bit(child.key, parent.length) == 0) {
+            parent.zero = child;
+        }
+        else {
+            parent.one = child;
+        }
+    }
+
+    private static int bit(final byte[] address, final int index) {
+        return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    private static byte[] mask(final byte[] address, final int prefixLength) {
+        final byte[] masked = new byte[address.length];
+        final int fullBytes = prefixLength >>> 3;
+        System.arraycopy(address, 0, masked, 0, fullBytes);
+
+        final int restBits = prefixLength & 7;
+        if (restBits != 0) {
+            masked[fullBytes] = (byte) (address[fullBytes] & (0xFF00 >>> restBits));
+        }
+
+        return masked;
+    }
+
+    private static boolean matches(final byte[] key, final byte[] address, final int length) {
+        final int fullBytes = length >>> 3;
+        for (int i = 0; i < fullBytes; i++) {
+            if (key[i] != address[i]) {
+                return false;
+            }
+        }
+
+        final int restBits = length & 7;
+        return restBits == 0 || ((key[fullBytes] ^ address[fullBytes]) & (0xFF00 >>> restBits) & 0xFF) == 0;
+    }
+
+    private static int commonPrefixLength(final byte[] a, final byte[] b, final int maxLength) {
+        int length = 0;
+        for (int i = 0; length < maxLength; i++) {
+            final int diff = (a[i] ^ b[i]) & 0xFF;
+            if (diff != 0) {
+                length += Integer.numberOfLeadingZeros(diff) - 24;
+                break;
+            }
+            length += 8;
+        }
+
+        return Math.min(length, maxLength);
+    }
+
+    private static final class Node {
+        private final byte[] key;
+        private final int length;
+        private ClientRoute route;
+        private Node zero;
+        private Node one;
+
+        private Node(final byte[] key, final int length, final ClientRoute route) {
+            this.key = key;
+            this.length = length;
+            this.route = route;
+        }
+    }
+}
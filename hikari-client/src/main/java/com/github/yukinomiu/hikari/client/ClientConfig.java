@@ -16,6 +16,29 @@ public class ClientConfig extends HikariConfig {
     private String serverAddress;
     private List<Integer> serverPortList;
     private String privateKey;
+    private Integer workerCount;
+    private Boolean reusePort;
+    private Integer dnsListenPort;
+    private Boolean fastOpen;
+
+    // hikari version of the requests, 2 adds option negotiation and falls back to 1 against older servers.
+    // 1 is for servers without mux, bond and fast open, none of them is used
+    private Integer protocolVersion;
+
+    // pre-connected server sockets
+    private Integer serverPoolSize;
+    private Integer serverPoolLifetime;
+
+    // streams share this many server connections per loop, 0 disables
+    private Integer muxConnections;
+
+    // a tunneled stream is striped over this many server connections when mux is off, below 2 disables
+    private Integer bondConnections;
+
+    // split routing
+    private String routeFile;
+    private String routeDefault;
+    private Integer routeReloadInterval;
 
     public String getListenAddress() {
         return listenAddress;
@@ -64,4 +87,100 @@ public class ClientConfig extends HikariConfig {
     public void setPrivateKey(String privateKey) {
         this.privateKey = privateKey;
     }
+
+    public Integer getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(Integer workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    public Boolean getReusePort() {
+        return reusePort;
+    }
+
+    public void setReusePort(Boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    public Integer getDnsListenPort() {
+        return dnsListenPort;
+    }
+
+    public void setDnsListenPort(Integer dnsListenPort) {
+        this.dnsListenPort = dnsListenPort;
+    }
+
+    public String getRouteFile() {
+        return routeFile;
+    }
+
+    public void setRouteFile(String routeFile) {
+        this.routeFile = routeFile;
+    }
+
+    public String getRouteDefault() {
+        return routeDefault;
+    }
+
+    public void setRouteDefault(String routeDefault) {
+        this.routeDefault = routeDefault;
+    }
+
+    public Integer getRouteReloadInterval() {
+        return routeReloadInterval;
+    }
+
+    public void setRouteReloadInterval(Integer routeReloadInterval) {
+        this.routeReloadInterval = routeReloadInterval;
+    }
+
+    public Boolean getFastOpen() {
+        return fastOpen;
+    }
+
+    public void setFastOpen(Boolean fastOpen) {
+        this.fastOpen = fastOpen;
+    }
+
+    public Integer getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public void setProtocolVersion(Integer protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    public Integer getServerPoolSize() {
+        return serverPoolSize;
+    }
+
+    public void setServerPoolSize(Integer serverPoolSize) {
+        this.serverPoolSize = serverPoolSize;
+    }
+
+    public Integer getServerPoolLifetime() {
+        return serverPoolLifetime;
+    }
+
+    public void setServerPoolLifetime(Integer serverPoolLifetime) {
+        this.serverPoolLifetime = serverPoolLifetime;
+    }
+
+    public Integer getMuxConnections() {
+        return muxConnections;
+    }
+
+    public void setMuxConnections(Integer muxConnections) {
+        this.muxConnections = muxConnections;
+    }
+
+    public Integer getBondConnections() {
+        return bondConnections;
+    }
+
+    public void setBondConnections(Integer bondConnections) {
+        this.bondConnections = bondConnections;
+    }
 }
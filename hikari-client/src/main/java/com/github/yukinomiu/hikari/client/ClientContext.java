@@ -1,6 +1,7 @@
 package com.github.yukinomiu.hikari.client;
 
 import com.github.yukinomiu.hikari.common.HikariContext;
+import com.github.yukinomiu.hikari.common.HikariTimer;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
@@ -12,9 +13,15 @@ import java.nio.channels.SelectionKey;
 public abstract class ClientContext implements HikariContext {
 
     private final ClientContextType type;
-    private final SelectionKey key;
+    private SelectionKey key;
     private final ByteBuffer writeBuffer;
 
+    // pending handshake or connect timeout, only touched by the owner loop
+    private HikariTimer.Timeout timeout;
+
+    // server a hikari connection goes to, null for local and direct connections
+    private ClientServerState server;
+
     protected ClientContext(final ClientContextType type, final SelectionKey key, final int bufferSize) {
         this.type = type;
         this.key = key;
@@ -26,6 +33,11 @@ public abstract class ClientContext implements HikariContext {
         return key;
     }
 
+    @Override
+    public final void updateKey(final SelectionKey key) {
+        this.key = key;
+    }
+
     @Override
     public final ByteBuffer writeBuffer() {
         return writeBuffer;
@@ -34,4 +46,24 @@ public abstract class ClientContext implements HikariContext {
     public ClientContextType getType() {
         return type;
     }
+
+    public final ClientServerState getServer() {
+        return server;
+    }
+
+    public final void setServer(final ClientServerState server) {
+        this.server = server;
+    }
+
+    public final void setTimeout(final HikariTimer.Timeout timeout) {
+        cancelTimeout();
+        this.timeout = timeout;
+    }
+
+    public final void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
 }
@@ -7,4 +7,9 @@ package com.github.yukinomiu.hikari.client;
 public enum ClientContextType {
     LOCAL,
     REMOTE,
+    DNS,
+    DNS_TUNNEL,
+    POOLED,
+    MUX,
+    BOND,
 }
@@ -0,0 +1,253 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.HikariTimer;
+import com.github.yukinomiu.hikari.common.protocol.DnsMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * local udp dns forwarder, queries are pipelined over one dns tunnel to the server and answers cached
+ * <p>
+ * queries get a tunnel id of their own, the id of the local query is put back into the answer.
+ * only touched by the owner loop
+ * <p>
+ * Yukinomiu
+ * 2018/2/16
+ */
+public class ClientDnsContext extends ClientContext {
+    private static final Logger logger = LoggerFactory.getLogger(ClientDnsContext.class);
+    private static final int DEFAULT_DNS_CACHE_SIZE = 4096;
+    private static final int DEFAULT_DNS_CACHE_TTL = 60;
+    private static final int DEFAULT_DNS_NEGATIVE_CACHE_TTL = 5;
+    private static final int MAX_PENDING_QUERIES = 4096;
+
+    private boolean closed = false;
+
+    // answer cache, lru
+    private final int cacheSize;
+    private final long cacheTtlNanos;
+    private final long negativeCacheTtlNanos;
+    private final Map<String, CachedAnswer> cache;
+
+    // tunnel and the queries sent over it or waiting for it, by tunnel id
+    private ClientDnsTunnelContext tunnelContext;
+    private final Map<Integer, PendingQuery> pendingMap = new HashMap<>();
+    private final List<byte[]> queuedFrameList = new ArrayList<>();
+    private int nextId;
+
+    public ClientDnsContext(final SelectionKey key,
+                            final Integer bufferSize,
+                            final ClientConfig config) {
+        super(ClientContextType.DNS, key, bufferSize);
+
+        final Integer dnsCacheSize = config.getDnsCacheSize();
+        final Integer dnsCacheTtl = config.getDnsCacheTtl();
+        final Integer dnsNegativeCacheTtl = config.getDnsNegativeCacheTtl();
+        cacheSize = dnsCacheSize != null ? dnsCacheSize : DEFAULT_DNS_CACHE_SIZE;
+        cacheTtlNanos = TimeUnit.SECONDS.toNanos(dnsCacheTtl != null ? dnsCacheTtl : DEFAULT_DNS_CACHE_TTL);
+        negativeCacheTtlNanos = TimeUnit.SECONDS.toNanos(dnsNegativeCacheTtl != null ? dnsNegativeCacheTtl : DEFAULT_DNS_NEGATIVE_CACHE_TTL);
+
+        cache = new LinkedHashMap<String, CachedAnswer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedAnswer> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (tunnelContext != null) {
+            tunnelContext.close();
+        }
+
+        final SelectionKey key = key();
+        if (key != null) {
+            key.cancel();
+
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                logger.warn("close dns channel exception, msg: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * a copy of the cached answer, null on miss
+     */
+    public byte[] getCachedAnswer(final String cacheKey, final long now) {
+        if (cacheSize <= 0) {
+            return null;
+        }
+
+        final CachedAnswer answer = cache.get(cacheKey);
+        if (answer == null) {
+            return null;
+        }
+        if (now - answer.expireTime >= 0) {
+            cache.remove(cacheKey);
+            return null;
+        }
+
+        return Arrays.copyOf(answer.response, answer.response.length);
+    }
+
+    /**
+     * answers and names without addresses are cached, server failures are not
+     */
+    public void putCachedAnswer(final String cacheKey, final byte[] response, final long now) {
+        if (cacheSize <= 0) {
+            return;
+        }
+
+        final int rcode = DnsMessage.getRcode(response);
+        final long ttlNanos;
+        if (rcode == DnsMessage.RCODE_NO_ERROR && DnsMessage.getAnswerCount(response) > 0) {
+            ttlNanos = cacheTtlNanos;
+        }
+        else if (rcode == DnsMessage.RCODE_NO_ERROR || rcode == DnsMessage.RCODE_NAME_ERROR) {
+            ttlNanos = negativeCacheTtlNanos;
+        }
+        else {
+            return;
+        }
+
+        if (ttlNanos > 0) {
+            cache.put(cacheKey, new CachedAnswer(Arrays.copyOf(response, response.length), now + ttlNanos));
+        }
+    }
+
+    /**
+     * returns the tunnel id of the query, -1 when too many queries are pending
+     */
+    public int addPending(final PendingQuery pendingQuery) {
+        if (pendingMap.size() >= MAX_PENDING_QUERIES) {
+            return -1;
+        }
+
+        do {
+            nextId = (nextId + 1) & 0xFFFF;
+        } while (pendingMap.containsKey(nextId));
+
+        pendingMap.put(nextId, pendingQuery);
+        return nextId;
+    }
+
+    public PendingQuery removePending(final int id) {
+        final PendingQuery pendingQuery = pendingMap.remove(id);
+        if (pendingQuery != null && pendingQuery.timeout != null) {
+            pendingQuery.timeout.cancel();
+        }
+
+        return pendingQuery;
+    }
+
+    /**
+     * drop a query the tunnel did not answer in time, the local client retries by itself
+     */
+    public void expirePending(final int id, final PendingQuery pendingQuery) {
+        if (pendingMap.get(id) == pendingQuery) {
+            pendingMap.remove(id);
+        }
+    }
+
+    /**
+     * the tunnel is gone, pending queries are answered with a server failure so the local clients retry right away
+     */
+    public void tunnelClosed(final ClientDnsTunnelContext closedTunnelContext) {
+        if (tunnelContext != closedTunnelContext) {
+            return;
+        }
+        tunnelContext = null;
+        queuedFrameList.clear();
+
+        for (PendingQuery pendingQuery : pendingMap.values()) {
+            if (pendingQuery.timeout != null) {
+                pendingQuery.timeout.cancel();
+            }
+            reply(pendingQuery.source, pendingQuery.query.buildResponse(DnsMessage.RCODE_SERVER_FAILURE, null, 0));
+        }
+        pendingMap.clear();
+    }
+
+    public void reply(final SocketAddress target, final byte[] response) {
+        if (closed) {
+            return;
+        }
+
+        try {
+            // a full socket buffer drops the datagram like the network would
+            ((DatagramChannel) key().channel()).send(ByteBuffer.wrap(response), target);
+        } catch (IOException e) {
+            logger.warn("send dns response exception, msg: {}", e.getMessage());
+        }
+    }
+
+    public ClientDnsTunnelContext getTunnelContext() {
+        return tunnelContext;
+    }
+
+    public void setTunnelContext(ClientDnsTunnelContext tunnelContext) {
+        this.tunnelContext = tunnelContext;
+    }
+
+    public List<byte[]> getQueuedFrameList() {
+        return queuedFrameList;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public static final class PendingQuery {
+        private final DnsMessage query;
+        private final SocketAddress source;
+        private HikariTimer.Timeout timeout;
+
+        public PendingQuery(final DnsMessage query, final SocketAddress source) {
+            this.query = query;
+            this.source = source;
+        }
+
+        public DnsMessage getQuery() {
+            return query;
+        }
+
+        public SocketAddress getSource() {
+            return source;
+        }
+
+        public void setTimeout(HikariTimer.Timeout timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    private static final class CachedAnswer {
+        private final byte[] response;
+        private final long expireTime;
+
+        private CachedAnswer(final byte[] response, final long expireTime) {
+            this.response = response;
+            this.expireTime = expireTime;
+        }
+    }
+}
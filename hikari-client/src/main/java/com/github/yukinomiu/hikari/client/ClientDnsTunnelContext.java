@@ -0,0 +1,83 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.HikariStatus;
+import com.github.yukinomiu.hikari.common.PacketContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * hikari connection of the dns forwarder, carries tcp framed dns messages once authenticated
+ * <p>
+ * Yukinomiu
+ * 2018/2/16
+ */
+public class ClientDnsTunnelContext extends ClientContext {
+    private static final Logger logger = LoggerFactory.getLogger(ClientDnsTunnelContext.class);
+    private boolean closed = false;
+    private final PacketContext packetContext;
+
+    private HikariStatus status;
+    private final ClientDnsContext dnsContext;
+
+    // answers split over packets
+    private final ByteBuffer frameBuffer;
+
+    public ClientDnsTunnelContext(final SelectionKey key,
+                                  final Integer bufferSize,
+                                  final HikariStatus status,
+                                  final ClientDnsContext dnsContext) {
+        super(ClientContextType.DNS_TUNNEL, key, bufferSize);
+        packetContext = new PacketContext(bufferSize);
+        frameBuffer = ByteBuffer.allocate(bufferSize << 1);
+        this.status = status;
+        this.dnsContext = dnsContext;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancelTimeout();
+
+        final SelectionKey key = key();
+        if (key != null) {
+            key.cancel();
+
+            try {
+                SocketChannel socketChannel = (SocketChannel) key.channel();
+                socketChannel.close();
+            } catch (IOException e) {
+                logger.warn("close dns tunnel socket channel exception, msg: {}", e.getMessage());
+            }
+        }
+
+        dnsContext.tunnelClosed(this);
+    }
+
+    public PacketContext getPacketContext() {
+        return packetContext;
+    }
+
+    public HikariStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(HikariStatus status) {
+        this.status = status;
+    }
+
+    public ClientDnsContext getDnsContext() {
+        return dnsContext;
+    }
+
+    public ByteBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+}
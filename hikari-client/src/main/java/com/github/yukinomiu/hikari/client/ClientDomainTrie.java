@@ -0,0 +1,104 @@
+package com.github.yukinomiu.hikari.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * domain suffix trie keyed by labels from the right, a rule for example.com also covers its subdomains
+ * and the longest matching suffix wins
+ * <p>
+ * Yukinomiu
+ * 2018/2/17
+ */
+public final class ClientDomainTrie {
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * a domain put again replaces the route of the earlier one
+     */
+    public void put(final String domain, final ClientRoute route) {
+        final String name = normalize(domain);
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("empty domain");
+        }
+
+        Node node = root;
+        int end = name.length();
+        while (end > 0) {
+            final int start = name.lastIndexOf('.', end - 1) + 1;
+            final String label = name.substring(start, end);
+            if (label.isEmpty()) {
+                throw new IllegalArgumentException(String.format("bad domain '%s'", domain));
+            }
+
+            if (node.children == null) {
+                node.children = new HashMap<>(4);
+            }
+            Node child = node.children.get(label);
+            if (child == null) {
+                child = new Node();
+                node.children.put(label, child);
+            }
+
+            node = child;
+            end = start - 1;
+        }
+
+        if (node.route == null) {
+            size++;
+        }
+        node.route = route;
+    }
+
+    /**
+     * route of the longest rule the ascii domain falls under, null when none does
+     */
+    public ClientRoute lookup(final byte[] domain) {
+        final String name = normalize(new String(domain, StandardCharsets.US_ASCII));
+        ClientRoute route = null;
+
+        Node node = root;
+        int end = name.length();
+        while (end > 0 && node.children != null) {
+            final int start = name.lastIndexOf('.', end - 1) + 1;
+            node = node.children.get(name.substring(start, end));
+            if (node == null) {
+                break;
+            }
+
+            if (node.route != null) {
+                route = node.route;
+            }
+            end = start - 1;
+        }
+
+        return route;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static String normalize(final String domain) {
+        String name = domain.toLowerCase(Locale.ROOT);
+        if (name.startsWith("*.")) {
+            name = name.substring(2);
+        }
+        else if (name.startsWith(".")) {
+            name = name.substring(1);
+        }
+        if (name.endsWith(".")) {
+            name = name.substring(0, name.length() - 1);
+        }
+
+        return name;
+    }
+
+    private static final class Node {
+        private ClientRoute route;
+        private Map<String, Node> children;
+    }
+}
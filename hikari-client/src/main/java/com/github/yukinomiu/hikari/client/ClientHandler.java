@@ -2,6 +2,8 @@ package com.github.yukinomiu.hikari.client;
 
 import com.github.yukinomiu.hikari.common.*;
 import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import com.github.yukinomiu.hikari.common.protocol.DnsMessage;
+import com.github.yukinomiu.hikari.common.protocol.HikariCapability;
 import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
 import com.github.yukinomiu.hikari.common.protocol.Socks4Protocol;
 import com.github.yukinomiu.hikari.common.protocol.Socks5Protocol;
@@ -12,11 +14,13 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.List;
 
 /**
@@ -25,25 +29,62 @@ import java.util.List;
  */
 public class ClientHandler extends HikariAbstractHandle {
     private static final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
+    private static final int DNS_QUERY_TIMEOUT = 5000;
+    private static final int MAX_DNS_QUERIES_PER_READ = 64;
+
+    private static final int DEFAULT_SERVER_POOL_SIZE = 0;
+    private static final int DEFAULT_SERVER_POOL_LIFETIME = 5000;
+    private static final int DEFAULT_MUX_CONNECTIONS = 0;
+    private static final int DEFAULT_BOND_CONNECTIONS = 0;
+    private static final int DEFAULT_PROTOCOL_VERSION = 2;
+
+    // ver, key hash, options, address type, domain length, domain and port
+    private static final int MAX_HIKARI_REQUEST_SIZE = 1 + 16 + HikariCapability.MAX_SIZE + 1 + 1 + 255 + 2;
     private final ClientConfig config;
+    private final HikariResolver resolver;
+    private final ClientRouter router;
+    private final HikariEventLoop eventLoop;
 
     private final Integer bufferSize;
     private final ByteBuffer dataBuffer;
     private final ByteBuffer cacheBuffer;
     private final ByteBuffer cryptoBuffer;
     private final ByteBuffer packetBuffer;
+    private final ByteBuffer streamBuffer;
 
     private final SocketAddress[] serverAddressArray;
+    private final ClientServerState[] serverStateArray;
     private final int maxAddressIndex;
     private int currentAddressIndex;
 
     private final byte[] privateKeyHash;
 
-    public ClientHandler(final ClientConfig config) {
+    // fast open, early data travels in the packet of the auth request
+    private final boolean fastOpen;
+    private final int earlyDataSize;
+
+    // pre-connected server sockets of this loop, null when disabled
+    private final ClientServerPool serverPool;
+
+    // mux connections of this loop, opened on demand, null when disabled
+    private final ClientMuxContext[] muxContexts;
+    private int muxIndex;
+
+    // connections per bonded stream, below 2 when disabled. ids are hard to guess for other clients of the server
+    private final int bondConnections;
+    private final SecureRandom bondIdRandom = new SecureRandom();
+
+    public ClientHandler(final ClientConfig config,
+                         final HikariResolver resolver,
+                         final ClientRouter router,
+                         final HikariEventLoop eventLoop) {
         super(config);
 
         // config
         this.config = config;
+        this.resolver = resolver;
+        this.router = router;
+        this.eventLoop = eventLoop;
 
         // buffer
         bufferSize = config.getBufferSize();
@@ -51,17 +92,27 @@ public class ClientHandler extends HikariAbstractHandle {
         cacheBuffer = ByteBuffer.allocateDirect(bufferSize << 1);
         cryptoBuffer = ByteBuffer.allocateDirect(bufferSize);
         packetBuffer = ByteBuffer.allocateDirect(bufferSize + HikariConstant.PACKET_WRAPPER_SIZE);
+        streamBuffer = ByteBuffer.allocateDirect(bufferSize - HikariProtocol.MUX_FRAME_HEADER_SIZE);
 
         // server address
         String serverAddress = config.getServerAddress();
         List<Integer> serverPortList = config.getServerPortList();
         logger.info("server address: {}", serverAddress);
 
+        // protocol version, tracked per server address from here on
+        final Integer configProtocolVersion = config.getProtocolVersion();
+        final int version = configProtocolVersion != null ? configProtocolVersion : DEFAULT_PROTOCOL_VERSION;
+        if (version != HikariProtocol.VERSION_HIKARI1 && version != HikariProtocol.VERSION_HIKARI2) {
+            throw new HikariRuntimeException(String.format("hikari version '%s' not supported", version));
+        }
+
         serverAddressArray = new SocketAddress[serverPortList.size()];
+        serverStateArray = new ClientServerState[serverPortList.size()];
         for (int i = 0; i < serverAddressArray.length; i++) {
             final Integer port = serverPortList.get(i);
             SocketAddress address = new InetSocketAddress(serverAddress, port);
             serverAddressArray[i] = address;
+            serverStateArray[i] = new ClientServerState(address, (byte) version, bufferSize);
             logger.info("server port: {}", port);
         }
         maxAddressIndex = serverAddressArray.length - 1;
@@ -70,6 +121,34 @@ public class ClientHandler extends HikariAbstractHandle {
         // private key
         String privateKey = config.getPrivateKey();
         privateKeyHash = Md5Util.getInstance().md5(privateKey);
+
+        // fast open
+        final Boolean configFastOpen = config.getFastOpen();
+        earlyDataSize = bufferSize - MAX_HIKARI_REQUEST_SIZE;
+        fastOpen = configFastOpen != null && configFastOpen && earlyDataSize > 0;
+
+        // server pool, filled once the loop runs
+        final Integer serverPoolSize = config.getServerPoolSize();
+        final Integer serverPoolLifetime = config.getServerPoolLifetime();
+        final int poolSize = serverPoolSize != null ? serverPoolSize : DEFAULT_SERVER_POOL_SIZE;
+        final int poolLifetime = serverPoolLifetime != null ? serverPoolLifetime : DEFAULT_SERVER_POOL_LIFETIME;
+        if (poolSize > 0 && poolLifetime > 0) {
+            serverPool = new ClientServerPool(eventLoop, serverAddressArray, bufferSize, poolSize, poolLifetime, connectTimeout);
+            eventLoop.execute(serverPool::start);
+        }
+        else {
+            serverPool = null;
+        }
+
+        // mux
+        final Integer configMuxConnections = config.getMuxConnections();
+        final int muxConnections = configMuxConnections != null ? configMuxConnections : DEFAULT_MUX_CONNECTIONS;
+        muxContexts = muxConnections > 0 ? new ClientMuxContext[muxConnections] : null;
+
+        // bond
+        final Integer configBondConnections = config.getBondConnections();
+        final int connections = configBondConnections != null ? configBondConnections : DEFAULT_BOND_CONNECTIONS;
+        bondConnections = Math.min(connections, HikariProtocol.BOND_MAX_CONNECTIONS);
     }
 
     @Override
@@ -79,20 +158,61 @@ public class ClientHandler extends HikariAbstractHandle {
 
         try {
             SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+
+            handleAccepted(channel, selector);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle accept exception: {}", msg != null ? msg : e.getClass().getName());
+        }
+    }
+
+    @Override
+    public void handleAccepted(final SocketChannel channel, final Selector selector) {
+        try {
             channel.configureBlocking(false);
 
             SelectionKey localKey = channel.register(selector, SelectionKey.OP_READ);
 
             ClientLocalContext localContext = new ClientLocalContext(localKey, bufferSize, SocksStatus.SOCKS_NEW);
             localKey.attach(localContext);
+
+            // connections that never send a complete socks request
+            localContext.setTimeout(scheduleTimeout(eventLoop, () -> processHandshakeTimeout(localContext), handshakeTimeout));
         } catch (Exception e) {
             String msg = e.getMessage();
-            logger.warn("handle accept exception: {}", msg != null ? msg : e.getClass().getName());
+            logger.warn("handle accepted exception: {}", msg != null ? msg : e.getClass().getName());
+
+            try {
+                channel.close();
+            } catch (IOException ce) {
+                logger.warn("close local socket channel exception, msg: {}", ce.getMessage());
+            }
         }
     }
 
     @Override
     public void handleConnect(final SelectionKey key) {
+        final ClientContextType type = ((ClientContext) key.attachment()).getType();
+        if (type == ClientContextType.DNS_TUNNEL) {
+            processDnsTunnelConnect(key, (ClientDnsTunnelContext) key.attachment());
+            return;
+        }
+        else if (type == ClientContextType.POOLED) {
+            serverPool.handleConnect(key);
+            return;
+        }
+        else if (type == ClientContextType.MUX) {
+            processMuxConnect(key, (ClientMuxContext) key.attachment());
+            return;
+        }
+        else if (type == ClientContextType.BOND) {
+            processBondConnect(key, (ClientBondContext) key.attachment());
+            return;
+        }
+
         final ClientRemoteContext remoteContext = (ClientRemoteContext) key.attachment();
         final ClientLocalContext localContext = remoteContext.getLocalContext();
         final SocketChannel remoteChannel = (SocketChannel) key.channel();
@@ -102,30 +222,29 @@ public class ClientHandler extends HikariAbstractHandle {
             try {
                 remoteChannel.finishConnect();
             } catch (IOException e) {
-                logger.warn("connect to server fail, msg: {}", e.getMessage());
+                logger.warn("connect to {} fail, msg: {}", remoteContext.isDirect() ? "target" : "server", e.getMessage());
+                writeConnectServerFail(Socks5Protocol.REQ_REPLAY_CONNECTION_REFUSED, localChannel, remoteContext);
+                return;
+            }
 
-                // response
-                final byte ver = localContext.getSocksVersion();
+            if (remoteContext.isDirect()) {
+                key.interestOps(SelectionKey.OP_READ);
 
-                if (ver == Socks5Protocol.VERSION_SOCKS5) {
-                    writeSocks5Fail(Socks5Protocol.REQ_REPLAY_CONNECTION_REFUSED, localChannel, remoteContext);
-                }
-                else if (ver == Socks4Protocol.VERSION_SOCKS4) {
-                    writeSocks4Fail(Socks4Protocol.REQ_REPLAY_REJECTED_OR_FAILED, localChannel, remoteContext);
+                final InetSocketAddress bindAddress = (InetSocketAddress) remoteChannel.getLocalAddress();
+                final byte[] bindAddressBytes = bindAddress.getAddress().getAddress();
+                final byte socks5AddressType = bindAddressBytes.length == 4 ? Socks5Protocol.ADDRESS_TYPE_IPV4 : Socks5Protocol.ADDRESS_TYPE_IPV6;
+                final byte[] bindPort = new byte[]{(byte) (bindAddress.getPort() >>> 8), (byte) bindAddress.getPort()};
+
+                if (writeSocksSucceeded(localContext, localChannel, socks5AddressType, bindAddressBytes, bindPort)) {
+                    startProxy(localContext, remoteContext);
                 }
                 else {
-                    logger.warn("socks version '{}' not supported", ver);
                     remoteContext.close();
                 }
-
                 return;
             }
 
-            // read read
-            key.interestOps(SelectionKey.OP_READ);
-
-            // request
-            sendHikariRequest(localContext, remoteContext);
+            processServerConnected(localContext, remoteContext);
         } catch (Exception e) {
             String msg = e.getMessage();
             logger.warn("handle connect exception: {}", msg != null ? msg : e.getClass().getName());
@@ -133,6 +252,39 @@ public class ClientHandler extends HikariAbstractHandle {
         }
     }
 
+    private void processServerConnected(final ClientLocalContext localContext,
+                                        final ClientRemoteContext remoteContext) throws IOException {
+        // read read
+        remoteContext.key().interestOps(SelectionKey.OP_READ);
+
+        // the server resolves and connects the target within the response time
+        final int authTimeout = handshakeTimeout > 0 ? handshakeTimeout + Math.max(connectTimeout, 0) : 0;
+        remoteContext.setTimeout(scheduleTimeout(eventLoop, () -> processHikariAuthTimeout(remoteContext), authTimeout));
+
+        // request
+        sendHikariRequest(localContext, remoteContext);
+
+        // fast open, data flows to the server before its response. early data still kept waits for the response
+        if (localContext.getStatus() == SocksStatus.SOCKS_EARLY && !localContext.isClosed()) {
+            if (localContext.getEarlyBuffer() == null) {
+                startEarlyProxy(localContext);
+            }
+            else {
+                localContext.key().interestOps(0);
+            }
+        }
+    }
+
+    private void startEarlyProxy(final ClientLocalContext localContext) {
+        localContext.setStatus(SocksStatus.SOCKS_PROXY);
+
+        final HikariIdleTimeout idle = new HikariIdleTimeout(localContext, idleTimeout);
+        localContext.setIdleTimeout(idle);
+        idle.start(eventLoop);
+
+        localContext.key().interestOps(SelectionKey.OP_READ);
+    }
+
     @Override
     public void handleRead(final SelectionKey key) {
         final ClientContext context = (ClientContext) key.attachment();
@@ -152,8 +304,25 @@ public class ClientHandler extends HikariAbstractHandle {
                         processSocks5ReqRead(key, localContext);
                         break;
 
+                    case SOCKS_EARLY:
+                        processSocksEarlyRead(key, localContext);
+                        break;
+
                     case SOCKS_PROXY:
-                        processSocksProxyRead(key, localContext);
+                        if (localContext.getMuxStream() != null) {
+                            localContext.getIdleTimeout().touch(eventLoop.currentTime());
+                            readMuxStream(key, localContext.getMuxStream(), streamBuffer);
+                        }
+                        else if (localContext.getBond() != null) {
+                            localContext.getIdleTimeout().touch(eventLoop.currentTime());
+                            readBondStream(key, localContext.getBond(), streamBuffer);
+                        }
+                        else if (localContext.getRemoteContext().isDirect()) {
+                            processDirectProxyRead(key, localContext, localContext.getRemoteContext(), localContext);
+                        }
+                        else {
+                            processSocksProxyRead(key, localContext);
+                        }
                         break;
 
                     default:
@@ -171,7 +340,73 @@ public class ClientHandler extends HikariAbstractHandle {
                         break;
 
                     case HIKARI_PROXY:
-                        processHikariProxyRead(key, remoteContext);
+                        if (remoteContext.isDirect()) {
+                            processDirectProxyRead(key, remoteContext, remoteContext.getLocalContext(), remoteContext.getLocalContext());
+                        }
+                        else {
+                            processHikariProxyRead(key, remoteContext);
+                        }
+                        break;
+
+                    case HIKARI_BOND:
+                        processBondRead(key, remoteContext, remoteContext.getPacketContext(), remoteContext.getLocalContext());
+                        break;
+
+                    default:
+                        throw new HikariRuntimeException(String.format("client hikari status '%s' not supported", status.name()));
+                }
+            }
+            else if (type == ClientContextType.DNS) {
+                processDnsQueryRead(key, (ClientDnsContext) context);
+            }
+            else if (type == ClientContextType.POOLED) {
+                serverPool.handleRead(key);
+            }
+            else if (type == ClientContextType.MUX) {
+                final ClientMuxContext muxContext = (ClientMuxContext) context;
+                final HikariStatus status = muxContext.getStatus();
+
+                switch (status) {
+                    case HIKARI_AUTH:
+                        processMuxAuthRead(key, muxContext);
+                        break;
+
+                    case HIKARI_MUX:
+                        processMuxRead(key, muxContext);
+                        break;
+
+                    default:
+                        throw new HikariRuntimeException(String.format("client hikari status '%s' not supported", status.name()));
+                }
+            }
+            else if (type == ClientContextType.BOND) {
+                final ClientBondContext bondContext = (ClientBondContext) context;
+                final HikariStatus status = bondContext.getStatus();
+
+                switch (status) {
+                    case HIKARI_AUTH:
+                        processBondJoinRead(key, bondContext);
+                        break;
+
+                    case HIKARI_BOND:
+                        processBondRead(key, bondContext, bondContext.getPacketContext(), bondContext.getLocalContext());
+                        break;
+
+                    default:
+                        throw new HikariRuntimeException(String.format("client hikari status '%s' not supported", status.name()));
+                }
+            }
+            else if (type == ClientContextType.DNS_TUNNEL) {
+                final ClientDnsTunnelContext tunnelContext = (ClientDnsTunnelContext) context;
+                final HikariStatus status = tunnelContext.getStatus();
+
+                switch (status) {
+                    case HIKARI_AUTH:
+                        processDnsTunnelAuthRead(key, tunnelContext);
+                        break;
+
+                    case HIKARI_DNS:
+                        processDnsTunnelRead(key, tunnelContext);
                         break;
 
                     default:
@@ -196,6 +431,15 @@ public class ClientHandler extends HikariAbstractHandle {
         try {
             if (type == ClientContextType.LOCAL) {
                 final ClientLocalContext localContext = (ClientLocalContext) context;
+                if (localContext.getMuxStream() != null) {
+                    localContext.getMuxStream().flush();
+                    return;
+                }
+                else if (localContext.getBond() != null) {
+                    localContext.getBond().flushStream();
+                    return;
+                }
+
                 final SocketChannel localChannel = (SocketChannel) key.channel();
                 final ByteBuffer writeBuffer = localContext.writeBuffer();
 
@@ -209,6 +453,11 @@ public class ClientHandler extends HikariAbstractHandle {
             }
             else if (type == ClientContextType.REMOTE) {
                 final ClientRemoteContext remoteContext = (ClientRemoteContext) context;
+                if (remoteContext.getStatus() == HikariStatus.HIKARI_BOND) {
+                    remoteContext.getLocalContext().getBond().flushMember(remoteContext);
+                    return;
+                }
+
                 final SocketChannel remoteChannel = (SocketChannel) key.channel();
                 final ByteBuffer writeBuffer = remoteContext.writeBuffer();
 
@@ -220,6 +469,22 @@ public class ClientHandler extends HikariAbstractHandle {
                     localKey.interestOps(localKey.interestOps() | SelectionKey.OP_READ);
                 }
             }
+            else if (type == ClientContextType.MUX) {
+                ((ClientMuxContext) context).getMuxSession().flush();
+            }
+            else if (type == ClientContextType.BOND) {
+                ((ClientBondContext) context).getBond().flushMember(context);
+            }
+            else if (type == ClientContextType.DNS_TUNNEL) {
+                final SocketChannel tunnelChannel = (SocketChannel) key.channel();
+                final ByteBuffer writeBuffer = context.writeBuffer();
+
+                // nothing waits for the tunnel to drain
+                tunnelChannel.write(writeBuffer);
+                if (!writeBuffer.hasRemaining()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+            }
             else {
                 throw new HikariRuntimeException(String.format("client context type '%s' not supported", type.name()));
             }
@@ -317,34 +582,8 @@ public class ClientHandler extends HikariAbstractHandle {
             byte[] domainByteArray = new byte[length];
             dataBuffer.get(domainByteArray, 0, length);
 
-            if (config.getLocalDnsResolve()) {
-                // local dns resolve
-                InetAddress inetAddress;
-                final String domain = new String(domainByteArray, StandardCharsets.UTF_8);
-                try {
-                    inetAddress = InetAddress.getByName(domain);
-                } catch (UnknownHostException e) {
-                    logger.warn("DNS resolve fail: {}", domain);
-                    writeSocks5Fail(Socks5Protocol.REQ_REPLAY_HOST_UNREACHABLE, localChannel, localContext);
-                    return;
-                }
-
-                if (inetAddress instanceof Inet4Address) {
-                    hikariAddressType = HikariProtocol.ADDRESS_TYPE_IPV4;
-                    address = inetAddress.getAddress();
-                }
-                else if (inetAddress instanceof Inet6Address) {
-                    hikariAddressType = HikariProtocol.ADDRESS_TYPE_IPV6;
-                    address = inetAddress.getAddress();
-                }
-                else {
-                    throw new HikariRuntimeException(String.format("address type '%s' not supported", inetAddress.toString()));
-                }
-            }
-            else {
-                hikariAddressType = HikariProtocol.ADDRESS_TYPE_DOMAIN;
-                address = domainByteArray;
-            }
+            hikariAddressType = HikariProtocol.ADDRESS_TYPE_DOMAIN;
+            address = domainByteArray;
         }
         else if (addressType == Socks5Protocol.ADDRESS_TYPE_IPV4) {
             address = new byte[4];
@@ -372,28 +611,202 @@ public class ClientHandler extends HikariAbstractHandle {
             localContext.close();
             return;
         }
+        localContext.cancelTimeout();
 
         // set context
+        localContext.setPort(port);
+
+        if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_DOMAIN) {
+            // null: no domain rule, the resolved address decides
+            ClientRoute route = router != null ? router.routeDomain(address) : null;
+            if (route == null && !config.getLocalDnsResolve()) {
+                route = router != null ? router.getDefaultRoute() : ClientRoute.TUNNEL;
+            }
+
+            if (route == null || route == ClientRoute.DIRECT) {
+                // local dns resolve off the loop, the local connection is not read until the lookup completes
+                final ClientRoute domainRoute = route;
+                resolver.resolve(address, eventLoop, addresses -> processLocalResolved(localContext, address, addresses, domainRoute));
+                return;
+            }
+
+            localContext.setHikariAddressType(hikariAddressType);
+            localContext.setAddress(address);
+
+            routeConnect(localContext, route);
+            return;
+        }
+
         localContext.setHikariAddressType(hikariAddressType);
         localContext.setAddress(address);
-        localContext.setPort(port);
 
-        // connection to server
-        final SocketAddress serverAddress = getServerAddress();
+        routeConnect(localContext, router != null ? router.routeAddress(address) : ClientRoute.TUNNEL);
+    }
+
+    private void processLocalResolved(final ClientLocalContext localContext,
+                                      final byte[] domain,
+                                      final InetAddress[] addresses,
+                                      final ClientRoute domainRoute) {
+        if (localContext.isClosed()) {
+            return;
+        }
+
+        final SocketChannel localChannel = (SocketChannel) localContext.key().channel();
+
+        try {
+            if (addresses == null) {
+                logger.warn("DNS resolve fail: {}", new String(domain, StandardCharsets.UTF_8));
+                writeSocks5Fail(Socks5Protocol.REQ_REPLAY_HOST_UNREACHABLE, localChannel, localContext);
+                return;
+            }
+
+            final InetAddress inetAddress = addresses[0];
+
+            if (inetAddress instanceof Inet4Address) {
+                localContext.setHikariAddressType(HikariProtocol.ADDRESS_TYPE_IPV4);
+            }
+            else if (inetAddress instanceof Inet6Address) {
+                localContext.setHikariAddressType(HikariProtocol.ADDRESS_TYPE_IPV6);
+            }
+            else {
+                throw new HikariRuntimeException(String.format("address type '%s' not supported", inetAddress.toString()));
+            }
+            localContext.setAddress(inetAddress.getAddress());
+
+            if (domainRoute != null) {
+                routeConnect(localContext, domainRoute);
+            }
+            else {
+                routeConnect(localContext, router != null ? router.routeAddress(inetAddress.getAddress()) : ClientRoute.TUNNEL);
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle local resolved exception: {}", msg != null ? msg : e.getClass().getName());
+            localContext.close();
+        }
+    }
+
+    private void routeConnect(final ClientLocalContext localContext, final ClientRoute route) throws IOException {
+        switch (route) {
+            case TUNNEL:
+                // features of the server this stream goes to
+                final ClientServerState server = getServer();
+                if (muxContexts != null && server.hasFeature(HikariProtocol.FEATURE_MUX)) {
+                    openMuxStream(localContext, server);
+                    break;
+                }
+                if (bondConnections > 1 && server.hasFeature(HikariProtocol.FEATURE_BOND)) {
+                    // the other members are opened once the first one is accepted
+                    localContext.setBond(new HikariBond(bondIdRandom.nextLong(), this, bufferSize));
+                    connect(localContext, server.getAddress(), server);
+                    break;
+                }
+                if (fastOpen && server.hasFeature(HikariProtocol.FEATURE_EARLY_DATA) && !replyEarly(localContext, server)) {
+                    return;
+                }
+                connect(localContext, server.getAddress(), server);
+                break;
+
+            case DIRECT:
+                final byte[] port = localContext.getPort();
+                final InetAddress targetAddress = InetAddress.getByAddress(localContext.getAddress());
+                connect(localContext, new InetSocketAddress(targetAddress, ((port[0] & 0xFF) << 8) | (port[1] & 0xFF)), null);
+                break;
+
+            case REJECT:
+                final SocketChannel localChannel = (SocketChannel) localContext.key().channel();
+                if (localContext.getSocksVersion() == Socks4Protocol.VERSION_SOCKS4) {
+                    writeSocks4Fail(Socks4Protocol.REQ_REPLAY_REJECTED_OR_FAILED, localChannel, localContext);
+                }
+                else {
+                    writeSocks5Fail(Socks5Protocol.REQ_REPLAY_CONNECTION_NOT_ALLOWED, localChannel, localContext);
+                }
+                break;
+
+            default:
+                throw new HikariRuntimeException(String.format("route '%s' not supported", route.name()));
+        }
+    }
+
+    /**
+     * replies success before the server connection is up, the application's first data is read meanwhile.
+     * false when the local connection was closed
+     */
+    private boolean replyEarly(final ClientLocalContext localContext, final ClientServerState server) throws IOException {
+        // the request and early data fit in a packet of the server, no room left means a normal connect
+        final int earlySize = Math.min(earlyDataSize, server.getFrameSize() - MAX_HIKARI_REQUEST_SIZE);
+        if (earlySize <= 0) {
+            return true;
+        }
+
+        final SelectionKey localKey = localContext.key();
+
+        // no bind address yet
+        if (!writeSocksSucceeded(localContext, (SocketChannel) localKey.channel(), Socks5Protocol.ADDRESS_TYPE_IPV4, new byte[4], new byte[2])) {
+            localContext.close();
+            return false;
+        }
+
+        localContext.setEarlyReplied(true);
+        localContext.setEarlyBuffer(ByteBuffer.allocate(earlySize));
+        localContext.setStatus(SocksStatus.SOCKS_EARLY);
+        localKey.interestOps(SelectionKey.OP_READ);
+        return true;
+    }
+
+    private void processSocksEarlyRead(final SelectionKey key,
+                                       final ClientLocalContext localContext) throws IOException {
+        final SocketChannel localChannel = (SocketChannel) key.channel();
+        final ByteBuffer earlyBuffer = localContext.getEarlyBuffer();
+
+        if (localChannel.read(earlyBuffer) == -1) {
+            localContext.close();
+            return;
+        }
+
+        // full, the rest waits in the socket for the server connection
+        if (!earlyBuffer.hasRemaining()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * server is null for a direct connection to the target
+     */
+    private void connect(final ClientLocalContext localContext,
+                         final SocketAddress remoteAddress,
+                         final ClientServerState server) throws IOException {
         final SelectionKey localKey = localContext.key();
         final Selector selector = localKey.selector();
+        final boolean direct = server == null;
+
+        // a pre-connected socket skips the tcp handshake
+        if (!direct && serverPool != null) {
+            final SelectionKey pooledKey = serverPool.take(remoteAddress);
+            if (pooledKey != null) {
+                ClientRemoteContext remoteContext = new ClientRemoteContext(pooledKey, bufferSize, HikariStatus.HIKARI_AUTH, localContext, false);
+                remoteContext.setServer(server);
+                pooledKey.attach(remoteContext);
+
+                localContext.setRemoteContext(remoteContext);
+                processServerConnected(localContext, remoteContext);
+                return;
+            }
+        }
 
         SocketChannel remoteChannel = SocketChannel.open();
         remoteChannel.configureBlocking(false);
 
         final SelectionKey remoteKey = remoteChannel.register(selector, SelectionKey.OP_CONNECT);
 
-        ClientRemoteContext remoteContext = new ClientRemoteContext(remoteKey, bufferSize, HikariStatus.HIKARI_AUTH, localContext);
+        ClientRemoteContext remoteContext = new ClientRemoteContext(remoteKey, bufferSize, HikariStatus.HIKARI_AUTH, localContext, direct);
+        remoteContext.setServer(server);
         remoteKey.attach(remoteContext);
 
         localContext.setRemoteContext(remoteContext);
+        remoteContext.setTimeout(scheduleTimeout(eventLoop, () -> processConnectServerTimeout(remoteContext), connectTimeout));
 
-        boolean connectedNow = remoteChannel.connect(serverAddress);
+        boolean connectedNow = remoteChannel.connect(remoteAddress);
         if (connectedNow) {
             handleConnect(remoteKey);
         }
@@ -432,46 +845,42 @@ public class ClientHandler extends HikariAbstractHandle {
             localContext.close();
             return;
         }
+        localContext.cancelTimeout();
 
         // set context
         localContext.setHikariAddressType(HikariProtocol.ADDRESS_TYPE_IPV4);
         localContext.setAddress(address);
         localContext.setPort(port);
 
-        // connection to server
-        final SocketAddress serverAddress = getServerAddress();
-        final SelectionKey localKey = localContext.key();
-        final Selector selector = localKey.selector();
-
-        SocketChannel remoteChannel = SocketChannel.open();
-        remoteChannel.configureBlocking(false);
-
-        final SelectionKey remoteKey = remoteChannel.register(selector, SelectionKey.OP_CONNECT);
-
-        ClientRemoteContext remoteContext = new ClientRemoteContext(remoteKey, bufferSize, HikariStatus.HIKARI_AUTH, localContext);
-        remoteKey.attach(remoteContext);
-
-        localContext.setRemoteContext(remoteContext);
-
-        boolean connectedNow = remoteChannel.connect(serverAddress);
-        if (connectedNow) {
-            handleConnect(remoteKey);
-        }
+        routeConnect(localContext, router != null ? router.routeAddress(address) : ClientRoute.TUNNEL);
     }
 
     private void processSocksProxyRead(final SelectionKey key,
                                        final ClientLocalContext localContext) throws IOException {
         final SocketChannel localChannel = (SocketChannel) key.channel();
-        if (!read(localChannel, dataBuffer, localContext)) {
-            return;
-        }
+        final ClientRemoteContext remoteContext = localContext.getRemoteContext();
+        final int frameSize = remoteContext.getFrameSize();
+        localContext.getIdleTimeout().touch(eventLoop.currentTime());
+
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!read(localChannel, dataBuffer, frameSize, localContext)) {
+                return;
+            }
+            final int length = dataBuffer.remaining();
+            bufferFilled = length == frameSize;
 
-        // encrypt
-        encrypt(dataBuffer, cryptoBuffer, packetBuffer);
+            // encrypt
+            encrypt(dataBuffer, cryptoBuffer, packetBuffer);
 
-        // write
-        final ClientRemoteContext remoteContext = localContext.getRemoteContext();
-        write(localContext, remoteContext, packetBuffer);
+            // write
+            write(localContext, remoteContext, packetBuffer);
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
     }
 
     private void processHikariAuthRead(final SelectionKey key,
@@ -484,23 +893,33 @@ public class ClientHandler extends HikariAbstractHandle {
         final ClientLocalContext localContext = remoteContext.getLocalContext();
         final SocketChannel localChannel = (SocketChannel) localContext.key().channel();
         final PacketContext packetContext = remoteContext.getPacketContext();
+        final ClientServerState server = remoteContext.getServer();
+        final HikariBond bond = localContext.getBond();
 
-        // decrypt
+        // decrypt, bond frames after the response are read packet by packet
         cacheBuffer.clear();
         while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
             cacheBuffer.put(dataBuffer);
+            if (bond != null) {
+                break;
+            }
         }
         cacheBuffer.flip();
 
         // ver
-        cacheBuffer.get();
+        final byte ver = cacheBuffer.get();
 
         // reply
         final byte reply = cacheBuffer.get();
 
         switch (reply) {
             case HikariProtocol.AUTH_RESPONSE_OK:
-                // bind address type and address
+                // options, then bind address type and address
+                final HikariCapability capability = readResponseOptions(server, ver, cacheBuffer);
+                if (capability != null && capability.getFrameSize() != null) {
+                    remoteContext.setFrameSize(capability.getFrameSize());
+                }
+
                 final byte bindHikariAddressType = cacheBuffer.get();
                 final byte socks5AddressType;
                 final byte[] bindAddress;
@@ -525,37 +944,15 @@ public class ClientHandler extends HikariAbstractHandle {
                 final byte[] bindPort = new byte[2];
                 cacheBuffer.get(bindPort, 0, 2);
 
-                // response
-                final byte ver = localContext.getSocksVersion();
-                if (ver == Socks5Protocol.VERSION_SOCKS5) {
-                    dataBuffer.clear();
-                    dataBuffer.put(Socks5Protocol.VERSION_SOCKS5);
-                    dataBuffer.put(Socks5Protocol.REQ_REPLAY_SUCCEEDED);
-                    dataBuffer.put((byte) 0x00);
-                    dataBuffer.put(socks5AddressType);
-                    dataBuffer.put(bindAddress);
-                    dataBuffer.put(bindPort);
-                    dataBuffer.flip();
-                    localChannel.write(dataBuffer);
-                }
-                else if (ver == Socks4Protocol.VERSION_SOCKS4) {
-                    dataBuffer.clear();
-                    dataBuffer.put(Socks4Protocol.REQ_REPLAY_VN);
-                    dataBuffer.put(Socks4Protocol.REQ_REPLAY_GRANTED);
-                    dataBuffer.put(localContext.getPort());
-                    dataBuffer.put(localContext.getAddress());
-                    dataBuffer.flip();
-                    localChannel.write(dataBuffer);
-                }
-                else {
-                    logger.warn("socks version '{}' not supported", ver);
+                // response, a fast open client got it already
+                if (!localContext.isEarlyReplied() && !writeSocksSucceeded(localContext, localChannel, socks5AddressType, bindAddress, bindPort)) {
                     remoteContext.close();
                     return;
                 }
 
-                if (dataBuffer.hasRemaining()) {
-                    logger.warn("send socks req response fail");
-                    remoteContext.close();
+                if (bond != null) {
+                    startBond(localContext, remoteContext, bond);
+                    processBondPackets(remoteContext, packetContext, bond);
                     return;
                 }
 
@@ -573,22 +970,56 @@ public class ClientHandler extends HikariAbstractHandle {
                     }
                 }
 
-                // set status
-                localContext.setStatus(SocksStatus.SOCKS_PROXY);
-                remoteContext.setStatus(HikariStatus.HIKARI_PROXY);
-
-                // open
-                localContext.key().interestOps(SelectionKey.OP_READ);
+                if (localContext.isEarlyReplied()) {
+                    remoteContext.setStatus(HikariStatus.HIKARI_PROXY);
+                    remoteContext.cancelTimeout();
+
+                    // fast open held back for a server not known yet, a hikari1 request did not carry the early data
+                    if (localContext.getStatus() == SocksStatus.SOCKS_EARLY) {
+                        final ByteBuffer earlyBuffer = localContext.getEarlyBuffer();
+                        localContext.setEarlyBuffer(null);
+                        startEarlyProxy(localContext);
+
+                        if (remoteContext.getVersion() == HikariProtocol.VERSION_HIKARI1 && earlyBuffer.hasRemaining()) {
+                            dataBuffer.clear();
+                            dataBuffer.put(earlyBuffer);
+                            dataBuffer.flip();
+                            encrypt(dataBuffer, cryptoBuffer, packetBuffer);
+                            write(localContext, remoteContext, packetBuffer);
+                        }
+                    }
+                }
+                else {
+                    startProxy(localContext, remoteContext);
+                }
                 break;
 
             case HikariProtocol.AUTH_RESPONSE_VERSION_NOT_SUPPORT:
+                fallBackVersion(server, ver);
+
+                // a hikari1 server refused before touching the target, the request goes again in hikari1.
+                // fast open data sent already is lost, kept data follows the response
+                if (remoteContext.getVersion() == HikariProtocol.VERSION_HIKARI2
+                        && server.getVersion() == HikariProtocol.VERSION_HIKARI1
+                        && (!localContext.isEarlyReplied() || localContext.getStatus() == SocksStatus.SOCKS_EARLY)) {
+                    // a hikari1 server knows no bonds, the stream goes alone. the bond has no members yet
+                    if (bond != null) {
+                        localContext.setBond(null);
+                        bond.close();
+                    }
+
+                    remoteContext.abandon();
+                    connect(localContext, server.getAddress(), server);
+                    break;
+                }
+
                 logger.warn("server: hikari version not supported");
-                writeSocks5Fail(Socks5Protocol.REQ_REPLAY_GENERAL_FAILURE, localChannel, remoteContext);
+                writeConnectServerFail(Socks5Protocol.REQ_REPLAY_GENERAL_FAILURE, localChannel, remoteContext);
                 break;
 
             case HikariProtocol.AUTH_RESPONSE_AUTH_FAIL:
                 logger.warn("server: auth fail");
-                writeSocks5Fail(Socks5Protocol.REQ_REPLAY_GENERAL_FAILURE, localChannel, remoteContext);
+                writeConnectServerFail(Socks5Protocol.REQ_REPLAY_GENERAL_FAILURE, localChannel, remoteContext);
                 break;
 
             case HikariProtocol.AUTH_RESPONSE_DNS_RESOLVE_FAIL:
@@ -596,17 +1027,17 @@ public class ClientHandler extends HikariAbstractHandle {
                 String domainName = new String(address, StandardCharsets.US_ASCII);
 
                 logger.warn("server: DNS resolve fail, domain name: {}", domainName);
-                writeSocks5Fail(Socks5Protocol.REQ_REPLAY_HOST_UNREACHABLE, localChannel, remoteContext);
+                writeConnectServerFail(Socks5Protocol.REQ_REPLAY_HOST_UNREACHABLE, localChannel, remoteContext);
                 break;
 
             case HikariProtocol.AUTH_RESPONSE_CONNECT_TARGET_FAIL:
                 logger.warn("server: connect to target fail");
-                writeSocks5Fail(Socks5Protocol.REQ_REPLAY_NETWORK_UNREACHABLE, localChannel, remoteContext);
+                writeConnectServerFail(Socks5Protocol.REQ_REPLAY_NETWORK_UNREACHABLE, localChannel, remoteContext);
                 break;
 
             default:
                 logger.warn("bad server response, reply: {}", reply);
-                writeSocks5Fail(Socks5Protocol.REQ_REPLAY_GENERAL_FAILURE, localChannel, remoteContext);
+                writeConnectServerFail(Socks5Protocol.REQ_REPLAY_GENERAL_FAILURE, localChannel, remoteContext);
                 break;
         }
     }
@@ -614,23 +1045,1033 @@ public class ClientHandler extends HikariAbstractHandle {
     private void processHikariProxyRead(final SelectionKey key,
                                         final ClientRemoteContext remoteContext) throws IOException {
         final SocketChannel remoteChannel = (SocketChannel) key.channel();
+        final PacketContext packetContext = remoteContext.getPacketContext();
+        final ClientLocalContext localContext = remoteContext.getLocalContext();
+        localContext.getIdleTimeout().touch(eventLoop.currentTime());
 
-        if (!read(remoteChannel, packetBuffer, remoteContext)) {
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!read(remoteChannel, packetBuffer, remoteContext)) {
+                return;
+            }
+            final int length = packetBuffer.remaining();
+            bufferFilled = length == packetBuffer.capacity();
+
+            // decrypt
+            cacheBuffer.clear();
+            while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+                cacheBuffer.put(dataBuffer);
+            }
+            cacheBuffer.flip();
+
+            // write
+            write(remoteContext, localContext, cacheBuffer);
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
+    }
+
+    private void processDnsQueryRead(final SelectionKey key,
+                                     final ClientDnsContext dnsContext) {
+        final DatagramChannel dnsChannel = (DatagramChannel) key.channel();
+
+        for (int i = 0; i < MAX_DNS_QUERIES_PER_READ; i++) {
+            // a bad datagram must not close the listener
+            try {
+                dataBuffer.clear();
+                final SocketAddress source = dnsChannel.receive(dataBuffer);
+                if (source == null) {
+                    return;
+                }
+                dataBuffer.flip();
+
+                final byte[] message = new byte[dataBuffer.remaining()];
+                dataBuffer.get(message);
+
+                final DnsMessage query = DnsMessage.parseQuery(message, message.length);
+                if (query == null) {
+                    logger.warn("bad dns query from {}", source);
+                    continue;
+                }
+
+                // cache
+                final byte[] cachedAnswer = dnsContext.getCachedAnswer(query.getCacheKey(), eventLoop.currentTime());
+                if (cachedAnswer != null) {
+                    DnsMessage.setId(cachedAnswer, query.getId());
+                    dnsContext.reply(source, cachedAnswer);
+                    continue;
+                }
+
+                forwardDnsQuery(dnsContext, query, source, message);
+            } catch (Exception e) {
+                String msg = e.getMessage();
+                logger.warn("handle dns query exception: {}", msg != null ? msg : e.getClass().getName());
+            }
+        }
+    }
+
+    private void forwardDnsQuery(final ClientDnsContext dnsContext,
+                                 final DnsMessage query,
+                                 final SocketAddress source,
+                                 final byte[] message) throws IOException {
+        final ClientDnsContext.PendingQuery pendingQuery = new ClientDnsContext.PendingQuery(query, source);
+        final int id = dnsContext.addPending(pendingQuery);
+        if (id < 0) {
+            logger.warn("too many pending dns queries, drop query");
+            return;
+        }
+        pendingQuery.setTimeout(scheduleTimeout(eventLoop, () -> dnsContext.expirePending(id, pendingQuery), DNS_QUERY_TIMEOUT));
+
+        // 2 bytes length before each message, rfc 1035 tcp framing
+        DnsMessage.setId(message, id);
+        final byte[] frame = new byte[message.length + 2];
+        frame[0] = (byte) (message.length >>> 8);
+        frame[1] = (byte) message.length;
+        System.arraycopy(message, 0, frame, 2, message.length);
+
+        final ClientDnsTunnelContext tunnelContext = dnsContext.getTunnelContext();
+        if (tunnelContext != null && tunnelContext.getStatus() == HikariStatus.HIKARI_DNS) {
+            writeDnsFrame(tunnelContext, frame);
+            return;
+        }
+
+        // sent once the tunnel is up
+        dnsContext.getQueuedFrameList().add(frame);
+        if (tunnelContext == null) {
+            openDnsTunnel(dnsContext);
+        }
+    }
+
+    private void openDnsTunnel(final ClientDnsContext dnsContext) throws IOException {
+        final ClientServerState server = getServer();
+        final Selector selector = dnsContext.key().selector();
+
+        SocketChannel tunnelChannel = SocketChannel.open();
+        try {
+            tunnelChannel.configureBlocking(false);
+            final SelectionKey tunnelKey = tunnelChannel.register(selector, SelectionKey.OP_CONNECT);
+
+            ClientDnsTunnelContext tunnelContext = new ClientDnsTunnelContext(tunnelKey, bufferSize, HikariStatus.HIKARI_AUTH, dnsContext);
+            tunnelContext.setServer(server);
+            tunnelKey.attach(tunnelContext);
+            dnsContext.setTunnelContext(tunnelContext);
+
+            // connect and auth response
+            final int openTimeout = connectTimeout > 0 && handshakeTimeout > 0 ? connectTimeout + handshakeTimeout : 0;
+            tunnelContext.setTimeout(scheduleTimeout(eventLoop, () -> processDnsTunnelTimeout(tunnelContext), openTimeout));
+
+            boolean connectedNow = tunnelChannel.connect(server.getAddress());
+            if (connectedNow) {
+                handleConnect(tunnelKey);
+            }
+        } catch (IOException e) {
+            if (dnsContext.getTunnelContext() != null) {
+                dnsContext.getTunnelContext().close();
+            }
+            else {
+                tunnelChannel.close();
+            }
+            throw e;
+        }
+    }
+
+    private void processDnsTunnelConnect(final SelectionKey key,
+                                         final ClientDnsTunnelContext tunnelContext) {
+        final SocketChannel tunnelChannel = (SocketChannel) key.channel();
+
+        try {
+            try {
+                tunnelChannel.finishConnect();
+            } catch (IOException e) {
+                logger.warn("dns tunnel connect to server fail, msg: {}", e.getMessage());
+                tunnelContext.close();
+                return;
+            }
+
+            // read read
+            key.interestOps(SelectionKey.OP_READ);
+
+            if (!writeTunnelRequest(tunnelChannel, tunnelContext.getServer(), HikariProtocol.ADDRESS_TYPE_DNS_TUNNEL)) {
+                logger.warn("send hikari dns tunnel request fail");
+                tunnelContext.close();
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle dns tunnel connect exception: {}", msg != null ? msg : e.getClass().getName());
+            tunnelContext.close();
+        }
+    }
+
+    /**
+     * request of a connection without target
+     */
+    private boolean writeTunnelRequest(final SocketChannel channel,
+                                       final ClientServerState server,
+                                       final byte hikariAddressType) throws IOException {
+        dataBuffer.clear();
+        putRequestHeader(server, false);
+        dataBuffer.put(hikariAddressType);
+        dataBuffer.flip();
+
+        // encrypt
+        encrypt(dataBuffer, cryptoBuffer, packetBuffer);
+
+        // write
+        channel.write(packetBuffer);
+        return !packetBuffer.hasRemaining();
+    }
+
+    private void processDnsTunnelAuthRead(final SelectionKey key,
+                                          final ClientDnsTunnelContext tunnelContext) throws IOException {
+        final SocketChannel tunnelChannel = (SocketChannel) key.channel();
+        if (!read(tunnelChannel, packetBuffer, tunnelContext)) {
             return;
         }
 
+        final PacketContext packetContext = tunnelContext.getPacketContext();
+        final ByteBuffer frameBuffer = tunnelContext.getFrameBuffer();
+
         // decrypt
-        final PacketContext packetContext = remoteContext.getPacketContext();
-        final ClientLocalContext localContext = remoteContext.getLocalContext();
+        cacheBuffer.clear();
+        while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+            cacheBuffer.put(dataBuffer);
+        }
+        cacheBuffer.flip();
 
+        // ver
+        final byte ver = cacheBuffer.get();
+
+        // reply
+        final byte reply = cacheBuffer.get();
+        if (reply != HikariProtocol.AUTH_RESPONSE_OK) {
+            logger.warn("server: dns tunnel refused, reply: {}", reply);
+            fallBackVersion(tunnelContext.getServer(), ver, reply);
+            tunnelContext.close();
+            return;
+        }
+        readResponseOptions(tunnelContext.getServer(), ver, cacheBuffer);
+
+        // bind address, unused
+        cacheBuffer.get();
+        cacheBuffer.position(cacheBuffer.position() + 4 + 2);
+
+        // set status
+        tunnelContext.setStatus(HikariStatus.HIKARI_DNS);
+        tunnelContext.cancelTimeout();
+
+        // answers that came with the response
+        if (cacheBuffer.hasRemaining()) {
+            frameBuffer.put(cacheBuffer);
+            processDnsFrames(tunnelContext);
+        }
+
+        // queries that waited for the tunnel
+        final ClientDnsContext dnsContext = tunnelContext.getDnsContext();
+        final List<byte[]> queuedFrameList = dnsContext.getQueuedFrameList();
+        for (byte[] frame : queuedFrameList) {
+            writeDnsFrame(tunnelContext, frame);
+        }
+        queuedFrameList.clear();
+    }
+
+    private void processDnsTunnelRead(final SelectionKey key,
+                                      final ClientDnsTunnelContext tunnelContext) throws IOException {
+        final SocketChannel tunnelChannel = (SocketChannel) key.channel();
+        if (!read(tunnelChannel, packetBuffer, tunnelContext)) {
+            return;
+        }
+
+        final PacketContext packetContext = tunnelContext.getPacketContext();
+        final ByteBuffer frameBuffer = tunnelContext.getFrameBuffer();
+
+        // decrypt
+        while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+            if (frameBuffer.remaining() < dataBuffer.remaining()) {
+                logger.warn("dns response too large");
+                tunnelContext.close();
+                return;
+            }
+            frameBuffer.put(dataBuffer);
+        }
+
+        processDnsFrames(tunnelContext);
+    }
+
+    private void processDnsFrames(final ClientDnsTunnelContext tunnelContext) {
+        final ClientDnsContext dnsContext = tunnelContext.getDnsContext();
+        final ByteBuffer frameBuffer = tunnelContext.getFrameBuffer();
+
+        // 2 bytes length before each message, rfc 1035 tcp framing
+        frameBuffer.flip();
+        while (frameBuffer.remaining() >= 2) {
+            final int length = frameBuffer.getShort(frameBuffer.position()) & 0xFFFF;
+            if (frameBuffer.remaining() < 2 + length) {
+                break;
+            }
+
+            frameBuffer.position(frameBuffer.position() + 2);
+            final byte[] response = new byte[length];
+            frameBuffer.get(response);
+            if (length < DnsMessage.HEADER_SIZE) {
+                logger.warn("bad dns response");
+                continue;
+            }
+
+            // late answers of expired queries are dropped
+            final ClientDnsContext.PendingQuery pendingQuery = dnsContext.removePending(DnsMessage.getId(response));
+            if (pendingQuery == null) {
+                continue;
+            }
+
+            final DnsMessage query = pendingQuery.getQuery();
+            dnsContext.putCachedAnswer(query.getCacheKey(), response, eventLoop.currentTime());
+            DnsMessage.setId(response, query.getId());
+            dnsContext.reply(pendingQuery.getSource(), response);
+        }
+        frameBuffer.compact();
+    }
+
+    private void writeDnsFrame(final ClientDnsTunnelContext tunnelContext,
+                               final byte[] frame) throws IOException {
+        dataBuffer.clear();
+        dataBuffer.put(frame);
+        dataBuffer.flip();
+
+        // encrypt
+        encrypt(dataBuffer, cryptoBuffer, packetBuffer);
+
+        // write, a dropped query times out
+        if (!writeOrQueue(tunnelContext, packetBuffer)) {
+            logger.warn("dns tunnel write buffer full, drop query");
+        }
+    }
+
+    private void processDnsTunnelTimeout(final ClientDnsTunnelContext tunnelContext) {
+        logger.warn("dns tunnel open timeout");
+        tunnelContext.close();
+    }
+
+    private void openMuxStream(final ClientLocalContext localContext, final ClientServerState server) throws IOException {
+        final ClientMuxContext muxContext = getMuxContext(localContext.key().selector(), server);
+        final HikariMuxSession muxSession = muxContext.getMuxSession();
+
+        final HikariMuxStream muxStream = new HikariMuxStream(muxSession.nextStreamId(), muxSession);
+        muxStream.setContext(localContext);
+        muxSession.addStream(muxStream);
+        localContext.setMuxStream(muxStream);
+
+        // the server resolves and connects the target within the reply time
+        final int openTimeout = handshakeTimeout > 0 ? handshakeTimeout + Math.max(connectTimeout, 0) : 0;
+        localContext.setTimeout(scheduleTimeout(eventLoop, () -> processMuxOpenTimeout(localContext), openTimeout));
+
+        if (muxContext.getStatus() == HikariStatus.HIKARI_MUX) {
+            writeMuxOpen(localContext);
+        }
+        else {
+            muxContext.getPendingOpenList().add(localContext);
+        }
+    }
+
+    /**
+     * next mux connection round robin, a closed one is opened again
+     */
+    private ClientMuxContext getMuxContext(final Selector selector, final ClientServerState server) throws IOException {
+        final int index = muxIndex;
+        muxIndex = muxIndex + 1 < muxContexts.length ? muxIndex + 1 : 0;
+
+        final ClientMuxContext muxContext = muxContexts[index];
+        if (muxContext != null && !muxContext.isClosed()) {
+            return muxContext;
+        }
+
+        return openMux(selector, index, server);
+    }
+
+    private ClientMuxContext openMux(final Selector selector,
+                                     final int index,
+                                     final ClientServerState server) throws IOException {
+        SocketChannel muxChannel = SocketChannel.open();
+        ClientMuxContext muxContext = null;
+        try {
+            muxChannel.configureBlocking(false);
+            final SelectionKey muxKey = muxChannel.register(selector, SelectionKey.OP_CONNECT);
+
+            muxContext = new ClientMuxContext(muxKey, bufferSize, HikariStatus.HIKARI_AUTH);
+            muxContext.setServer(server);
+            muxContext.setMuxSession(new HikariMuxSession(this, muxContext, bufferSize));
+            muxKey.attach(muxContext);
+            muxContexts[index] = muxContext;
+
+            // connect and auth response
+            final ClientMuxContext timeoutContext = muxContext;
+            final int openTimeout = connectTimeout > 0 && handshakeTimeout > 0 ? connectTimeout + handshakeTimeout : 0;
+            muxContext.setTimeout(scheduleTimeout(eventLoop, () -> processMuxTimeout(timeoutContext), openTimeout));
+
+            boolean connectedNow = muxChannel.connect(server.getAddress());
+            if (connectedNow) {
+                handleConnect(muxKey);
+            }
+            return muxContext;
+        } catch (IOException e) {
+            if (muxContext != null) {
+                muxContext.close();
+            }
+            else {
+                muxChannel.close();
+            }
+            throw e;
+        }
+    }
+
+    private void processMuxConnect(final SelectionKey key,
+                                   final ClientMuxContext muxContext) {
+        final SocketChannel muxChannel = (SocketChannel) key.channel();
+
+        try {
+            try {
+                muxChannel.finishConnect();
+            } catch (IOException e) {
+                logger.warn("mux connect to server fail, msg: {}", e.getMessage());
+                muxContext.close();
+                return;
+            }
+
+            // read read
+            key.interestOps(SelectionKey.OP_READ);
+
+            if (!writeTunnelRequest(muxChannel, muxContext.getServer(), HikariProtocol.ADDRESS_TYPE_MUX)) {
+                logger.warn("send hikari mux request fail");
+                muxContext.close();
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle mux connect exception: {}", msg != null ? msg : e.getClass().getName());
+            muxContext.close();
+        }
+    }
+
+    private void processMuxAuthRead(final SelectionKey key,
+                                    final ClientMuxContext muxContext) throws IOException {
+        final SocketChannel muxChannel = (SocketChannel) key.channel();
+        if (!read(muxChannel, packetBuffer, muxContext)) {
+            return;
+        }
+
+        final PacketContext packetContext = muxContext.getPacketContext();
+
+        // decrypt
         cacheBuffer.clear();
         while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
             cacheBuffer.put(dataBuffer);
         }
         cacheBuffer.flip();
 
-        // write
-        write(remoteContext, localContext, cacheBuffer);
+        // ver
+        final byte ver = cacheBuffer.get();
+
+        // reply
+        final byte reply = cacheBuffer.get();
+        if (reply != HikariProtocol.AUTH_RESPONSE_OK) {
+            logger.warn("server: mux refused, reply: {}", reply);
+            fallBackVersion(muxContext.getServer(), ver, reply);
+
+            // a hikari1 server, the waiting streams reached no target and go over plain connections
+            if (reply == HikariProtocol.AUTH_RESPONSE_VERSION_NOT_SUPPORT && muxContext.getServer().getVersion() == HikariProtocol.VERSION_HIKARI1) {
+                reconnectPendingStreams(muxContext);
+            }
+            muxContext.close();
+            return;
+        }
+        readResponseOptions(muxContext.getServer(), ver, cacheBuffer);
+
+        // bind address, unused
+        cacheBuffer.get();
+        cacheBuffer.position(cacheBuffer.position() + 4 + 2);
+
+        // set status
+        muxContext.setStatus(HikariStatus.HIKARI_MUX);
+        muxContext.cancelTimeout();
+
+        // streams that waited for the connection
+        final List<ClientLocalContext> pendingOpenList = muxContext.getPendingOpenList();
+        for (ClientLocalContext localContext : pendingOpenList) {
+            if (!localContext.isClosed()) {
+                writeMuxOpen(localContext);
+            }
+        }
+        pendingOpenList.clear();
+
+        processMuxFrames(muxContext.getMuxSession());
+    }
+
+    private void reconnectPendingStreams(final ClientMuxContext muxContext) {
+        final ClientServerState server = muxContext.getServer();
+        final List<ClientLocalContext> pendingOpenList = muxContext.getPendingOpenList();
+
+        for (ClientLocalContext localContext : pendingOpenList) {
+            if (localContext.isClosed()) {
+                continue;
+            }
+
+            // the session forgets the stream without closing the local socket
+            final HikariMuxStream muxStream = localContext.getMuxStream();
+            localContext.setMuxStream(null);
+            muxStream.reset();
+            localContext.cancelTimeout();
+
+            try {
+                connect(localContext, server.getAddress(), server);
+            } catch (Exception e) {
+                String msg = e.getMessage();
+                logger.warn("reconnect mux stream exception: {}", msg != null ? msg : e.getClass().getName());
+                localContext.close();
+            }
+        }
+        pendingOpenList.clear();
+    }
+
+    private void processMuxRead(final SelectionKey key,
+                                final ClientMuxContext muxContext) throws IOException {
+        final SocketChannel muxChannel = (SocketChannel) key.channel();
+        final PacketContext packetContext = muxContext.getPacketContext();
+
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!read(muxChannel, packetBuffer, muxContext)) {
+                return;
+            }
+            final int length = packetBuffer.remaining();
+            bufferFilled = length == packetBuffer.capacity();
+
+            // decrypt, whole packets hold whole frames
+            cacheBuffer.clear();
+            while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+                cacheBuffer.put(dataBuffer);
+            }
+            cacheBuffer.flip();
+
+            processMuxFrames(muxContext.getMuxSession());
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
+    }
+
+    private void processMuxFrames(final HikariMuxSession muxSession) throws IOException {
+        while (cacheBuffer.hasRemaining()) {
+            if (cacheBuffer.remaining() < HikariProtocol.MUX_FRAME_HEADER_SIZE) {
+                throw new HikariRuntimeException("bad mux frame");
+            }
+
+            final byte type = cacheBuffer.get();
+            final int id = cacheBuffer.getInt();
+            final int payloadLength = cacheBuffer.getShort() & 0xFFFF;
+            if (cacheBuffer.remaining() < payloadLength) {
+                throw new HikariRuntimeException("bad mux frame");
+            }
+
+            final int limit = cacheBuffer.limit();
+            final int end = cacheBuffer.position() + payloadLength;
+            cacheBuffer.limit(end);
+            processMuxFrame(muxSession, type, id, cacheBuffer);
+            cacheBuffer.limit(limit);
+            cacheBuffer.position(end);
+        }
+    }
+
+    private void processMuxFrame(final HikariMuxSession muxSession,
+                                 final byte type,
+                                 final int id,
+                                 final ByteBuffer payload) throws IOException {
+        // frames of a stream closed here meanwhile are dropped
+        final HikariMuxStream muxStream = muxSession.getStream(id);
+        if (muxStream == null) {
+            return;
+        }
+
+        // a failing local connection or a stream breaking its window only ends that stream
+        try {
+            switch (type) {
+                case HikariProtocol.MUX_FRAME_REPLY:
+                    processMuxReply(muxStream, payload);
+                    break;
+
+                case HikariProtocol.MUX_FRAME_DATA:
+                    final HikariIdleTimeout idle = ((ClientLocalContext) muxStream.getContext()).getIdleTimeout();
+                    if (idle != null) {
+                        idle.touch(eventLoop.currentTime());
+                    }
+                    muxStream.deliver(payload);
+                    break;
+
+                case HikariProtocol.MUX_FRAME_WINDOW:
+                    muxStream.addWindow(payload.getInt());
+                    break;
+
+                case HikariProtocol.MUX_FRAME_CLOSE:
+                    muxStream.remoteClose();
+                    break;
+
+                default:
+                    throw new HikariRuntimeException(String.format("mux frame type '%s' not supported", type));
+            }
+        } catch (IOException | HikariRuntimeException e) {
+            logger.warn("mux stream {} reset, msg: {}", id, e.getMessage());
+            muxStream.close();
+        }
+    }
+
+    private void processMuxReply(final HikariMuxStream muxStream,
+                                 final ByteBuffer payload) throws IOException {
+        final ClientLocalContext localContext = (ClientLocalContext) muxStream.getContext();
+        final SelectionKey localKey = localContext.key();
+        final SocketChannel localChannel = (SocketChannel) localKey.channel();
+        localContext.cancelTimeout();
+
+        final byte reply = payload.get();
+        if (reply == HikariProtocol.AUTH_RESPONSE_OK) {
+            // bind address type and address
+            final byte bindHikariAddressType = payload.get();
+            final byte socks5AddressType;
+            final byte[] bindAddress;
+
+            if (bindHikariAddressType == HikariProtocol.ADDRESS_TYPE_IPV4) {
+                socks5AddressType = Socks5Protocol.ADDRESS_TYPE_IPV4;
+                bindAddress = new byte[4];
+            }
+            else if (bindHikariAddressType == HikariProtocol.ADDRESS_TYPE_IPV6) {
+                socks5AddressType = Socks5Protocol.ADDRESS_TYPE_IPV6;
+                bindAddress = new byte[16];
+            }
+            else {
+                throw new HikariRuntimeException(String.format("hikari address type '%s' not supported", bindHikariAddressType));
+            }
+            payload.get(bindAddress);
+
+            // bind port
+            final byte[] bindPort = new byte[2];
+            payload.get(bindPort);
+
+            // response
+            if (!writeSocksSucceeded(localContext, localChannel, socks5AddressType, bindAddress, bindPort)) {
+                localContext.close();
+                return;
+            }
+
+            // set status
+            localContext.setStatus(SocksStatus.SOCKS_PROXY);
+
+            final HikariIdleTimeout idle = new HikariIdleTimeout(localContext, idleTimeout);
+            localContext.setIdleTimeout(idle);
+            idle.start(eventLoop);
+
+            // open
+            localKey.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+
+        // the server dropped the stream already
+        muxStream.reset();
+
+        final byte socks5Rsp;
+        if (reply == HikariProtocol.AUTH_RESPONSE_DNS_RESOLVE_FAIL) {
+            logger.warn("server: DNS resolve fail, domain name: {}", new String(localContext.getAddress(), StandardCharsets.US_ASCII));
+            socks5Rsp = Socks5Protocol.REQ_REPLAY_HOST_UNREACHABLE;
+        }
+        else if (reply == HikariProtocol.AUTH_RESPONSE_CONNECT_TARGET_FAIL) {
+            logger.warn("server: connect to target fail");
+            socks5Rsp = Socks5Protocol.REQ_REPLAY_NETWORK_UNREACHABLE;
+        }
+        else {
+            logger.warn("bad server mux reply, reply: {}", reply);
+            socks5Rsp = Socks5Protocol.REQ_REPLAY_GENERAL_FAILURE;
+        }
+        writeSocksFail(socks5Rsp, localChannel, localContext, localContext);
+    }
+
+    private void writeMuxOpen(final ClientLocalContext localContext) throws IOException {
+        final HikariMuxStream muxStream = localContext.getMuxStream();
+        final byte hikariAddressType = localContext.getHikariAddressType();
+        final byte[] address = localContext.getAddress();
+
+        // target, as in the auth request
+        dataBuffer.clear();
+        dataBuffer.put(hikariAddressType);
+        if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_DOMAIN) {
+            dataBuffer.put((byte) address.length);
+        }
+        dataBuffer.put(address);
+        dataBuffer.put(localContext.getPort());
+        dataBuffer.flip();
+
+        muxStream.getSession().writeFrame(HikariProtocol.MUX_FRAME_OPEN, muxStream.getId(), dataBuffer);
+    }
+
+    private void processMuxOpenTimeout(final ClientLocalContext localContext) {
+        if (localContext.isClosed()) {
+            return;
+        }
+
+        logger.warn("server: mux reply timeout");
+
+        try {
+            writeSocksFail(Socks5Protocol.REQ_REPLAY_TTL_EXPIRED, (SocketChannel) localContext.key().channel(), localContext, localContext);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle mux reply timeout exception: {}", msg != null ? msg : e.getClass().getName());
+            localContext.close();
+        }
+    }
+
+    private void processMuxTimeout(final ClientMuxContext muxContext) {
+        logger.warn("mux open timeout");
+        muxContext.close();
+    }
+
+    /**
+     * the first member was accepted, the others join while data already flows
+     */
+    private void startBond(final ClientLocalContext localContext,
+                           final ClientRemoteContext remoteContext,
+                           final HikariBond bond) throws IOException {
+        startProxy(localContext, remoteContext);
+        remoteContext.setStatus(HikariStatus.HIKARI_BOND);
+
+        bond.setStream(localContext);
+        bond.addMember(remoteContext);
+
+        final Selector selector = localContext.key().selector();
+        for (int i = 1; i < bondConnections; i++) {
+            openBondJoin(selector, localContext, bond);
+        }
+    }
+
+    private void openBondJoin(final Selector selector,
+                              final ClientLocalContext localContext,
+                              final HikariBond bond) throws IOException {
+        final ClientServerState server = getServer();
+
+        SocketChannel bondChannel = SocketChannel.open();
+        ClientBondContext bondContext = null;
+        try {
+            bondChannel.configureBlocking(false);
+            final SelectionKey bondKey = bondChannel.register(selector, SelectionKey.OP_CONNECT);
+
+            bondContext = new ClientBondContext(bondKey, bufferSize, HikariStatus.HIKARI_AUTH, localContext, bond);
+            bondContext.setServer(server);
+            bondKey.attach(bondContext);
+
+            // connect and auth response
+            final ClientBondContext timeoutContext = bondContext;
+            final int joinTimeout = connectTimeout > 0 && handshakeTimeout > 0 ? connectTimeout + handshakeTimeout : 0;
+            bondContext.setTimeout(scheduleTimeout(eventLoop, () -> processBondJoinTimeout(timeoutContext), joinTimeout));
+
+            boolean connectedNow = bondChannel.connect(server.getAddress());
+            if (connectedNow) {
+                handleConnect(bondKey);
+            }
+        } catch (IOException e) {
+            // the bond goes on with the members it has
+            logger.warn("bond connect to server exception, msg: {}", e.getMessage());
+            if (bondContext != null) {
+                bondContext.close();
+            }
+            else {
+                bondChannel.close();
+            }
+        }
+    }
+
+    private void processBondConnect(final SelectionKey key,
+                                    final ClientBondContext bondContext) {
+        final SocketChannel bondChannel = (SocketChannel) key.channel();
+
+        try {
+            try {
+                bondChannel.finishConnect();
+            } catch (IOException e) {
+                logger.warn("bond connect to server fail, msg: {}", e.getMessage());
+                bondContext.close();
+                return;
+            }
+
+            // short streams end before their members connected
+            if (bondContext.getBond().isClosed()) {
+                bondContext.close();
+                return;
+            }
+
+            // read read
+            key.interestOps(SelectionKey.OP_READ);
+
+            // request
+            dataBuffer.clear();
+            putRequestHeader(bondContext.getServer(), false);
+            dataBuffer.put(HikariProtocol.ADDRESS_TYPE_BOND);
+            dataBuffer.putLong(bondContext.getBond().getId());
+            dataBuffer.put(HikariProtocol.BOND_JOIN);
+            dataBuffer.flip();
+
+            // encrypt
+            encrypt(dataBuffer, cryptoBuffer, packetBuffer);
+
+            // write
+            bondChannel.write(packetBuffer);
+            if (packetBuffer.hasRemaining()) {
+                logger.warn("send hikari bond request fail");
+                bondContext.close();
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle bond connect exception: {}", msg != null ? msg : e.getClass().getName());
+            bondContext.close();
+        }
+    }
+
+    private void processBondJoinRead(final SelectionKey key,
+                                     final ClientBondContext bondContext) throws IOException {
+        final SocketChannel bondChannel = (SocketChannel) key.channel();
+        if (!read(bondChannel, packetBuffer, bondContext)) {
+            return;
+        }
+
+        final PacketContext packetContext = bondContext.getPacketContext();
+        final HikariBond bond = bondContext.getBond();
+
+        // decrypt the response only, bond frames may follow
+        if (!decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+            return;
+        }
+
+        // ver
+        final byte ver = dataBuffer.get();
+
+        // reply
+        final byte reply = dataBuffer.get();
+        if (reply != HikariProtocol.AUTH_RESPONSE_OK) {
+            if (reply == HikariProtocol.AUTH_RESPONSE_BOND_NOT_FOUND) {
+                logger.debug("server: bond ended before join");
+            }
+            else {
+                logger.warn("server: bond join refused, reply: {}", reply);
+                fallBackVersion(bondContext.getServer(), ver, reply);
+            }
+            bondContext.close();
+            return;
+        }
+        readResponseOptions(bondContext.getServer(), ver, dataBuffer);
+
+        // closed meanwhile or full
+        if (!bond.addMember(bondContext)) {
+            bondContext.close();
+            return;
+        }
+
+        // set status
+        bondContext.setStatus(HikariStatus.HIKARI_BOND);
+        bondContext.cancelTimeout();
+
+        processBondPackets(bondContext, packetContext, bond);
+    }
+
+    private void processBondRead(final SelectionKey key,
+                                 final ClientContext context,
+                                 final PacketContext packetContext,
+                                 final ClientLocalContext localContext) throws IOException {
+        final SocketChannel channel = (SocketChannel) key.channel();
+        final HikariBond bond = localContext.getBond();
+        localContext.getIdleTimeout().touch(eventLoop.currentTime());
+
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!read(channel, packetBuffer, context)) {
+                return;
+            }
+            final int length = packetBuffer.remaining();
+            bufferFilled = length == packetBuffer.capacity();
+
+            processBondPackets(context, packetContext, bond);
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
+    }
+
+    /**
+     * decrypt what is left in the packet buffer, a packet holds a frame
+     */
+    private void processBondPackets(final ClientContext context,
+                                    final PacketContext packetContext,
+                                    final HikariBond bond) throws IOException {
+        while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+            bond.receive(context, dataBuffer);
+        }
+    }
+
+    private void processBondJoinTimeout(final ClientBondContext bondContext) {
+        logger.warn("bond join timeout");
+        bondContext.close();
+    }
+
+    private void processDirectProxyRead(final SelectionKey key,
+                                        final ClientContext srcContext,
+                                        final ClientContext dstContext,
+                                        final ClientLocalContext localContext) throws IOException {
+        final SocketChannel srcChannel = (SocketChannel) key.channel();
+        localContext.getIdleTimeout().touch(eventLoop.currentTime());
+
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!read(srcChannel, dataBuffer, srcContext)) {
+                return;
+            }
+            final int length = dataBuffer.remaining();
+            bufferFilled = length == dataBuffer.capacity();
+
+            // write, plain
+            write(srcContext, dstContext, dataBuffer);
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
+    }
+
+    private boolean writeSocksSucceeded(final ClientLocalContext localContext,
+                                        final SocketChannel localChannel,
+                                        final byte socks5AddressType,
+                                        final byte[] bindAddress,
+                                        final byte[] bindPort) throws IOException {
+        final byte ver = localContext.getSocksVersion();
+        if (ver == Socks5Protocol.VERSION_SOCKS5) {
+            dataBuffer.clear();
+            dataBuffer.put(Socks5Protocol.VERSION_SOCKS5);
+            dataBuffer.put(Socks5Protocol.REQ_REPLAY_SUCCEEDED);
+            dataBuffer.put((byte) 0x00);
+            dataBuffer.put(socks5AddressType);
+            dataBuffer.put(bindAddress);
+            dataBuffer.put(bindPort);
+            dataBuffer.flip();
+            localChannel.write(dataBuffer);
+        }
+        else if (ver == Socks4Protocol.VERSION_SOCKS4) {
+            dataBuffer.clear();
+            dataBuffer.put(Socks4Protocol.REQ_REPLAY_VN);
+            dataBuffer.put(Socks4Protocol.REQ_REPLAY_GRANTED);
+            dataBuffer.put(localContext.getPort());
+            dataBuffer.put(localContext.getAddress());
+            dataBuffer.flip();
+            localChannel.write(dataBuffer);
+        }
+        else {
+            logger.warn("socks version '{}' not supported", ver);
+            return false;
+        }
+
+        if (dataBuffer.hasRemaining()) {
+            logger.warn("send socks req response fail");
+            return false;
+        }
+        return true;
+    }
+
+    private void startProxy(final ClientLocalContext localContext,
+                            final ClientRemoteContext remoteContext) {
+        // set status
+        localContext.setStatus(SocksStatus.SOCKS_PROXY);
+        remoteContext.setStatus(HikariStatus.HIKARI_PROXY);
+        remoteContext.cancelTimeout();
+
+        final HikariIdleTimeout idle = new HikariIdleTimeout(localContext, idleTimeout);
+        localContext.setIdleTimeout(idle);
+        idle.start(eventLoop);
+
+        // open
+        localContext.key().interestOps(SelectionKey.OP_READ);
+    }
+
+    private void processHandshakeTimeout(final ClientLocalContext localContext) {
+        if (localContext.isClosed()) {
+            return;
+        }
+
+        logger.debug("socks handshake timeout");
+        localContext.close();
+    }
+
+    private void processConnectServerTimeout(final ClientRemoteContext remoteContext) {
+        final ClientLocalContext localContext = remoteContext.getLocalContext();
+        if (localContext.isClosed()) {
+            return;
+        }
+
+        logger.warn("connect to {} timeout", remoteContext.isDirect() ? "target" : "server");
+
+        try {
+            writeConnectServerFail(Socks5Protocol.REQ_REPLAY_TTL_EXPIRED, (SocketChannel) localContext.key().channel(), remoteContext);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle connect timeout exception: {}", msg != null ? msg : e.getClass().getName());
+            remoteContext.close();
+        }
+    }
+
+    private void processHikariAuthTimeout(final ClientRemoteContext remoteContext) {
+        final ClientLocalContext localContext = remoteContext.getLocalContext();
+        if (localContext.isClosed()) {
+            return;
+        }
+
+        logger.warn("server: hikari auth response timeout");
+
+        try {
+            writeConnectServerFail(Socks5Protocol.REQ_REPLAY_TTL_EXPIRED, (SocketChannel) localContext.key().channel(), remoteContext);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle hikari auth timeout exception: {}", msg != null ? msg : e.getClass().getName());
+            remoteContext.close();
+        }
+    }
+
+    private void writeConnectServerFail(final byte socks5Rsp,
+                                        final SocketChannel localChannel,
+                                        final ClientRemoteContext remoteContext) throws IOException {
+        // the application was told success already, only closing is left
+        if (remoteContext.getLocalContext().isEarlyReplied()) {
+            remoteContext.close();
+            return;
+        }
+
+        writeSocksFail(socks5Rsp, localChannel, remoteContext.getLocalContext(), remoteContext);
+    }
+
+    /**
+     * failure reply in the socks version of the local connection, closes the context afterwards
+     */
+    private void writeSocksFail(final byte socks5Rsp,
+                                final SocketChannel localChannel,
+                                final ClientLocalContext localContext,
+                                final ClientContext context) throws IOException {
+        final byte ver = localContext.getSocksVersion();
+
+        if (ver == Socks5Protocol.VERSION_SOCKS5) {
+            writeSocks5Fail(socks5Rsp, localChannel, context);
+        }
+        else if (ver == Socks4Protocol.VERSION_SOCKS4) {
+            writeSocks4Fail(Socks4Protocol.REQ_REPLAY_REJECTED_OR_FAILED, localChannel, context);
+        }
+        else {
+            logger.warn("socks version '{}' not supported", ver);
+            context.close();
+        }
     }
 
     private void writeSocks4Fail(final byte rsp,
@@ -667,6 +2108,46 @@ public class ClientHandler extends HikariAbstractHandle {
         context.close();
     }
 
+    /**
+     * version and key hash, a hikari2 request also carries the options of this client
+     */
+    private void putRequestHeader(final ClientServerState server, final boolean offerFrameSize) {
+        final byte version = server.getVersion();
+        dataBuffer.put(version);
+        dataBuffer.put(privateKeyHash);
+        if (version == HikariProtocol.VERSION_HIKARI2) {
+            new HikariCapability(offerFrameSize ? bufferSize : null, HikariProtocol.FEATURES_ALL).write(dataBuffer);
+        }
+    }
+
+    /**
+     * options of an ok response, null for a hikari1 server
+     */
+    private HikariCapability readResponseOptions(final ClientServerState server, final byte ver, final ByteBuffer buffer) {
+        if (ver != HikariProtocol.VERSION_HIKARI2) {
+            return null;
+        }
+
+        final HikariCapability capability = HikariCapability.read(buffer);
+        server.update(capability);
+        return capability;
+    }
+
+    private void fallBackVersion(final ClientServerState server, final byte ver, final byte reply) {
+        if (reply == HikariProtocol.AUTH_RESPONSE_VERSION_NOT_SUPPORT) {
+            fallBackVersion(server, ver);
+        }
+    }
+
+    /**
+     * a server that does not know hikari2 answers in hikari1, later requests to it use hikari1 without any feature
+     */
+    private void fallBackVersion(final ClientServerState server, final byte ver) {
+        if (server.fallBack(ver)) {
+            logger.warn("server {} does not support hikari2, falling back to hikari1", server.getAddress());
+        }
+    }
+
     private void sendHikariRequest(final ClientLocalContext localContext, final ClientRemoteContext remoteContext) throws IOException {
         final SocketChannel remoteChannel = (SocketChannel) remoteContext.key().channel();
 
@@ -674,16 +2155,39 @@ public class ClientHandler extends HikariAbstractHandle {
         final byte[] address = localContext.getAddress();
         final byte[] port = localContext.getPort();
 
-        // request
+        // request, bond frames are sized by the buffer so only plain streams offer a frame size
+        final HikariBond bond = localContext.getBond();
+        final ClientServerState server = remoteContext.getServer();
         dataBuffer.clear();
-        dataBuffer.put(HikariProtocol.VERSION_HIKARI1);
-        dataBuffer.put(privateKeyHash);
+        putRequestHeader(server, bond == null);
+        remoteContext.setVersion(server.getVersion());
+        if (server.getVersion() == HikariProtocol.VERSION_HIKARI2) {
+            remoteContext.setFrameSize(server.getFrameSize());
+        }
+        if (bond != null) {
+            dataBuffer.put(HikariProtocol.ADDRESS_TYPE_BOND);
+            dataBuffer.putLong(bond.getId());
+            dataBuffer.put(HikariProtocol.BOND_OPEN);
+        }
         dataBuffer.put(hikariAddressType);
         if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_DOMAIN) {
             dataBuffer.put((byte) address.length);
         }
         dataBuffer.put(address);
         dataBuffer.put(port);
+
+        // early data in the same packet, kept until a server not known yet answers. a hikari1 request leaves it out
+        final ByteBuffer earlyBuffer = localContext.getEarlyBuffer();
+        if (earlyBuffer != null && server.getVersion() == HikariProtocol.VERSION_HIKARI2) {
+            earlyBuffer.flip();
+            dataBuffer.put(earlyBuffer);
+            if (server.isConfirmed()) {
+                localContext.setEarlyBuffer(null);
+            }
+            else {
+                earlyBuffer.rewind();
+            }
+        }
         dataBuffer.flip();
 
         // encrypt
@@ -697,12 +2201,12 @@ public class ClientHandler extends HikariAbstractHandle {
         }
     }
 
-    private SocketAddress getServerAddress() {
-        SocketAddress serverAddress = serverAddressArray[currentAddressIndex++];
+    private ClientServerState getServer() {
+        ClientServerState server = serverStateArray[currentAddressIndex++];
         if (currentAddressIndex > maxAddressIndex) {
             currentAddressIndex = 0;
         }
 
-        return serverAddress;
+        return server;
     }
 }
@@ -1,10 +1,14 @@
 package com.github.yukinomiu.hikari.client;
 
+import com.github.yukinomiu.hikari.common.HikariBond;
+import com.github.yukinomiu.hikari.common.HikariIdleTimeout;
+import com.github.yukinomiu.hikari.common.HikariMuxStream;
 import com.github.yukinomiu.hikari.common.SocksStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
@@ -18,6 +22,13 @@ public class ClientLocalContext extends ClientContext {
 
     private SocksStatus status;
     private ClientRemoteContext remoteContext;
+    private HikariIdleTimeout idleTimeout;
+
+    // stream on a shared server connection, instead of a remote context of its own
+    private HikariMuxStream muxStream;
+
+    // stream striped over several server connections, the remote context is the first of them
+    private HikariBond bond;
 
     // socks protocol
     private byte socksVersion;
@@ -27,6 +38,10 @@ public class ClientLocalContext extends ClientContext {
     private byte[] address;
     private byte[] port;
 
+    // fast open, success already replied and data read before the server connection is up
+    private boolean earlyReplied;
+    private ByteBuffer earlyBuffer;
+
     public ClientLocalContext(final SelectionKey key,
                               final Integer bufferSize,
                               final SocksStatus status) {
@@ -40,6 +55,10 @@ public class ClientLocalContext extends ClientContext {
             return;
         }
         closed = true;
+        cancelTimeout();
+        if (idleTimeout != null) {
+            idleTimeout.cancel();
+        }
 
         final SelectionKey key = key();
         if (key != null) {
@@ -56,6 +75,14 @@ public class ClientLocalContext extends ClientContext {
         if (remoteContext != null) {
             remoteContext.close();
         }
+
+        if (muxStream != null) {
+            muxStream.close();
+        }
+
+        if (bond != null) {
+            bond.close();
+        }
     }
 
     public SocksStatus getStatus() {
@@ -74,6 +101,22 @@ public class ClientLocalContext extends ClientContext {
         this.remoteContext = remoteContext;
     }
 
+    public HikariMuxStream getMuxStream() {
+        return muxStream;
+    }
+
+    public void setMuxStream(HikariMuxStream muxStream) {
+        this.muxStream = muxStream;
+    }
+
+    public HikariBond getBond() {
+        return bond;
+    }
+
+    public void setBond(HikariBond bond) {
+        this.bond = bond;
+    }
+
     public byte getSocksVersion() {
         return socksVersion;
     }
@@ -105,4 +148,32 @@ public class ClientLocalContext extends ClientContext {
     public void setPort(byte[] port) {
         this.port = port;
     }
+
+    public boolean isEarlyReplied() {
+        return earlyReplied;
+    }
+
+    public void setEarlyReplied(boolean earlyReplied) {
+        this.earlyReplied = earlyReplied;
+    }
+
+    public ByteBuffer getEarlyBuffer() {
+        return earlyBuffer;
+    }
+
+    public void setEarlyBuffer(ByteBuffer earlyBuffer) {
+        this.earlyBuffer = earlyBuffer;
+    }
+
+    public HikariIdleTimeout getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(HikariIdleTimeout idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
 }
@@ -0,0 +1,93 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.HikariMuxSession;
+import com.github.yukinomiu.hikari.common.HikariStatus;
+import com.github.yukinomiu.hikari.common.PacketContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * hikari connection shared by the streams of many local connections, carries mux frames once authenticated
+ * <p>
+ * Yukinomiu
+ * 2018/2/17
+ */
+public class ClientMuxContext extends ClientContext {
+    private static final Logger logger = LoggerFactory.getLogger(ClientMuxContext.class);
+    private boolean closed = false;
+    private final PacketContext packetContext;
+
+    private HikariStatus status;
+    private HikariMuxSession muxSession;
+
+    // streams opened before the auth response, their open frames are sent after it
+    private final List<ClientLocalContext> pendingOpenList = new ArrayList<>();
+
+    public ClientMuxContext(final SelectionKey key,
+                            final Integer bufferSize,
+                            final HikariStatus status) {
+        super(ClientContextType.MUX, key, bufferSize);
+        packetContext = new PacketContext(bufferSize);
+        this.status = status;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancelTimeout();
+
+        final SelectionKey key = key();
+        if (key != null) {
+            key.cancel();
+
+            try {
+                SocketChannel socketChannel = (SocketChannel) key.channel();
+                socketChannel.close();
+            } catch (IOException e) {
+                logger.warn("close mux socket channel exception, msg: {}", e.getMessage());
+            }
+        }
+
+        pendingOpenList.clear();
+        if (muxSession != null) {
+            muxSession.close();
+        }
+    }
+
+    public PacketContext getPacketContext() {
+        return packetContext;
+    }
+
+    public HikariStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(HikariStatus status) {
+        this.status = status;
+    }
+
+    public HikariMuxSession getMuxSession() {
+        return muxSession;
+    }
+
+    public void setMuxSession(HikariMuxSession muxSession) {
+        this.muxSession = muxSession;
+    }
+
+    public List<ClientLocalContext> getPendingOpenList() {
+        return pendingOpenList;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.yukinomiu.hikari.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * server connection waiting in the pool, handed over to a remote context once taken
+ * <p>
+ * Yukinomiu
+ * 2018/2/18
+ */
+public class ClientPooledContext extends ClientContext {
+    private static final Logger logger = LoggerFactory.getLogger(ClientPooledContext.class);
+    private boolean closed = false;
+    private boolean taken = false;
+
+    private final ClientServerPool pool;
+    private final SocketAddress serverAddress;
+
+    public ClientPooledContext(final SelectionKey key,
+                               final Integer bufferSize,
+                               final ClientServerPool pool,
+                               final SocketAddress serverAddress) {
+        super(ClientContextType.POOLED, key, bufferSize);
+        this.pool = pool;
+        this.serverAddress = serverAddress;
+    }
+
+    @Override
+    public void close() {
+        if (closed || taken) {
+            return;
+        }
+        closed = true;
+        cancelTimeout();
+
+        final SelectionKey key = key();
+        if (key != null) {
+            key.cancel();
+
+            try {
+                SocketChannel socketChannel = (SocketChannel) key.channel();
+                socketChannel.close();
+            } catch (IOException e) {
+                logger.warn("close pooled socket channel exception, msg: {}", e.getMessage());
+            }
+        }
+
+        pool.closed(this);
+    }
+
+    /**
+     * the connection belongs to the taker from now on
+     */
+    public void take() {
+        taken = true;
+        cancelTimeout();
+    }
+
+    public SocketAddress getServerAddress() {
+        return serverAddress;
+    }
+}
@@ -21,14 +21,24 @@ public class ClientRemoteContext extends ClientContext {
     private HikariStatus status;
     private final ClientLocalContext localContext;
 
+    // plain connection to the target, not through the server
+    private final boolean direct;
+
+    // version of the request and largest packet data sent to the server
+    private byte version;
+    private int frameSize;
+
     public ClientRemoteContext(final SelectionKey key,
                                final Integer bufferSize,
                                final HikariStatus status,
-                               final ClientLocalContext localContext) {
+                               final ClientLocalContext localContext,
+                               final boolean direct) {
         super(ClientContextType.REMOTE, key, bufferSize);
         packetContext = new PacketContext(bufferSize);
         this.status = status;
         this.localContext = localContext;
+        this.direct = direct;
+        frameSize = bufferSize;
     }
 
     @Override
@@ -37,6 +47,26 @@ public class ClientRemoteContext extends ClientContext {
             return;
         }
         closed = true;
+        closeChannel();
+
+        if (localContext != null) {
+            localContext.close();
+        }
+    }
+
+    /**
+     * closes this connection only, the local connection goes on over another one
+     */
+    public void abandon() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        cancelTimeout();
 
         final SelectionKey key = key();
         if (key != null) {
@@ -49,10 +79,6 @@ public class ClientRemoteContext extends ClientContext {
                 logger.warn("close remote socket channel exception, msg: {}", e.getMessage());
             }
         }
-
-        if (localContext != null) {
-            localContext.close();
-        }
     }
 
     public PacketContext getPacketContext() {
@@ -70,4 +96,24 @@ public class ClientRemoteContext extends ClientContext {
     public ClientLocalContext getLocalContext() {
         return localContext;
     }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public byte getVersion() {
+        return version;
+    }
+
+    public void setVersion(byte version) {
+        this.version = version;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public void setFrameSize(int frameSize) {
+        this.frameSize = frameSize;
+    }
 }
@@ -0,0 +1,13 @@
+package com.github.yukinomiu.hikari.client;
+
+/**
+ * where a socks request goes
+ * <p>
+ * Yukinomiu
+ * 2018/2/17
+ */
+public enum ClientRoute {
+    DIRECT,
+    TUNNEL,
+    REJECT,
+}
@@ -0,0 +1,158 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.exception.HikariException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * immutable routing rules compiled from a rule file, safe to share between loops
+ * <p>
+ * one rule per line, 'action pattern' where action is direct, tunnel or reject and pattern an ip, a cidr block
+ * or a domain suffix. '#' starts a comment. the longest match wins, a later rule for the same pattern overrides
+ * <p>
+ * Yukinomiu
+ * 2018/2/17
+ */
+public final class ClientRouteTable {
+    private final ClientCidrTrie ipv4Trie = new ClientCidrTrie(32);
+    private final ClientCidrTrie ipv6Trie = new ClientCidrTrie(128);
+    private final ClientDomainTrie domainTrie = new ClientDomainTrie();
+
+    private ClientRouteTable() {
+    }
+
+    public static ClientRouteTable load(final Path path) throws IOException, HikariException {
+        final ClientRouteTable table = new ClientRouteTable();
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                final int commentIndex = line.indexOf('#');
+                if (commentIndex >= 0) {
+                    line = line.substring(0, commentIndex);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                final String[] parts = line.split("\\s+");
+                if (parts.length != 2) {
+                    throw new HikariException(String.format("bad route rule at %s:%d", path, lineNumber));
+                }
+
+                try {
+                    table.add(ClientRoute.valueOf(parts[0].toUpperCase(Locale.ROOT)), parts[1]);
+                } catch (IllegalArgumentException | UnknownHostException e) {
+                    throw new HikariException(String.format("bad route rule at %s:%d, %s", path, lineNumber, e.getMessage()));
+                }
+            }
+        }
+
+        table.ipv4Trie.compile();
+        table.ipv6Trie.compile();
+        return table;
+    }
+
+    /**
+     * route of the longest domain rule covering the domain, null when no domain rule does
+     */
+    public ClientRoute lookupDomain(final byte[] domain) {
+        return domainTrie.lookup(domain);
+    }
+
+    /**
+     * route of the longest block containing the 4 or 16 byte address, null when none does
+     */
+    public ClientRoute lookupAddress(final byte[] address) {
+        return address.length == 4 ? ipv4Trie.lookup(address) : ipv6Trie.lookup(address);
+    }
+
+    public int getCidrCount() {
+        return ipv4Trie.size() + ipv6Trie.size();
+    }
+
+    public int getDomainCount() {
+        return domainTrie.size();
+    }
+
+    private void add(final ClientRoute route, final String pattern) throws UnknownHostException {
+        final int slashIndex = pattern.indexOf('/');
+        final String addressPart = slashIndex >= 0 ? pattern.substring(0, slashIndex) : pattern;
+
+        final byte[] address;
+        if (addressPart.indexOf(':') >= 0) {
+            // literal, never looked up
+            final InetAddress inetAddress = InetAddress.getByName(addressPart);
+            if (inetAddress instanceof Inet4Address) {
+                throw new IllegalArgumentException(String.format("mapped address '%s' not supported", addressPart));
+            }
+            address = inetAddress.getAddress();
+        }
+        else if (isIpv4(addressPart)) {
+            address = parseIpv4(addressPart);
+        }
+        else if (slashIndex < 0) {
+            domainTrie.put(pattern, route);
+            return;
+        }
+        else {
+            throw new IllegalArgumentException(String.format("bad cidr block '%s'", pattern));
+        }
+
+        final int prefixLength = slashIndex >= 0 ? Integer.parseInt(pattern.substring(slashIndex + 1)) : address.length << 3;
+        if (address.length == 4) {
+            ipv4Trie.put(address, prefixLength, route);
+        }
+        else {
+            ipv6Trie.put(address, prefixLength, route);
+        }
+    }
+
+    private static boolean isIpv4(final String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] parseIpv4(final String text) {
+        final String[] parts = text.split("\\.", -1);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException(String.format("bad ipv4 address '%s'", text));
+        }
+
+        final byte[] address = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            if (parts[i].isEmpty() || parts[i].length() > 3) {
+                throw new IllegalArgumentException(String.format("bad ipv4 address '%s'", text));
+            }
+
+            final int value = Integer.parseInt(parts[i]);
+            if (value > 255) {
+                throw new IllegalArgumentException(String.format("bad ipv4 address '%s'", text));
+            }
+            address[i] = (byte) value;
+        }
+
+        return address;
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.exception.HikariException;
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * split routing of socks requests, the compiled rule table is swapped as a whole when the rule file changes
+ * <p>
+ * Yukinomiu
+ * 2018/2/17
+ */
+public class ClientRouter {
+    private static final Logger logger = LoggerFactory.getLogger(ClientRouter.class);
+    private static final int DEFAULT_ROUTE_RELOAD_INTERVAL = 10;
+
+    private final Path routePath;
+    private final ClientRoute defaultRoute;
+    private volatile ClientRouteTable table;
+    private long lastModified;
+
+    private ScheduledExecutorService reloadScheduler;
+
+    public ClientRouter(final ClientConfig config) throws IOException {
+        routePath = Paths.get(config.getRouteFile());
+
+        final String routeDefault = config.getRouteDefault();
+        if (routeDefault == null) {
+            defaultRoute = ClientRoute.TUNNEL;
+        }
+        else {
+            try {
+                defaultRoute = ClientRoute.valueOf(routeDefault.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new HikariRuntimeException(String.format("default route '%s' not supported", routeDefault));
+            }
+        }
+        logger.info("default route: {}", defaultRoute.name().toLowerCase(Locale.ROOT));
+
+        // a broken file fails the start, later it only keeps the running table
+        lastModified = Files.getLastModifiedTime(routePath).toMillis();
+        try {
+            load();
+        } catch (HikariException e) {
+            throw new HikariRuntimeException(e.getMessage(), e);
+        }
+
+        final Integer routeReloadInterval = config.getRouteReloadInterval();
+        final int interval = routeReloadInterval != null ? routeReloadInterval : DEFAULT_ROUTE_RELOAD_INTERVAL;
+        if (interval > 0) {
+            reloadScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "client-route-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloadScheduler.scheduleWithFixedDelay(this::reloadIfModified, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * route of the domain rules, null when none covers the domain and its addresses decide
+     */
+    public ClientRoute routeDomain(final byte[] domain) {
+        return table.lookupDomain(domain);
+    }
+
+    public ClientRoute routeAddress(final byte[] address) {
+        final ClientRoute route = table.lookupAddress(address);
+        return route != null ? route : defaultRoute;
+    }
+
+    public ClientRoute getDefaultRoute() {
+        return defaultRoute;
+    }
+
+    public void stop() {
+        if (reloadScheduler != null) {
+            reloadScheduler.shutdownNow();
+        }
+    }
+
+    private void load() throws IOException, HikariException {
+        final long start = System.nanoTime();
+        final ClientRouteTable newTable = ClientRouteTable.load(routePath);
+        table = newTable;
+
+        logger.info("route table loaded from {}, {} cidr and {} domain rules in {} ms", routePath,
+                newTable.getCidrCount(), newTable.getDomainCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void reloadIfModified() {
+        try {
+            final long modified = Files.getLastModifiedTime(routePath).toMillis();
+            if (modified == lastModified) {
+                return;
+            }
+            lastModified = modified;
+
+            load();
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("reload route table exception: {}", msg != null ? msg : e.getClass().getName());
+        }
+    }
+}
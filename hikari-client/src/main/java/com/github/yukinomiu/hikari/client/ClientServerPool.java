@@ -0,0 +1,211 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.HikariEventLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * connected server sockets kept ready per server address, one pool per loop
+ * <p>
+ * an idle socket is retired after its lifetime, which has to stay below the server's handshake timeout.
+ * retired and taken sockets are replaced right away, failed ones after a delay
+ * <p>
+ * Yukinomiu
+ * 2018/2/18
+ */
+public class ClientServerPool {
+    private static final Logger logger = LoggerFactory.getLogger(ClientServerPool.class);
+    private static final int RETRY_DELAY = 1000;
+
+    private final HikariEventLoop eventLoop;
+    private final int bufferSize;
+    private final int size;
+    private final int lifetime;
+    private final int connectTimeout;
+    private final Map<SocketAddress, Endpoint> endpointMap = new HashMap<>();
+    private final ByteBuffer probeBuffer = ByteBuffer.allocate(1);
+
+    public ClientServerPool(final HikariEventLoop eventLoop,
+                            final SocketAddress[] serverAddressArray,
+                            final int bufferSize,
+                            final int size,
+                            final int lifetime,
+                            final int connectTimeout) {
+        this.eventLoop = eventLoop;
+        this.bufferSize = bufferSize;
+        this.size = size;
+        this.lifetime = lifetime;
+        this.connectTimeout = connectTimeout;
+
+        for (SocketAddress serverAddress : serverAddressArray) {
+            endpointMap.put(serverAddress, new Endpoint(serverAddress));
+        }
+    }
+
+    /**
+     * fills all endpoints, must run on the loop
+     */
+    public void start() {
+        for (Endpoint endpoint : endpointMap.values()) {
+            fill(endpoint);
+        }
+    }
+
+    /**
+     * key of a connected socket to the address with nothing attached, null when none is ready
+     */
+    public SelectionKey take(final SocketAddress serverAddress) {
+        final Endpoint endpoint = endpointMap.get(serverAddress);
+        if (endpoint == null) {
+            return null;
+        }
+
+        // the freshest has the most lifetime left
+        ClientPooledContext pooledContext;
+        while ((pooledContext = endpoint.readyQueue.pollLast()) != null) {
+            final SelectionKey key = pooledContext.key();
+            if (key.isValid() && isOpen((SocketChannel) key.channel())) {
+                pooledContext.take();
+                key.attach(null);
+                endpoint.openCount--;
+
+                fill(endpoint);
+                return key;
+            }
+
+            pooledContext.close();
+        }
+
+        fill(endpoint);
+        return null;
+    }
+
+    /**
+     * a socket the server closed stays connected until its end of stream is read, which the loop may not have done yet
+     */
+    private boolean isOpen(final SocketChannel channel) {
+        if (!channel.isConnected()) {
+            return false;
+        }
+
+        // nothing is ever sent on an idle socket, data or the end of stream both mean it is unusable
+        probeBuffer.clear();
+        try {
+            return channel.read(probeBuffer) == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void handleConnect(final SelectionKey key) {
+        final ClientPooledContext pooledContext = (ClientPooledContext) key.attachment();
+        final SocketChannel channel = (SocketChannel) key.channel();
+
+        try {
+            channel.finishConnect();
+            connected(pooledContext);
+        } catch (IOException e) {
+            logger.warn("pooled connect to server fail, msg: {}", e.getMessage());
+            pooledContext.close();
+        }
+    }
+
+    /**
+     * an idle socket only becomes readable when the server closed it
+     */
+    public void handleRead(final SelectionKey key) {
+        final ClientPooledContext pooledContext = (ClientPooledContext) key.attachment();
+        logger.debug("pooled connection closed by server");
+        pooledContext.close();
+    }
+
+    void closed(final ClientPooledContext pooledContext) {
+        final Endpoint endpoint = endpointMap.get(pooledContext.getServerAddress());
+        endpoint.openCount--;
+        endpoint.readyQueue.remove(pooledContext);
+
+        // unexpected closes refill later, the server may be down
+        if (!endpoint.retryScheduled) {
+            endpoint.retryScheduled = true;
+            eventLoop.schedule(() -> {
+                endpoint.retryScheduled = false;
+                fill(endpoint);
+            }, RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void fill(final Endpoint endpoint) {
+        while (endpoint.openCount < size) {
+            try {
+                open(endpoint);
+            } catch (IOException e) {
+                logger.warn("open pooled connection exception, msg: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void open(final Endpoint endpoint) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        final SelectionKey key;
+        try {
+            channel.configureBlocking(false);
+            key = channel.register(eventLoop.getSelector(), SelectionKey.OP_CONNECT);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        final ClientPooledContext pooledContext = new ClientPooledContext(key, bufferSize, this, endpoint.address);
+        key.attach(pooledContext);
+        endpoint.openCount++;
+
+        try {
+            if (connectTimeout > 0) {
+                pooledContext.setTimeout(eventLoop.schedule(pooledContext::close, connectTimeout, TimeUnit.MILLISECONDS));
+            }
+
+            if (channel.connect(endpoint.address)) {
+                connected(pooledContext);
+            }
+        } catch (IOException e) {
+            pooledContext.close();
+            throw e;
+        }
+    }
+
+    private void connected(final ClientPooledContext pooledContext) {
+        final Endpoint endpoint = endpointMap.get(pooledContext.getServerAddress());
+        pooledContext.key().interestOps(SelectionKey.OP_READ);
+        pooledContext.setTimeout(eventLoop.schedule(() -> retire(endpoint, pooledContext), lifetime, TimeUnit.MILLISECONDS));
+        endpoint.readyQueue.addLast(pooledContext);
+    }
+
+    private void retire(final Endpoint endpoint, final ClientPooledContext pooledContext) {
+        pooledContext.close();
+        fill(endpoint);
+    }
+
+    private static final class Endpoint {
+        private final SocketAddress address;
+        private final ArrayDeque<ClientPooledContext> readyQueue = new ArrayDeque<>();
+
+        // connecting and ready
+        private int openCount;
+        private boolean retryScheduled;
+
+        private Endpoint(final SocketAddress address) {
+            this.address = address;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.protocol.HikariCapability;
+import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
+
+import java.net.SocketAddress;
+
+/**
+ * what a server address speaks, learned from its responses. one per address and loop
+ * <p>
+ * a hikari2 server is trusted with every feature until its first ok response lists the ones it agreed to.
+ * a hikari1 server is assumed to have none of them, the version is lowered for good once it answers in hikari1
+ * <p>
+ * Yukinomiu
+ * 2018/2/19
+ */
+public class ClientServerState {
+    private final SocketAddress address;
+
+    private byte version;
+    private int features;
+    private int frameSize;
+
+    // a hikari2 response arrived, the features are the server's own from then on
+    private boolean confirmed;
+
+    public ClientServerState(final SocketAddress address,
+                             final byte version,
+                             final int frameSize) {
+        this.address = address;
+        this.version = version;
+        this.features = version == HikariProtocol.VERSION_HIKARI2 ? HikariProtocol.FEATURES_ALL : 0;
+        this.frameSize = frameSize;
+    }
+
+    /**
+     * options of a hikari2 ok response
+     */
+    public void update(final HikariCapability capability) {
+        features = capability.getFeatures();
+        confirmed = true;
+        if (capability.getFrameSize() != null) {
+            frameSize = capability.getFrameSize();
+        }
+    }
+
+    /**
+     * version of a response to a request this client sent, returns true when the server turned out to be hikari1
+     */
+    public boolean fallBack(final byte responseVersion) {
+        if (version != HikariProtocol.VERSION_HIKARI2 || responseVersion != HikariProtocol.VERSION_HIKARI1) {
+            return false;
+        }
+
+        version = HikariProtocol.VERSION_HIKARI1;
+        features = 0;
+        return true;
+    }
+
+    public boolean hasFeature(final int feature) {
+        return (features & feature) != 0;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    public byte getVersion() {
+        return version;
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public boolean isConfirmed() {
+        return confirmed;
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.yukinomiu.hikari.client;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Yukinomiu
+ * 2018/2/17
+ */
+public class ClientCidrTrieTest {
+
+    private static byte[] ipv4(final int a, final int b, final int c, final int d) {
+        return new byte[]{(byte) a, (byte) b, (byte) c, (byte) d};
+    }
+
+    @Test
+    public void testLongestPrefix() {
+        final ClientCidrTrie trie = new ClientCidrTrie(32);
+        trie.put(ipv4(10, 0, 0, 0), 8, ClientRoute.DIRECT);
+        trie.put(ipv4(10, 1, 0, 0), 16, ClientRoute.TUNNEL);
+        trie.put(ipv4(10, 1, 2, 3), 32, ClientRoute.REJECT);
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(ipv4(10, 2, 0, 1)));
+            Assert.assertEquals(ClientRoute.TUNNEL, trie.lookup(ipv4(10, 1, 2, 4)));
+            Assert.assertEquals(ClientRoute.REJECT, trie.lookup(ipv4(10, 1, 2, 3)));
+            Assert.assertNull(trie.lookup(ipv4(11, 0, 0, 1)));
+            trie.compile();
+        }
+        Assert.assertEquals(3, trie.size());
+    }
+
+    @Test
+    public void testSplit() {
+        final ClientCidrTrie trie = new ClientCidrTrie(32);
+
+        // siblings below a branch node that carries no route, then a block landing on the branch itself
+        trie.put(ipv4(192, 168, 1, 0), 24, ClientRoute.DIRECT);
+        trie.put(ipv4(192, 168, 2, 0), 24, ClientRoute.REJECT);
+        Assert.assertNull(trie.lookup(ipv4(192, 168, 3, 1)));
+        Assert.assertEquals(2, trie.size());
+
+        trie.put(ipv4(192, 168, 0, 0), 22, ClientRoute.TUNNEL);
+        Assert.assertEquals(ClientRoute.TUNNEL, trie.lookup(ipv4(192, 168, 3, 1)));
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(ipv4(192, 168, 1, 1)));
+        Assert.assertEquals(ClientRoute.REJECT, trie.lookup(ipv4(192, 168, 2, 1)));
+        Assert.assertNull(trie.lookup(ipv4(192, 168, 4, 1)));
+        Assert.assertEquals(3, trie.size());
+
+        // a shorter block above the root
+        trie.put(ipv4(192, 0, 0, 0), 8, ClientRoute.DIRECT);
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(ipv4(192, 168, 4, 1)));
+        Assert.assertEquals(ClientRoute.TUNNEL, trie.lookup(ipv4(192, 168, 3, 1)));
+    }
+
+    @Test
+    public void testDefaultBlock() {
+        final ClientCidrTrie trie = new ClientCidrTrie(32);
+        trie.put(ipv4(8, 8, 8, 8), 32, ClientRoute.DIRECT);
+        trie.put(ipv4(1, 2, 3, 4), 0, ClientRoute.TUNNEL);
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(ClientRoute.TUNNEL, trie.lookup(ipv4(0, 0, 0, 0)));
+            Assert.assertEquals(ClientRoute.TUNNEL, trie.lookup(ipv4(255, 255, 255, 255)));
+            Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(ipv4(8, 8, 8, 8)));
+            trie.compile();
+        }
+    }
+
+    @Test
+    public void testReplace() {
+        final ClientCidrTrie trie = new ClientCidrTrie(32);
+        trie.put(ipv4(10, 0, 0, 0), 8, ClientRoute.DIRECT);
+        trie.compile();
+
+        // a put drops the compiled table
+        trie.put(ipv4(10, 9, 9, 9), 8, ClientRoute.REJECT);
+        Assert.assertEquals(ClientRoute.REJECT, trie.lookup(ipv4(10, 1, 1, 1)));
+        Assert.assertEquals(1, trie.size());
+    }
+
+    @Test
+    public void testIpv6() {
+        final ClientCidrTrie trie = new ClientCidrTrie(128);
+        final byte[] prefix = new byte[16];
+        prefix[0] = 0x20;
+        prefix[1] = 0x01;
+        prefix[2] = 0x0d;
+        prefix[3] = (byte) 0xb8;
+        trie.put(prefix, 32, ClientRoute.DIRECT);
+        trie.compile();
+
+        final byte[] inside = prefix.clone();
+        inside[15] = 1;
+        final byte[] outside = prefix.clone();
+        outside[3] = (byte) 0xb9;
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(inside));
+        Assert.assertNull(trie.lookup(outside));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadPrefixLength() {
+        new ClientCidrTrie(32).put(ipv4(10, 0, 0, 0), 33, ClientRoute.DIRECT);
+    }
+
+    @Test
+    public void testAgainstLinearScan() {
+        final Random random = new Random(17);
+        final ClientRoute[] routes = ClientRoute.values();
+
+        for (int round = 0; round < 20; round++) {
+            final List<int[]> blocks = new ArrayList<>();
+            final ClientCidrTrie trie = new ClientCidrTrie(32);
+            final ClientCidrTrie compiled = new ClientCidrTrie(32);
+
+            // few distinct top bits, so blocks overlap and split each other
+            for (int i = 0; i < 200; i++) {
+                final int address = (random.nextInt(4) << 28) | (random.nextInt(1 << 12) << 16) | random.nextInt(1 << 16);
+                final int length = random.nextInt(33);
+                final int route = random.nextInt(routes.length);
+                blocks.add(new int[]{address & mask(length), length, route});
+                trie.put(toBytes(address), length, routes[route]);
+                compiled.put(toBytes(address), length, routes[route]);
+            }
+            compiled.compile();
+
+            for (int i = 0; i < 2000; i++) {
+                final int address = (random.nextInt(4) << 28) | random.nextInt(1 << 28);
+                final ClientRoute expected = linearLookup(blocks, routes, address);
+                Assert.assertEquals(expected, trie.lookup(toBytes(address)));
+                Assert.assertEquals(expected, compiled.lookup(toBytes(address)));
+            }
+        }
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkLookup() {
+        final Random random = new Random(1);
+        final ClientCidrTrie trie = new ClientCidrTrie(32);
+        final int ruleCount = 300000;
+        for (int i = 0; i < ruleCount; i++) {
+            trie.put(toBytes(random.nextInt()), 16 + random.nextInt(17), ClientRoute.DIRECT);
+        }
+        trie.compile();
+
+        final byte[][] addresses = new byte[1 << 16][];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = toBytes(random.nextInt());
+        }
+
+        for (int round = 0; round < 5; round++) {
+            final int count = 10000000;
+            int hits = 0;
+            final long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                if (trie.lookup(addresses[i & (addresses.length - 1)]) != null) {
+                    hits++;
+                }
+            }
+            final long elapsed = System.nanoTime() - start;
+            System.out.println(String.format("%d rules, lookup: %d ns, hits: %d", ruleCount, elapsed / count, hits));
+        }
+    }
+
+    private static ClientRoute linearLookup(final List<int[]> blocks, final ClientRoute[] routes, final int address) {
+        ClientRoute route = null;
+        int bestLength = -1;
+        for (int[] block : blocks) {
+            // later blocks replace earlier ones of the same prefix
+            if ((address & mask(block[1])) == block[0] && block[1] >= bestLength) {
+                bestLength = block[1];
+                route = routes[block[2]];
+            }
+        }
+        return route;
+    }
+
+    private static int mask(final int length) {
+        return length == 0 ? 0 : -1 << (32 - length);
+    }
+
+    private static byte[] toBytes(final int address) {
+        return new byte[]{(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.yukinomiu.hikari.client;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Yukinomiu
+ * 2018/2/17
+ */
+public class ClientDomainTrieTest {
+
+    private static byte[] domain(final String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testSuffix() {
+        final ClientDomainTrie trie = new ClientDomainTrie();
+        trie.put("example.com", ClientRoute.DIRECT);
+
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(domain("example.com")));
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(domain("www.example.com")));
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(domain("a.b.example.com")));
+
+        // whole labels only
+        Assert.assertNull(trie.lookup(domain("badexample.com")));
+        Assert.assertNull(trie.lookup(domain("example.com.evil.org")));
+        Assert.assertNull(trie.lookup(domain("com")));
+    }
+
+    @Test
+    public void testLongestSuffix() {
+        final ClientDomainTrie trie = new ClientDomainTrie();
+        trie.put("com", ClientRoute.TUNNEL);
+        trie.put("example.com", ClientRoute.DIRECT);
+        trie.put("ads.example.com", ClientRoute.REJECT);
+
+        Assert.assertEquals(ClientRoute.TUNNEL, trie.lookup(domain("other.com")));
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(domain("www.example.com")));
+        Assert.assertEquals(ClientRoute.REJECT, trie.lookup(domain("x.ads.example.com")));
+        Assert.assertNull(trie.lookup(domain("example.org")));
+        Assert.assertEquals(3, trie.size());
+    }
+
+    @Test
+    public void testPatternForms() {
+        final ClientDomainTrie trie = new ClientDomainTrie();
+        trie.put("*.a.com", ClientRoute.DIRECT);
+        trie.put(".b.com", ClientRoute.TUNNEL);
+        trie.put("c.com.", ClientRoute.REJECT);
+        trie.put("D.Com", ClientRoute.DIRECT);
+
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(domain("a.com")));
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(domain("x.a.com")));
+        Assert.assertEquals(ClientRoute.TUNNEL, trie.lookup(domain("x.b.com")));
+        Assert.assertEquals(ClientRoute.REJECT, trie.lookup(domain("x.c.com")));
+        Assert.assertEquals(ClientRoute.REJECT, trie.lookup(domain("x.c.com.")));
+        Assert.assertEquals(ClientRoute.DIRECT, trie.lookup(domain("WWW.d.com")));
+
+        // the same rule written another way replaces the earlier one
+        trie.put("*.d.com.", ClientRoute.REJECT);
+        Assert.assertEquals(ClientRoute.REJECT, trie.lookup(domain("d.com")));
+        Assert.assertEquals(4, trie.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyLabel() {
+        new ClientDomainTrie().put("a..com", ClientRoute.DIRECT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyDomain() {
+        new ClientDomainTrie().put("*.", ClientRoute.DIRECT);
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkLookup() {
+        final Random random = new Random(1);
+        final ClientDomainTrie trie = new ClientDomainTrie();
+        final int ruleCount = 300000;
+        for (int i = 0; i < ruleCount; i++) {
+            trie.put(String.format("d%d.example%d.com", random.nextInt(1000000), random.nextInt(100)), ClientRoute.DIRECT);
+        }
+
+        final byte[][] domains = new byte[1 << 16][];
+        for (int i = 0; i < domains.length; i++) {
+            domains[i] = domain(String.format("www.d%d.example%d.com", random.nextInt(1000000), random.nextInt(100)));
+        }
+
+        for (int round = 0; round < 5; round++) {
+            final int count = 5000000;
+            int hits = 0;
+            final long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                if (trie.lookup(domains[i & (domains.length - 1)]) != null) {
+                    hits++;
+                }
+            }
+            final long elapsed = System.nanoTime() - start;
+            System.out.println(String.format("%d rules, lookup: %d ns, hits: %d", ruleCount, elapsed / count, hits));
+        }
+    }
+}
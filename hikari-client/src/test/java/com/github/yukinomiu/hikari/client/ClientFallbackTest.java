@@ -0,0 +1,272 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * a hikari2 client against a server that only speaks hikari1 and knows none of the features
+ * <p>
+ * Yukinomiu
+ * 2018/2/19
+ */
+public class ClientFallbackTest {
+    private static final int STREAMS = 6;
+
+    private Hikari1Responder responder;
+    private Client client;
+    private int listenPort;
+
+    @Before
+    public void setUp() throws IOException {
+        responder = new Hikari1Responder();
+        responder.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.shutdown();
+        }
+        responder.close();
+    }
+
+    private void startClient(final int protocolVersion,
+                             final boolean fastOpen,
+                             final int muxConnections,
+                             final int bondConnections) throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            listenPort = socket.getLocalPort();
+        }
+
+        final ClientConfig config = new ClientConfig();
+        config.setListenAddress("127.0.0.1");
+        config.setListenPort(listenPort);
+        config.setLocalDnsResolve(false);
+        config.setWorkerCount(1);
+        config.setProtocolVersion(protocolVersion);
+        config.setFastOpen(fastOpen);
+        config.setMuxConnections(muxConnections);
+        config.setBondConnections(bondConnections);
+        config.setBufferSize(2048);
+        config.setEncryptType("plain");
+        config.setSecret("hikari-secret");
+        config.setServerAddress("127.0.0.1");
+        config.setServerPortList(Collections.singletonList(responder.getPort()));
+        config.setPrivateKey("hikari");
+
+        client = new Client(config);
+        client.start();
+    }
+
+    @Test
+    public void testPlainStreamRetried() throws IOException {
+        startClient(2, false, 0, 0);
+
+        // the first stream goes again in hikari1
+        for (int i = 0; i < STREAMS; i++) {
+            Assert.assertTrue("stream " + i, echo(i));
+        }
+        Assert.assertEquals(1, responder.hikari2Requests.get());
+        Assert.assertEquals(STREAMS, responder.acceptedStreams.get());
+    }
+
+    @Test
+    public void testBondDroppedOnRetry() throws IOException {
+        startClient(2, false, 0, 4);
+
+        for (int i = 0; i < STREAMS; i++) {
+            Assert.assertTrue("stream " + i, echo(i));
+        }
+        Assert.assertEquals(1, responder.hikari2Requests.get());
+        Assert.assertEquals(0, responder.unsupportedRequests.get());
+    }
+
+    @Test
+    public void testMuxStreamRetried() throws IOException {
+        startClient(2, false, 1, 0);
+
+        // the stream that waited for the refused mux connection goes over a plain one
+        for (int i = 0; i < STREAMS; i++) {
+            Assert.assertTrue("stream " + i, echo(i));
+        }
+        Assert.assertEquals(1, responder.hikari2Requests.get());
+        Assert.assertEquals(STREAMS, responder.acceptedStreams.get());
+        Assert.assertEquals(0, responder.unsupportedRequests.get());
+    }
+
+    @Test
+    public void testFastOpenRetried() throws IOException {
+        startClient(2, true, 0, 0);
+
+        // the first stream was answered already, its early data follows the hikari1 response
+        for (int i = 0; i < STREAMS; i++) {
+            Assert.assertTrue("stream " + i, echo(i));
+        }
+        Assert.assertEquals(1, responder.hikari2Requests.get());
+        Assert.assertEquals(STREAMS, responder.acceptedStreams.get());
+        Assert.assertEquals(0, responder.unsupportedRequests.get());
+    }
+
+    @Test
+    public void testHikari1Configured() throws IOException {
+        startClient(1, true, 1, 4);
+
+        for (int i = 0; i < STREAMS; i++) {
+            Assert.assertTrue("stream " + i, echo(i));
+        }
+        Assert.assertEquals(0, responder.hikari2Requests.get());
+        Assert.assertEquals(0, responder.unsupportedRequests.get());
+    }
+
+    /**
+     * socks5 connect through the client, true when the data came back
+     */
+    private boolean echo(final int stream) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), listenPort)) {
+            socket.setSoTimeout(5000);
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            final OutputStream out = socket.getOutputStream();
+
+            out.write(new byte[]{5, 1, 0});
+            final byte[] method = new byte[2];
+            in.readFully(method);
+
+            out.write(new byte[]{5, 1, 0, 1, 127, 0, 0, 1, 0, 80});
+            final byte[] reply = new byte[10];
+            in.readFully(reply);
+            if (reply[1] != 0) {
+                return false;
+            }
+
+            final byte[] data = String.format("stream %d", stream).getBytes(StandardCharsets.US_ASCII);
+            out.write(data);
+            final byte[] back = new byte[data.length];
+            in.readFully(back);
+            return Arrays.equals(data, back);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * plain crypto, answers hikari2 requests with version not supported and echoes accepted streams
+     */
+    private static class Hikari1Responder extends Thread {
+        private final ServerSocket serverSocket;
+
+        private final AtomicInteger hikari2Requests = new AtomicInteger();
+        private final AtomicInteger unsupportedRequests = new AtomicInteger();
+        private final AtomicInteger acceptedStreams = new AtomicInteger();
+
+        private Hikari1Responder() throws IOException {
+            super("hikari1-responder");
+            setDaemon(true);
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void close() throws IOException {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final Thread thread = new Thread(() -> serve(socket), "hikari1-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(final Socket socket) {
+            try (Socket s = socket) {
+                final DataInputStream in = new DataInputStream(s.getInputStream());
+                final OutputStream out = s.getOutputStream();
+
+                final byte[] packet = new byte[in.readShort() - 4];
+                in.readInt();
+                in.readFully(packet);
+                final ByteBuffer request = ByteBuffer.wrap(packet);
+
+                if (request.get() != HikariProtocol.VERSION_HIKARI1) {
+                    hikari2Requests.incrementAndGet();
+                    writePacket(out, new byte[]{HikariProtocol.VERSION_HIKARI1, HikariProtocol.AUTH_RESPONSE_VERSION_NOT_SUPPORT});
+                    return;
+                }
+                request.position(request.position() + 16);
+
+                // what the baseline server knows, anything after the request is dropped by it
+                final byte addressType = request.get();
+                if (addressType == HikariProtocol.ADDRESS_TYPE_IPV4) {
+                    request.position(request.position() + 4 + 2);
+                }
+                else if (addressType == HikariProtocol.ADDRESS_TYPE_IPV6) {
+                    request.position(request.position() + 16 + 2);
+                }
+                else if (addressType == HikariProtocol.ADDRESS_TYPE_DOMAIN) {
+                    request.position(request.position() + (request.get() & 0xFF) + 2);
+                }
+                else {
+                    unsupportedRequests.incrementAndGet();
+                    return;
+                }
+                if (request.hasRemaining()) {
+                    unsupportedRequests.incrementAndGet();
+                    return;
+                }
+
+                acceptedStreams.incrementAndGet();
+                writePacket(out, new byte[]{HikariProtocol.VERSION_HIKARI1, HikariProtocol.AUTH_RESPONSE_OK, HikariProtocol.ADDRESS_TYPE_IPV4, 0, 0, 0, 0, 0, 0});
+
+                // packets of the client are valid packets of the server
+                final InputStream rawIn = s.getInputStream();
+                final byte[] buffer = new byte[4096];
+                int read;
+                while ((read = rawIn.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                // connection gone
+            }
+        }
+
+        /**
+         * in one write, the client reads a response in one go like the real server sends it
+         */
+        private static void writePacket(final OutputStream out, final byte[] data) throws IOException {
+            final CRC32 crc32 = new CRC32();
+            crc32.update(data);
+
+            final ByteBuffer packet = ByteBuffer.allocate(data.length + 6);
+            packet.putShort((short) (data.length + 4));
+            packet.putInt((int) crc32.getValue());
+            packet.put(data);
+            out.write(packet.array());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.exception.HikariException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Yukinomiu
+ * 2018/2/17
+ */
+public class ClientRouteTableTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(final String... lines) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static byte[] address(final String text) throws IOException {
+        return InetAddress.getByName(text).getAddress();
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        final ClientRouteTable table = ClientRouteTable.load(write(
+                "# rules",
+                "",
+                "direct 10.0.0.0/8",
+                "  reject   10.1.2.3   # one host",
+                "TUNNEL 0.0.0.0/0",
+                "direct 2001:db8::/32",
+                "direct example.com",
+                "reject *.ads.example.com",
+                "direct 192.168.0.0/16",
+                "tunnel 192.168.0.0/16"));
+
+        Assert.assertEquals(ClientRoute.DIRECT, table.lookupAddress(address("10.9.9.9")));
+        Assert.assertEquals(ClientRoute.REJECT, table.lookupAddress(address("10.1.2.3")));
+        Assert.assertEquals(ClientRoute.TUNNEL, table.lookupAddress(address("8.8.8.8")));
+        Assert.assertEquals(ClientRoute.DIRECT, table.lookupAddress(address("2001:db8::1")));
+        Assert.assertNull(table.lookupAddress(address("2001:db9::1")));
+
+        // a later rule for the same pattern overrides
+        Assert.assertEquals(ClientRoute.TUNNEL, table.lookupAddress(address("192.168.1.1")));
+
+        Assert.assertEquals(ClientRoute.DIRECT, table.lookupDomain("www.example.com".getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertEquals(ClientRoute.REJECT, table.lookupDomain("x.ads.example.com".getBytes(StandardCharsets.US_ASCII)));
+        Assert.assertNull(table.lookupDomain("badexample.com".getBytes(StandardCharsets.US_ASCII)));
+
+        Assert.assertEquals(5, table.getCidrCount());
+        Assert.assertEquals(2, table.getDomainCount());
+    }
+
+    @Test
+    public void testBadLines() throws Exception {
+        assertBadLine(3, "direct 10.0.0.0/8", "# comment", "direct");
+        assertBadLine(2, "direct 10.0.0.0/8", "proxy example.com");
+        assertBadLine(1, "direct 10.0.0.0/33");
+        assertBadLine(1, "direct 10.0.0.256");
+        assertBadLine(1, "direct 10.0.0/8");
+        assertBadLine(2, "", "direct example.com/24");
+        assertBadLine(1, "direct a..com");
+        assertBadLine(1, "direct 10.0.0.0/8 extra");
+        assertBadLine(1, "direct ::ffff:10.0.0.1");
+    }
+
+    private void assertBadLine(final int lineNumber, final String... lines) throws IOException {
+        final Path path = write(lines);
+        try {
+            ClientRouteTable.load(path);
+            Assert.fail("bad rule accepted");
+        } catch (HikariException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(String.format("%s:%d", path, lineNumber)));
+        }
+    }
+}
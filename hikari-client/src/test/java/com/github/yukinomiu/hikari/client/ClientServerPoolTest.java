@@ -0,0 +1,226 @@
+package com.github.yukinomiu.hikari.client;
+
+import com.github.yukinomiu.hikari.common.HikariEventLoop;
+import com.github.yukinomiu.hikari.common.HikariHandle;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a pool of one loop against a local listener that closes connections at will
+ * <p>
+ * Yukinomiu
+ * 2018/2/18
+ */
+public class ClientServerPoolTest {
+    private static final int SIZE = 2;
+
+    private ServerSocket listener;
+    private final BlockingQueue<Socket> acceptedQueue = new LinkedBlockingQueue<>();
+    private final List<Socket> acceptedList = new ArrayList<>();
+
+    private ClientServerPool pool;
+    private HikariEventLoop loop;
+    private SocketAddress serverAddress;
+
+    @Before
+    public void setUp() throws Exception {
+        listener = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.getLocalPort());
+        final Thread acceptThread = new Thread(() -> {
+            while (!listener.isClosed()) {
+                try {
+                    acceptedQueue.add(listener.accept());
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "pool-listener");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        loop = new HikariEventLoop("pool-loop", eventLoop -> {
+            pool = new ClientServerPool(eventLoop, new SocketAddress[]{serverAddress}, 2048, SIZE, 60000, 1000);
+            return new PoolHandle();
+        }, new ClientConfig());
+        loop.start();
+        onLoop(() -> {
+            pool.start();
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        listener.close();
+        loop.stop();
+        loop.close();
+        for (Socket socket : acceptedList) {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testTakeRefills() throws Exception {
+        awaitAccepted(SIZE);
+
+        final SelectionKey key = take();
+        Assert.assertNotNull(key);
+        Assert.assertTrue(key.isValid());
+        Assert.assertTrue(((SocketChannel) key.channel()).isConnected());
+        Assert.assertNull(key.attachment());
+
+        // the taken socket is replaced
+        awaitAccepted(SIZE + 1);
+        assertUsable(key);
+
+        // an unknown address has no pool
+        Assert.assertNull(onLoop(() -> pool.take(new InetSocketAddress(InetAddress.getLoopbackAddress(), 1))));
+    }
+
+    @Test
+    public void testClosedSocketDiscarded() throws Exception {
+        awaitAccepted(SIZE);
+
+        // the server closes every pooled socket, taken before the loop read their end of stream
+        final SelectionKey key = onLoop(() -> {
+            for (Socket socket : acceptedList) {
+                socket.close();
+            }
+            Thread.sleep(200);
+            return pool.take(serverAddress);
+        });
+        Assert.assertNull(key);
+
+        // the pool refills with sockets the server still holds
+        awaitAccepted(SIZE * 2);
+        final SelectionKey freshKey = take();
+        Assert.assertNotNull(freshKey);
+        assertUsable(freshKey);
+    }
+
+    @Test
+    public void testClosedSocketRead() throws Exception {
+        awaitAccepted(SIZE);
+        for (Socket socket : acceptedList) {
+            socket.close();
+        }
+
+        // the loop saw the end of stream and the retry refilled the pool
+        awaitAccepted(SIZE * 2);
+        final SelectionKey key = take();
+        Assert.assertNotNull(key);
+        assertUsable(key);
+    }
+
+    /**
+     * the key of the next ready socket, waits for a connect to finish
+     */
+    private SelectionKey take() throws Exception {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            final SelectionKey key = onLoop(() -> pool.take(serverAddress));
+            if (key != null) {
+                return key;
+            }
+            Thread.sleep(20);
+        }
+        return null;
+    }
+
+    /**
+     * data written on the key reaches an accepted socket the server did not close
+     */
+    private void assertUsable(final SelectionKey key) throws Exception {
+        final SocketChannel channel = (SocketChannel) key.channel();
+        final int port = channel.socket().getLocalPort();
+        Socket accepted = null;
+        for (Socket socket : acceptedList) {
+            if (socket.getPort() == port) {
+                accepted = socket;
+            }
+        }
+        Assert.assertNotNull(accepted);
+        Assert.assertFalse(accepted.isClosed());
+
+        onLoop(() -> channel.write(ByteBuffer.wrap(new byte[]{7})));
+        accepted.setSoTimeout(5000);
+        final InputStream in = accepted.getInputStream();
+        Assert.assertEquals(7, in.read());
+    }
+
+    private void awaitAccepted(final int count) throws InterruptedException {
+        while (acceptedList.size() < count) {
+            final Socket socket = acceptedQueue.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull("accepted " + acceptedList.size() + " of " + count, socket);
+            acceptedList.add(socket);
+        }
+
+        // the loop finishes the connects it sees
+        Thread.sleep(100);
+    }
+
+    private <T> T onLoop(final Callable<T> task) throws Exception {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        loop.execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * the loop only serves the pool
+     */
+    private class PoolHandle implements HikariHandle {
+        @Override
+        public void handleAccept(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleAccepted(final SocketChannel channel, final Selector selector) {
+        }
+
+        @Override
+        public void handleConnect(final SelectionKey key) {
+            pool.handleConnect(key);
+        }
+
+        @Override
+        public void handleRead(final SelectionKey key) {
+            if (key.attachment() instanceof ClientPooledContext) {
+                pool.handleRead(key);
+            }
+            else {
+                key.cancel();
+            }
+        }
+
+        @Override
+        public void handleWrite(final SelectionKey key) {
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.github.yukinomiu.hikari.common;
 import com.github.yukinomiu.hikari.common.crypto.CryptoManager;
 import com.github.yukinomiu.hikari.common.crypto.HikariCrypto;
 import com.github.yukinomiu.hikari.common.exception.HikariChecksumFailException;
+import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +11,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.CRC32;
 
 /**
@@ -18,20 +20,66 @@ import java.util.zip.CRC32;
  */
 public abstract class HikariAbstractHandle implements HikariHandle {
     private static final Logger logger = LoggerFactory.getLogger(HikariAbstractHandle.class);
+    private static final int DEFAULT_READ_BUDGET = 16;
+    private static final int DEFAULT_READ_BUDGET_BYTES = 64 * 1024;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    private static final int DEFAULT_HANDSHAKE_TIMEOUT = 10000;
+    private static final int DEFAULT_IDLE_TIMEOUT = 0;
     private final CRC32 crc32 = new CRC32();
 
     private final HikariCrypto hikariCrypto;
 
+    private final int readBudget;
+    private final int readBudgetBytes;
+
+    // timeouts in millis, 0 disables
+    protected final int connectTimeout;
+    protected final int handshakeTimeout;
+    protected final int idleTimeout;
+
     protected HikariAbstractHandle(final HikariConfig hikariConfig) {
         // crypto
         final String encryptType = hikariConfig.getEncryptType();
         final String secret = hikariConfig.getSecret();
         hikariCrypto = CryptoManager.getCrypto(encryptType, secret);
         logger.info("using {}", encryptType);
+
+        // read budget
+        final Integer configReadBudget = hikariConfig.getReadBudget();
+        final Integer configReadBudgetBytes = hikariConfig.getReadBudgetBytes();
+        readBudget = configReadBudget != null && configReadBudget > 0 ? configReadBudget : DEFAULT_READ_BUDGET;
+        readBudgetBytes = configReadBudgetBytes != null && configReadBudgetBytes > 0 ? configReadBudgetBytes : DEFAULT_READ_BUDGET_BYTES;
+
+        // timeout
+        final Integer configConnectTimeout = hikariConfig.getConnectTimeout();
+        final Integer configHandshakeTimeout = hikariConfig.getHandshakeTimeout();
+        final Integer configIdleTimeout = hikariConfig.getIdleTimeout();
+        connectTimeout = configConnectTimeout != null ? configConnectTimeout : DEFAULT_CONNECT_TIMEOUT;
+        handshakeTimeout = configHandshakeTimeout != null ? configHandshakeTimeout : DEFAULT_HANDSHAKE_TIMEOUT;
+        idleTimeout = configIdleTimeout != null ? configIdleTimeout : DEFAULT_IDLE_TIMEOUT;
+    }
+
+    /**
+     * null when the timeout is disabled
+     */
+    protected final HikariTimer.Timeout scheduleTimeout(final HikariEventLoop loop, final Runnable task, final int timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return null;
+        }
+
+        return loop.schedule(task, timeoutMillis, TimeUnit.MILLISECONDS);
     }
 
     protected final boolean read(final SocketChannel srcChannel, final ByteBuffer dstBuffer, final HikariContext context) throws IOException {
+        return read(srcChannel, dstBuffer, dstBuffer.capacity(), context);
+    }
+
+    /**
+     * reads at most limit bytes, e.g. the frame size agreed with the peer
+     */
+    protected final boolean read(final SocketChannel srcChannel, final ByteBuffer dstBuffer, final int limit, final HikariContext context) throws IOException {
         dstBuffer.clear();
+        dstBuffer.limit(Math.min(limit, dstBuffer.capacity()));
         int read = srcChannel.read(dstBuffer);
 
         if (read == -1) {
@@ -46,6 +94,20 @@ public abstract class HikariAbstractHandle implements HikariHandle {
         return true;
     }
 
+    /**
+     * whether to read the same channel again within one readiness event
+     * <p>
+     * a read that did not fill the buffer most likely drained the socket, data left over after the budget
+     * is reported again by the next select since selectors are level triggered
+     */
+    protected final boolean continueReading(final SelectionKey key, final int reads, final long bytes, final boolean bufferFilled) {
+        return bufferFilled
+                && reads < readBudget
+                && bytes < readBudgetBytes
+                && key.isValid()
+                && (key.interestOps() & SelectionKey.OP_READ) != 0;
+    }
+
     protected final void write(final HikariContext srcContext, final HikariContext dstContext, final ByteBuffer srcBuffer) throws IOException {
         final SelectionKey dstKey = dstContext.key();
         final SocketChannel dstChannel = (SocketChannel) dstKey.channel();
@@ -65,6 +127,103 @@ public abstract class HikariAbstractHandle implements HikariHandle {
         }
     }
 
+    /**
+     * write on a connection whose writes do not pause any reads, data queues behind a pending write.
+     * returns false when the write buffer is full and the data was dropped
+     */
+    protected final boolean writeOrQueue(final HikariContext context, final ByteBuffer srcBuffer) throws IOException {
+        final SelectionKey key = context.key();
+        final ByteBuffer writeBuffer = context.writeBuffer();
+
+        if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+            writeBuffer.compact();
+            final boolean queued = writeBuffer.remaining() >= srcBuffer.remaining();
+            if (queued) {
+                writeBuffer.put(srcBuffer);
+            }
+            writeBuffer.flip();
+            return queued;
+        }
+
+        final SocketChannel channel = (SocketChannel) key.channel();
+        channel.write(srcBuffer);
+        if (srcBuffer.hasRemaining()) {
+            writeBuffer.clear();
+            writeBuffer.put(srcBuffer);
+            writeBuffer.flip();
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        return true;
+    }
+
+    /**
+     * read a stream socket into data frames of its session, stops at the end of the window and on a full session
+     */
+    protected final void readMuxStream(final SelectionKey key, final HikariMuxStream stream, final ByteBuffer streamBuffer) throws IOException {
+        final SocketChannel channel = (SocketChannel) key.channel();
+        final HikariMuxSession session = stream.getSession();
+
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!stream.isWritable()) {
+                stream.pause();
+                return;
+            }
+
+            if (!read(channel, streamBuffer, stream.getContext())) {
+                return;
+            }
+            final int length = streamBuffer.remaining();
+            bufferFilled = length == streamBuffer.capacity();
+
+            // write
+            stream.consumeWindow(length);
+            session.writeFrame(HikariProtocol.MUX_FRAME_DATA, stream.getId(), streamBuffer);
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
+    }
+
+    /**
+     * read the stream socket of a bond into frames on its members, stops while every member is busy
+     */
+    protected final void readBondStream(final SelectionKey key, final HikariBond bond, final ByteBuffer streamBuffer) throws IOException {
+        final SocketChannel channel = (SocketChannel) key.channel();
+
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!bond.isWritable()) {
+                bond.pauseStream();
+                return;
+            }
+
+            // the end is sent to the peer instead of closing, frames may still be on their way
+            streamBuffer.clear();
+            final int read = channel.read(streamBuffer);
+            if (read == -1) {
+                bond.end();
+                return;
+            }
+            else if (read == 0) {
+                return;
+            }
+            streamBuffer.flip();
+            bufferFilled = read == streamBuffer.capacity();
+
+            // write
+            bond.send(streamBuffer);
+
+            reads++;
+            bytes += read;
+        } while (continueReading(key, reads, bytes, bufferFilled));
+    }
+
     protected final void encrypt(final ByteBuffer srcBuffer, final ByteBuffer encBuffer, final ByteBuffer dstBuffer) {
         // encrypt
         encBuffer.clear();
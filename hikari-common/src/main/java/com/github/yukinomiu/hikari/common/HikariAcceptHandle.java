@@ -0,0 +1,66 @@
+package com.github.yukinomiu.hikari.common;
+
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * accept only handle, hands accepted channels over to the worker loops
+ * <p>
+ * Yukinomiu
+ * 2018/2/3
+ */
+public class HikariAcceptHandle implements HikariHandle {
+    private static final Logger logger = LoggerFactory.getLogger(HikariAcceptHandle.class);
+    private static final int MAX_ACCEPT_PER_EVENT = 64;
+
+    private final HikariEventLoopGroup workerGroup;
+
+    public HikariAcceptHandle(final HikariEventLoopGroup workerGroup) {
+        this.workerGroup = workerGroup;
+    }
+
+    @Override
+    public void handleAccept(final SelectionKey key) {
+        final ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+
+        try {
+            for (int i = 0; i < MAX_ACCEPT_PER_EVENT; i++) {
+                SocketChannel channel = serverChannel.accept();
+                if (channel == null) {
+                    break;
+                }
+
+                workerGroup.next().register(channel);
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle accept exception: {}", msg != null ? msg : e.getClass().getName());
+        }
+    }
+
+    @Override
+    public void handleAccepted(final SocketChannel channel, final Selector selector) {
+        throw new HikariRuntimeException("accept handle can not handle accepted channel");
+    }
+
+    @Override
+    public void handleConnect(final SelectionKey key) {
+        throw new HikariRuntimeException("accept handle can not handle connect");
+    }
+
+    @Override
+    public void handleRead(final SelectionKey key) {
+        throw new HikariRuntimeException("accept handle can not handle read");
+    }
+
+    @Override
+    public void handleWrite(final SelectionKey key) {
+        throw new HikariRuntimeException("accept handle can not handle write");
+    }
+}
@@ -0,0 +1,390 @@
+package com.github.yukinomiu.hikari.common;
+
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * one stream striped over several hikari connections, each packet carries a sequence number
+ * <p>
+ * packets go round robin to the member connections that have nothing queued, the receiver puts them
+ * back in order. frames held for reordering or for a slow stream socket are bounded, beyond that the
+ * members that cannot carry the next frame stop being read until the held frames drain.
+ * only touched by the owner loop
+ * <p>
+ * Yukinomiu
+ * 2018/2/18
+ */
+public class HikariBond {
+    // held frames, out of order or not yet taken by the stream socket
+    private static final int MAX_HELD_BYTES = 1 << 20;
+    private static final int RESUME_HELD_BYTES = MAX_HELD_BYTES >>> 1;
+
+    private final long id;
+    private final HikariAbstractHandle handle;
+    private HikariContext stream;
+    private final List<Member> memberList = new ArrayList<>(HikariProtocol.BOND_MAX_CONNECTIONS);
+    private boolean closed = false;
+
+    // frame, crypto and packet buffers of this bond
+    private final ByteBuffer frameBuffer;
+    private final ByteBuffer cryptoBuffer;
+    private final ByteBuffer packetBuffer;
+
+    // send side
+    private int sendSeq;
+    private int memberIndex;
+    private boolean streamPaused = false;
+    private boolean ended = false;
+
+    // receive side
+    private int receiveSeq;
+    private final Map<Integer, ByteBuffer> reorderMap = new HashMap<>();
+    private final ArrayDeque<ByteBuffer> pendingQueue = new ArrayDeque<>();
+    private int heldBytes;
+    private boolean remoteEnded = false;
+    private int endSeq;
+
+    public HikariBond(final long id,
+                      final HikariAbstractHandle handle,
+                      final int bufferSize) {
+        this.id = id;
+        this.handle = handle;
+
+        frameBuffer = ByteBuffer.allocateDirect(bufferSize);
+        cryptoBuffer = ByteBuffer.allocateDirect(bufferSize);
+        packetBuffer = ByteBuffer.allocateDirect(bufferSize + HikariConstant.PACKET_WRAPPER_SIZE);
+    }
+
+    /**
+     * closes the stream socket and every member, frames not delivered yet are lost
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        reorderMap.clear();
+        pendingQueue.clear();
+        for (Member member : memberList) {
+            member.outputQueue.clear();
+            member.context.close();
+        }
+
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * returns false when the bond is closed or has all its members
+     */
+    public boolean addMember(final HikariContext context) {
+        if (closed || memberList.size() >= HikariProtocol.BOND_MAX_CONNECTIONS) {
+            return false;
+        }
+
+        memberList.add(new Member(context));
+        resumeStream();
+        return true;
+    }
+
+    public int getMemberCount() {
+        return memberList.size();
+    }
+
+    /**
+     * false when every member has packets queued or the stream ended
+     */
+    public boolean isWritable() {
+        return !ended && nextIdleMember(false) != null;
+    }
+
+    /**
+     * stop reading the stream socket until a member drained
+     */
+    public void pauseStream() {
+        final SelectionKey key = stream.key();
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        streamPaused = true;
+    }
+
+    private void resumeStream() {
+        if (!streamPaused || ended || closed) {
+            return;
+        }
+
+        streamPaused = false;
+        final SelectionKey key = stream.key();
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+    }
+
+    /**
+     * data read from the stream socket, at most a packet less the frame header
+     */
+    public void send(final ByteBuffer data) throws IOException {
+        final Member member = nextIdleMember(true);
+        if (member == null) {
+            throw new HikariRuntimeException(String.format("bond %d has no idle member", id));
+        }
+
+        writeFrame(member, data);
+    }
+
+    /**
+     * the stream socket reached its end, the peer closes the bond once it delivered everything before
+     */
+    public void end() throws IOException {
+        if (ended) {
+            return;
+        }
+        ended = true;
+
+        final SelectionKey key = stream.key();
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+
+        // queued behind the data of a busy member if no one is idle
+        Member member = nextIdleMember(true);
+        if (member == null) {
+            member = memberList.get(memberIndex);
+        }
+        writeFrame(member, null);
+    }
+
+    private Member nextIdleMember(final boolean advance) {
+        final int size = memberList.size();
+        for (int i = 0; i < size; i++) {
+            final int index = (memberIndex + i) % size;
+            final Member member = memberList.get(index);
+            if (member.outputQueue.isEmpty()) {
+                if (advance) {
+                    memberIndex = (index + 1) % size;
+                }
+                return member;
+            }
+        }
+
+        return null;
+    }
+
+    private void writeFrame(final Member member, final ByteBuffer data) throws IOException {
+        frameBuffer.clear();
+        frameBuffer.putInt(sendSeq++);
+        if (data != null) {
+            frameBuffer.put(data);
+        }
+        frameBuffer.flip();
+
+        // encrypt
+        handle.encrypt(frameBuffer, cryptoBuffer, packetBuffer);
+
+        // write, behind the queued packets of the member
+        final SelectionKey key = member.context.key();
+        if (member.outputQueue.isEmpty()) {
+            ((SocketChannel) key.channel()).write(packetBuffer);
+            if (!packetBuffer.hasRemaining()) {
+                return;
+            }
+
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        final ByteBuffer packet = ByteBuffer.allocate(packetBuffer.remaining());
+        packet.put(packetBuffer);
+        packet.flip();
+        member.outputQueue.add(packet);
+    }
+
+    /**
+     * on write readiness of a member, the stream is read again once a member drained
+     */
+    public void flushMember(final HikariContext context) throws IOException {
+        final Member member = getMember(context);
+        final SelectionKey key = context.key();
+        final SocketChannel channel = (SocketChannel) key.channel();
+
+        ByteBuffer packet;
+        while ((packet = member.outputQueue.peek()) != null) {
+            channel.write(packet);
+            if (packet.hasRemaining()) {
+                return;
+            }
+            member.outputQueue.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+        resumeStream();
+    }
+
+    /**
+     * a decrypted packet read from a member
+     */
+    public void receive(final HikariContext context, final ByteBuffer frame) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (stream == null) {
+            throw new HikariRuntimeException(String.format("bond %d not open", id));
+        }
+        if (frame.remaining() < HikariProtocol.BOND_FRAME_HEADER_SIZE) {
+            throw new HikariRuntimeException("bad bond frame");
+        }
+
+        final int seq = frame.getInt();
+        if (seq - receiveSeq < 0 || reorderMap.containsKey(seq) || (remoteEnded && seq - endSeq >= 0)) {
+            throw new HikariRuntimeException(String.format("bond %d frame %d duplicated", id, seq));
+        }
+        getMember(context).lastSeq = seq;
+
+        if (!frame.hasRemaining()) {
+            remoteEnded = true;
+            endSeq = seq;
+        }
+        else if (seq == receiveSeq) {
+            receiveSeq++;
+            deliver(frame);
+        }
+        else {
+            final ByteBuffer held = ByteBuffer.allocate(frame.remaining());
+            held.put(frame);
+            held.flip();
+            reorderMap.put(seq, held);
+            heldBytes += held.remaining();
+        }
+
+        // frames that waited for this one
+        ByteBuffer next;
+        while ((next = reorderMap.remove(receiveSeq)) != null) {
+            receiveSeq++;
+            heldBytes -= next.remaining();
+            deliver(next);
+        }
+
+        if (!finishIfDone()) {
+            updateMemberReads();
+        }
+    }
+
+    private void deliver(final ByteBuffer data) throws IOException {
+        if (pendingQueue.isEmpty()) {
+            ((SocketChannel) stream.key().channel()).write(data);
+            if (!data.hasRemaining()) {
+                return;
+            }
+
+            final SelectionKey key = stream.key();
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        final ByteBuffer pending = ByteBuffer.allocate(data.remaining());
+        pending.put(data);
+        pending.flip();
+        pendingQueue.add(pending);
+        heldBytes += pending.remaining();
+    }
+
+    /**
+     * on write readiness of the stream socket
+     */
+    public void flushStream() throws IOException {
+        final SelectionKey key = stream.key();
+        final SocketChannel channel = (SocketChannel) key.channel();
+
+        ByteBuffer pending;
+        while ((pending = pendingQueue.peek()) != null) {
+            final int length = pending.remaining();
+            channel.write(pending);
+            heldBytes -= length - pending.remaining();
+
+            if (pending.hasRemaining()) {
+                updateMemberReads();
+                return;
+            }
+            pendingQueue.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+        if (!finishIfDone()) {
+            updateMemberReads();
+        }
+    }
+
+    private boolean finishIfDone() {
+        if (remoteEnded && receiveSeq == endSeq && pendingQueue.isEmpty()) {
+            close();
+            return true;
+        }
+
+        return false;
+    }
+
+    private void updateMemberReads() {
+        if (heldBytes > MAX_HELD_BYTES) {
+            // a member whose last frame is past the next one cannot carry the next one, its frames arrive in order
+            final boolean streamBlocked = !pendingQueue.isEmpty();
+            for (Member member : memberList) {
+                if (!member.paused && (streamBlocked || member.lastSeq - receiveSeq > 0)) {
+                    member.paused = true;
+                    final SelectionKey key = member.context.key();
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+            }
+        }
+        else if (heldBytes <= RESUME_HELD_BYTES) {
+            for (Member member : memberList) {
+                if (member.paused) {
+                    member.paused = false;
+                    final SelectionKey key = member.context.key();
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            }
+        }
+    }
+
+    private Member getMember(final HikariContext context) {
+        for (Member member : memberList) {
+            if (member.context == context) {
+                return member;
+            }
+        }
+
+        throw new HikariRuntimeException(String.format("not a member of bond %d", id));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public HikariContext getStream() {
+        return stream;
+    }
+
+    public void setStream(HikariContext stream) {
+        this.stream = stream;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private static final class Member {
+        private final HikariContext context;
+        private final ArrayDeque<ByteBuffer> outputQueue = new ArrayDeque<>();
+        private int lastSeq = -1;
+        private boolean paused = false;
+
+        private Member(final HikariContext context) {
+            this.context = context;
+        }
+    }
+}
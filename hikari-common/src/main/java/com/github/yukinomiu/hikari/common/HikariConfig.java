@@ -10,6 +10,35 @@ public class HikariConfig {
     private String encryptType;
     private String secret;
 
+    // event loop
+    private Integer selectorRebuildThreshold;
+    private Integer busyPollMicros;
+    private Boolean selectedKeysOptimization;
+    private Integer timerTick;
+
+    // timeouts in millis, 0 disables
+    private Integer connectTimeout;
+    private Integer handshakeTimeout;
+    private Integer idleTimeout;
+
+    // read budget per connection and readiness event
+    private Integer readBudget;
+    private Integer readBudgetBytes;
+
+    // instrumentation
+    private Integer loopBlockThreshold;
+    private Integer loopStatsInterval;
+
+    // dns
+    private Integer resolverThreadCount;
+    private Integer dnsCacheSize;
+    private Integer dnsCacheTtl;
+    private Integer dnsNegativeCacheTtl;
+
+    // cache snapshot loaded at start and rewritten every interval seconds, null disables
+    private String dnsCacheSnapshotFile;
+    private Integer dnsCacheSnapshotInterval;
+
     public Integer getBufferSize() {
         return bufferSize;
     }
@@ -33,4 +62,140 @@ public class HikariConfig {
     public void setSecret(String secret) {
         this.secret = secret;
     }
+
+    public Integer getSelectorRebuildThreshold() {
+        return selectorRebuildThreshold;
+    }
+
+    public void setSelectorRebuildThreshold(Integer selectorRebuildThreshold) {
+        this.selectorRebuildThreshold = selectorRebuildThreshold;
+    }
+
+    public Integer getBusyPollMicros() {
+        return busyPollMicros;
+    }
+
+    public void setBusyPollMicros(Integer busyPollMicros) {
+        this.busyPollMicros = busyPollMicros;
+    }
+
+    public Boolean getSelectedKeysOptimization() {
+        return selectedKeysOptimization;
+    }
+
+    public void setSelectedKeysOptimization(Boolean selectedKeysOptimization) {
+        this.selectedKeysOptimization = selectedKeysOptimization;
+    }
+
+    public Integer getTimerTick() {
+        return timerTick;
+    }
+
+    public void setTimerTick(Integer timerTick) {
+        this.timerTick = timerTick;
+    }
+
+    public Integer getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Integer connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Integer getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+
+    public void setHandshakeTimeout(Integer handshakeTimeout) {
+        this.handshakeTimeout = handshakeTimeout;
+    }
+
+    public Integer getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(Integer idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public Integer getReadBudget() {
+        return readBudget;
+    }
+
+    public void setReadBudget(Integer readBudget) {
+        this.readBudget = readBudget;
+    }
+
+    public Integer getReadBudgetBytes() {
+        return readBudgetBytes;
+    }
+
+    public void setReadBudgetBytes(Integer readBudgetBytes) {
+        this.readBudgetBytes = readBudgetBytes;
+    }
+
+    public Integer getLoopBlockThreshold() {
+        return loopBlockThreshold;
+    }
+
+    public void setLoopBlockThreshold(Integer loopBlockThreshold) {
+        this.loopBlockThreshold = loopBlockThreshold;
+    }
+
+    public Integer getLoopStatsInterval() {
+        return loopStatsInterval;
+    }
+
+    public void setLoopStatsInterval(Integer loopStatsInterval) {
+        this.loopStatsInterval = loopStatsInterval;
+    }
+
+    public Integer getResolverThreadCount() {
+        return resolverThreadCount;
+    }
+
+    public void setResolverThreadCount(Integer resolverThreadCount) {
+        this.resolverThreadCount = resolverThreadCount;
+    }
+
+    public Integer getDnsCacheSize() {
+        return dnsCacheSize;
+    }
+
+    public void setDnsCacheSize(Integer dnsCacheSize) {
+        this.dnsCacheSize = dnsCacheSize;
+    }
+
+    public Integer getDnsCacheTtl() {
+        return dnsCacheTtl;
+    }
+
+    public void setDnsCacheTtl(Integer dnsCacheTtl) {
+        this.dnsCacheTtl = dnsCacheTtl;
+    }
+
+    public Integer getDnsNegativeCacheTtl() {
+        return dnsNegativeCacheTtl;
+    }
+
+    public void setDnsNegativeCacheTtl(Integer dnsNegativeCacheTtl) {
+        this.dnsNegativeCacheTtl = dnsNegativeCacheTtl;
+    }
+
+    public String getDnsCacheSnapshotFile() {
+        return dnsCacheSnapshotFile;
+    }
+
+    public void setDnsCacheSnapshotFile(String dnsCacheSnapshotFile) {
+        this.dnsCacheSnapshotFile = dnsCacheSnapshotFile;
+    }
+
+    public Integer getDnsCacheSnapshotInterval() {
+        return dnsCacheSnapshotInterval;
+    }
+
+    public void setDnsCacheSnapshotInterval(Integer dnsCacheSnapshotInterval) {
+        this.dnsCacheSnapshotInterval = dnsCacheSnapshotInterval;
+    }
 }
@@ -11,6 +11,8 @@ public interface HikariContext {
 
     SelectionKey key();
 
+    void updateKey(final SelectionKey key);
+
     ByteBuffer writeBuffer();
 
     void close();
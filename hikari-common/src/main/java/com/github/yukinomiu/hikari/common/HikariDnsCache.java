@@ -0,0 +1,285 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * bounded lru cache of lookups shared by all loops, keyed by the raw domain bytes of the request
+ * <p>
+ * Yukinomiu
+ * 2018/2/12
+ */
+public class HikariDnsCache {
+    private static final Logger logger = LoggerFactory.getLogger(HikariDnsCache.class);
+
+    // entries hit this often are refreshed in the last fifth of their ttl
+    private static final int REFRESH_MIN_HITS = 2;
+    private static final int REFRESH_WINDOW_DIVISOR = 5;
+
+    // snapshot: magic, version, count, then per entry domain length, domain, address count,
+    // address length and address for each address, expire millis
+    private static final int SNAPSHOT_MAGIC = 0x484B4443;
+    private static final byte SNAPSHOT_VERSION = 2;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<Key, Entry> map;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public HikariDnsCache(final int maxSize, final int ttlSeconds, final int negativeTtlSeconds) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.map = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, HikariDnsCache.Entry> eldest) {
+                if (size() > HikariDnsCache.this.maxSize) {
+                    evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * null on miss, a hit with null addresses is a cached failure
+     */
+    public Entry get(final byte[] domain) {
+        final Key key = new Key(domain);
+        final long now = System.nanoTime();
+
+        Entry entry;
+        synchronized (map) {
+            entry = map.get(key);
+            if (entry != null && now - entry.expireTime >= 0) {
+                map.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+
+        hitCount.increment();
+        entry.hits.incrementAndGet();
+        return entry;
+    }
+
+    public void put(final byte[] domain, final InetAddress[] addresses) {
+        final long ttl = addresses != null ? ttlNanos : negativeTtlNanos;
+        if (ttl <= 0) {
+            return;
+        }
+
+        put(domain, addresses, ttl, ttl);
+    }
+
+    private void put(final byte[] domain, final InetAddress[] addresses, final long ttl, final long remaining) {
+        final long now = System.nanoTime();
+        final Entry entry = new Entry(addresses, now + remaining, now + remaining - ttl / REFRESH_WINDOW_DIVISOR);
+        synchronized (map) {
+            map.put(new Key(domain), entry);
+        }
+    }
+
+    /**
+     * positive entries only, least recently used first so loading keeps the lru order
+     */
+    public int writeSnapshot(final Path path) throws IOException {
+        final Key[] keys;
+        final Entry[] entries;
+        synchronized (map) {
+            keys = map.keySet().toArray(new Key[0]);
+            entries = map.values().toArray(new Entry[0]);
+        }
+
+        final long nowNanos = System.nanoTime();
+        final long nowMillis = System.currentTimeMillis();
+
+        int size = 4 + 1 + 4;
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (entries[i].addresses != null && entries[i].expireTime - nowNanos > 0) {
+                size += 1 + keys[i].domain.length + 1 + 8;
+                for (InetAddress address : entries[i].addresses) {
+                    size += 1 + address.getAddress().length;
+                }
+                count++;
+            }
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(SNAPSHOT_MAGIC);
+        buffer.put(SNAPSHOT_VERSION);
+        buffer.putInt(count);
+        for (int i = 0; i < keys.length; i++) {
+            final Entry entry = entries[i];
+            if (entry.addresses == null || entry.expireTime - nowNanos <= 0) {
+                continue;
+            }
+
+            buffer.put((byte) keys[i].domain.length);
+            buffer.put(keys[i].domain);
+            buffer.put((byte) entry.addresses.length);
+            for (InetAddress address : entry.addresses) {
+                final byte[] addressBytes = address.getAddress();
+                buffer.put((byte) addressBytes.length);
+                buffer.put(addressBytes);
+            }
+            buffer.putLong(nowMillis + TimeUnit.NANOSECONDS.toMillis(entry.expireTime - nowNanos));
+        }
+        buffer.flip();
+
+        // replace the old snapshot in one step, a crash never leaves a torn file behind
+        final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return count;
+    }
+
+    /**
+     * entries expired by now are dropped, returns the number of entries loaded
+     */
+    public int loadSnapshot(final Path path) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return 0;
+        }
+
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        final long nowMillis = System.currentTimeMillis();
+        int loaded = 0;
+        try {
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.get() != SNAPSHOT_VERSION) {
+                logger.warn("unknown dns cache snapshot format: {}", path);
+                return 0;
+            }
+
+            final int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                final byte[] domain = new byte[buffer.get() & 0xFF];
+                buffer.get(domain);
+                final InetAddress[] addresses = new InetAddress[buffer.get() & 0xFF];
+                for (int j = 0; j < addresses.length; j++) {
+                    final byte[] address = new byte[buffer.get() & 0xFF];
+                    buffer.get(address);
+                    addresses[j] = InetAddress.getByAddress(address);
+                }
+                final long expireMillis = buffer.getLong();
+
+                final long remainingMillis = expireMillis - nowMillis;
+                if (remainingMillis <= 0) {
+                    continue;
+                }
+
+                final long remaining = Math.min(TimeUnit.MILLISECONDS.toNanos(remainingMillis), ttlNanos);
+                put(domain, addresses, ttlNanos, remaining);
+                loaded++;
+            }
+        } catch (BufferUnderflowException e) {
+            logger.warn("truncated dns cache snapshot: {}", path);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * true for exactly one caller once a popular entry gets close to expiry
+     */
+    public boolean markRefresh(final Entry entry) {
+        return entry.addresses != null
+                && entry.hits.get() >= REFRESH_MIN_HITS
+                && System.nanoTime() - entry.refreshTime >= 0
+                && entry.refreshing.compareAndSet(false, true);
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public static final class Entry {
+        private final InetAddress[] addresses;
+        private final long expireTime;
+        private final long refreshTime;
+        private final AtomicInteger hits = new AtomicInteger();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(final InetAddress[] addresses, final long expireTime, final long refreshTime) {
+            this.addresses = addresses;
+            this.expireTime = expireTime;
+            this.refreshTime = refreshTime;
+        }
+
+        public InetAddress[] getAddresses() {
+            return addresses;
+        }
+    }
+
+    static final class Key {
+        private final byte[] domain;
+        private final int hash;
+
+        Key(final byte[] domain) {
+            this.domain = domain;
+            this.hash = Arrays.hashCode(domain);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Key && Arrays.equals(domain, ((Key) o).domain);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
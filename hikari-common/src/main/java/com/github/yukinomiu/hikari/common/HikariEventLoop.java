@@ -0,0 +1,421 @@
+package com.github.yukinomiu.hikari.common;
+
+import com.github.yukinomiu.hikari.common.util.SelectorUtil;
+import com.github.yukinomiu.hikari.common.util.ThreadUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Yukinomiu
+ * 2018/2/3
+ */
+public class HikariEventLoop implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(HikariEventLoop.class);
+    private static final int MAX_TASKS_PER_ITERATION = 1024;
+    private static final int DEFAULT_SELECTOR_REBUILD_THRESHOLD = 512;
+    private static final int DEFAULT_TIMER_TICK = 10;
+    private static final int TIMER_WHEEL_SIZE = 512;
+
+    private final String name;
+    private final HikariHandle handle;
+    private final Thread thread;
+    private volatile Selector selector;
+
+    // tasks submitted by any thread, run on the loop thread
+    private final HikariTaskQueue taskQueue = new HikariTaskQueue();
+
+    // delayed tasks, only touched by the loop thread
+    private final HikariTimer timer;
+    private long currentTime;
+
+    // empty select detection
+    private final int selectorRebuildThreshold;
+    private int emptySelectCount;
+    private volatile long selectorRebuildCount;
+
+    // busy poll
+    private final long busyPollNanos;
+    private volatile boolean spinning;
+    private boolean lastSelectBlocked;
+    private long selectDeadline;
+
+    // selected key dispatch
+    private final boolean selectedKeysOptimization;
+    private final HikariSelectedKeySet selectedKeySet = new HikariSelectedKeySet();
+    private boolean selectedKeysReplaced;
+    private final Consumer<SelectionKey> selectAction;
+
+    // instrumentation, busy since is 0 while waiting in select
+    private volatile long busySince;
+    private final HikariEventLoopStats stats;
+
+    public HikariEventLoop(final String name,
+                           final Function<HikariEventLoop, ? extends HikariHandle> handleFactory,
+                           final HikariConfig config) throws IOException {
+        this.name = name;
+        this.thread = new Thread(this, name);
+
+        final Integer timerTick = config.getTimerTick();
+        final long tickNanos = TimeUnit.MILLISECONDS.toNanos(timerTick != null && timerTick > 0 ? timerTick : DEFAULT_TIMER_TICK);
+        currentTime = System.nanoTime();
+        timer = new HikariTimer(tickNanos, TIMER_WHEEL_SIZE, currentTime);
+
+        final Boolean optimization = config.getSelectedKeysOptimization();
+        selectedKeysOptimization = optimization == null || optimization;
+        this.selector = openSelector();
+
+        // without access to the selector internals dispatch right from select, the selected key set is not touched then
+        if (selectedKeysOptimization && !selectedKeysReplaced && SelectorUtil.isSelectActionSupported()) {
+            selectAction = this::processSelectedKey;
+        }
+        else {
+            selectAction = null;
+        }
+
+        final Integer rebuildThreshold = config.getSelectorRebuildThreshold();
+        selectorRebuildThreshold = rebuildThreshold != null ? rebuildThreshold : DEFAULT_SELECTOR_REBUILD_THRESHOLD;
+
+        final Integer busyPollMicros = config.getBusyPollMicros();
+        busyPollNanos = busyPollMicros != null && busyPollMicros > 0 ? busyPollMicros * 1000L : 0L;
+
+        final Integer loopStatsInterval = config.getLoopStatsInterval();
+        stats = loopStatsInterval != null && loopStatsInterval > 0 ? new HikariEventLoopStats() : null;
+
+        // last, the handle may keep a reference to the loop
+        this.handle = handleFactory.apply(this);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        thread.interrupt();
+    }
+
+    public void close() throws IOException {
+        selector.close();
+    }
+
+    public void register(final SocketChannel channel) {
+        execute(() -> handle.handleAccepted(channel, selector));
+    }
+
+    public void execute(final Runnable task) {
+        // no wakeup needed while the loop is busy polling, it sees the task on its next selectNow
+        if (taskQueue.offer(task) && !inEventLoop() && !spinning) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * run the task on the loop after the delay, rounded up to the timer tick. tasks of the same tick run in
+     * submission order. the returned timeout must be cancelled on the loop thread
+     */
+    public HikariTimer.Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        if (inEventLoop()) {
+            return timer.newTimeout(task, currentTime + unit.toNanos(delay));
+        }
+
+        final HikariTimer.Timeout timeout = new HikariTimer.Timeout(timer, task, System.nanoTime() + unit.toNanos(delay));
+        execute(() -> timer.add(timeout));
+        return timeout;
+    }
+
+    /**
+     * nano time sampled when the loop last woke up, a cheap clock for the loop thread
+     */
+    public long currentTime() {
+        return currentTime;
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Selector getSelector() {
+        return selector;
+    }
+
+    public long getSelectorRebuildCount() {
+        return selectorRebuildCount;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public long getBusySince() {
+        return busySince;
+    }
+
+    /**
+     * must be called on the loop thread
+     */
+    public void reportStats() {
+        if (stats != null) {
+            stats.report(name);
+        }
+    }
+
+    @Override
+    public void run() {
+        logger.info("{} thread run...", name);
+
+        // loop
+        while (true) {
+            try {
+                busySince = 0L;
+                final long selectStartTime = stats != null ? System.nanoTime() : 0L;
+                final long callbackNanosBefore = stats != null ? stats.getTotalCallbackNanos() : 0L;
+
+                int count = select();
+
+                final long selectEndTime = System.nanoTime();
+                currentTime = selectEndTime;
+                if (busySince == 0L) {
+                    busySince = selectEndTime;
+                }
+
+                if (Thread.currentThread().isInterrupted()) {
+                    logger.info("{} thread exit loop", name);
+                    break;
+                }
+
+                if (count != 0 && selectAction == null) {
+                    processSelectedKeys();
+                }
+
+                final int taskCount = runTasks() + timer.expireTimeouts(System.nanoTime());
+
+                if (stats != null) {
+                    // callbacks dispatched from inside select count as processing
+                    final long selectCallbackNanos = stats.getTotalCallbackNanos() - callbackNanosBefore;
+                    stats.recordIteration(selectEndTime - selectStartTime - selectCallbackNanos,
+                            System.nanoTime() - selectEndTime + selectCallbackNanos, count, taskCount);
+                }
+
+                if (lastSelectBlocked && count == 0 && taskCount == 0 && (selectDeadline == 0L || selectEndTime - selectDeadline < 0)) {
+                    // blocking select returned early for nothing, the epoll empty wakeup bug spins here
+                    if (selectorRebuildThreshold > 0 && ++emptySelectCount >= selectorRebuildThreshold) {
+                        logger.warn("{} select returned empty {} times in a row, rebuild selector", name, emptySelectCount);
+                        rebuildSelector();
+                        emptySelectCount = 0;
+                    }
+                }
+                else {
+                    emptySelectCount = 0;
+                }
+            } catch (ClosedSelectorException e) {
+                // closed by shutdown before the loop saw the interrupt
+                logger.info("{} selector closed, exit loop", name);
+                break;
+            } catch (Exception e) {
+                logger.error("{} main loop exception", name, e);
+            }
+        }
+
+        logger.info("{} thread stop", name);
+    }
+
+    private int select() throws IOException {
+        lastSelectBlocked = false;
+        selectDeadline = 0L;
+        if (!taskQueue.isEmpty() || timer.hasDueTick(System.nanoTime())) {
+            return selectNow();
+        }
+
+        if (busyPollNanos > 0) {
+            // spin on selectNow before falling back to a blocking select, trades CPU for wakeup latency
+            final long deadline = System.nanoTime() + busyPollNanos;
+            spinning = true;
+            try {
+                do {
+                    final int count = selectNow();
+                    if (count != 0 || !taskQueue.isEmpty() || timer.hasDueTick(System.nanoTime())) {
+                        return count;
+                    }
+
+                    ThreadUtil.onSpinWait();
+                } while (System.nanoTime() - deadline < 0 && !Thread.currentThread().isInterrupted());
+            } finally {
+                spinning = false;
+            }
+
+            // a task offered while spinning did not wake up the selector
+            if (!taskQueue.isEmpty()) {
+                return selectNow();
+            }
+        }
+
+        lastSelectBlocked = true;
+        final long now = System.nanoTime();
+        final long timeoutNanos = timer.nextTimeoutNanos(now);
+        if (timeoutNanos < 0) {
+            return selectAction != null ? SelectorUtil.select(selector, selectAction) : selector.select();
+        }
+
+        // sleep until the next non-empty bucket of the wheel, rounded up
+        final long timeout = Math.max(1L, (timeoutNanos + 999999L) / 1000000L);
+        selectDeadline = now + timeoutNanos;
+        return selectAction != null ? SelectorUtil.select(selector, selectAction, timeout) : selector.select(timeout);
+    }
+
+    private int selectNow() throws IOException {
+        return selectAction != null ? SelectorUtil.selectNow(selector, selectAction) : selector.selectNow();
+    }
+
+    private Selector openSelector() throws IOException {
+        final Selector newSelector = Selector.open();
+        selectedKeysReplaced = selectedKeysOptimization && SelectorUtil.replaceSelectedKeys(newSelector, selectedKeySet);
+        return newSelector;
+    }
+
+    private void processSelectedKeys() {
+        if (selectedKeysReplaced) {
+            final int size = selectedKeySet.size();
+            for (int i = 0; i < size; i++) {
+                processSelectedKey(selectedKeySet.get(i));
+            }
+            selectedKeySet.reset();
+            return;
+        }
+
+        Set<SelectionKey> keys = selector.selectedKeys();
+        Iterator<SelectionKey> iterator = keys.iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+
+            processSelectedKey(key);
+        }
+    }
+
+    private void processSelectedKey(final SelectionKey key) {
+        if (selectAction != null && busySince == 0L) {
+            // dispatched from inside select
+            busySince = System.nanoTime();
+            currentTime = busySince;
+        }
+
+        if (!key.isValid()) {
+            key.cancel();
+            return;
+        }
+
+        final long startTime = stats != null ? System.nanoTime() : 0L;
+        final int callback;
+        if (key.isReadable()) {
+            handle.handleRead(key);
+            callback = HikariEventLoopStats.CALLBACK_READ;
+        }
+        else if (key.isWritable()) {
+            handle.handleWrite(key);
+            callback = HikariEventLoopStats.CALLBACK_WRITE;
+        }
+        else if (key.isAcceptable()) {
+            handle.handleAccept(key);
+            callback = HikariEventLoopStats.CALLBACK_ACCEPT;
+        }
+        else if (key.isConnectable()) {
+            handle.handleConnect(key);
+            callback = HikariEventLoopStats.CALLBACK_CONNECT;
+        }
+        else {
+            return;
+        }
+
+        if (stats != null) {
+            stats.recordCallback(callback, System.nanoTime() - startTime);
+        }
+    }
+
+    private int runTasks() {
+        // bounded, tasks left over are run in the next iteration without blocking in select
+        int i = 0;
+        for (; i < MAX_TASKS_PER_ITERATION; i++) {
+            final Runnable task = taskQueue.poll();
+            if (task == null) {
+                break;
+            }
+
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("{} task exception", name, e);
+            }
+        }
+
+        return i;
+    }
+
+    private void rebuildSelector() {
+        final Selector oldSelector = selector;
+        final Selector newSelector;
+        try {
+            newSelector = openSelector();
+        } catch (IOException e) {
+            logger.warn("{} open new selector exception, msg: {}", name, e.getMessage());
+            return;
+        }
+
+        int migrated = 0;
+        for (SelectionKey key : oldSelector.keys()) {
+            final Object attachment = key.attachment();
+            try {
+                if (!key.isValid() || key.channel().keyFor(newSelector) != null) {
+                    continue;
+                }
+
+                final int interestOps = key.interestOps();
+                key.cancel();
+
+                final SelectionKey newKey = key.channel().register(newSelector, interestOps, attachment);
+                if (attachment instanceof HikariContext) {
+                    ((HikariContext) attachment).updateKey(newKey);
+                }
+                migrated++;
+            } catch (Exception e) {
+                String msg = e.getMessage();
+                logger.warn("{} re-register channel exception: {}", name, msg != null ? msg : e.getClass().getName());
+
+                if (attachment instanceof HikariContext) {
+                    ((HikariContext) attachment).close();
+                }
+                else {
+                    try {
+                        key.channel().close();
+                    } catch (IOException ce) {
+                        logger.warn("{} close channel exception, msg: {}", name, ce.getMessage());
+                    }
+                }
+            }
+        }
+
+        selector = newSelector;
+        selectorRebuildCount++;
+
+        try {
+            oldSelector.close();
+        } catch (IOException e) {
+            logger.warn("{} close old selector exception, msg: {}", name, e.getMessage());
+        }
+
+        logger.warn("{} selector rebuilt, {} channels migrated, rebuild count: {}", name, migrated, selectorRebuildCount);
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Yukinomiu
+ * 2018/2/3
+ */
+public class HikariEventLoopGroup {
+    private static final Logger logger = LoggerFactory.getLogger(HikariEventLoopGroup.class);
+
+    private final HikariEventLoop[] loops;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    public HikariEventLoopGroup(final String name,
+                                final int loopCount,
+                                final HikariConfig config,
+                                final Function<HikariEventLoop, ? extends HikariHandle> handleFactory) throws IOException {
+        if (loopCount <= 0) {
+            throw new IllegalArgumentException("loop count must be positive");
+        }
+
+        loops = new HikariEventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new HikariEventLoop(String.format("%s-%d", name, i), handleFactory, config);
+        }
+        logger.info("{} loop count: {}", name, loopCount);
+    }
+
+    public static int resolveLoopCount(final Integer configured) {
+        if (configured == null || configured <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return configured;
+    }
+
+    public HikariEventLoop next() {
+        final int index = nextIndex.getAndIncrement() & Integer.MAX_VALUE;
+        return loops[index % loops.length];
+    }
+
+    public HikariEventLoop[] loops() {
+        return loops;
+    }
+
+    public void start() {
+        for (HikariEventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    public void stop() {
+        for (HikariEventLoop loop : loops) {
+            loop.stop();
+        }
+    }
+
+    public void close() throws IOException {
+        for (HikariEventLoop loop : loops) {
+            loop.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * only touched by the loop thread, reports are taken on the loop thread too
+ * <p>
+ * Yukinomiu
+ * 2018/2/10
+ */
+public class HikariEventLoopStats {
+    private static final Logger logger = LoggerFactory.getLogger(HikariEventLoopStats.class);
+
+    public static final int CALLBACK_ACCEPT = 0;
+    public static final int CALLBACK_CONNECT = 1;
+    public static final int CALLBACK_READ = 2;
+    public static final int CALLBACK_WRITE = 3;
+    private static final String[] CALLBACK_NAMES = {"accept", "connect", "read", "write"};
+
+    private long iterations;
+    private long selectWaitNanos;
+    private long processNanos;
+    private long maxProcessNanos;
+    private long keys;
+    private int maxKeys;
+    private long tasks;
+
+    private final long[] callbackCounts = new long[CALLBACK_NAMES.length];
+    private final long[] callbackNanos = new long[CALLBACK_NAMES.length];
+    private final long[] callbackMaxNanos = new long[CALLBACK_NAMES.length];
+    private long totalCallbackNanos;
+
+    public void recordIteration(final long selectWaitNanos, final long processNanos, final int keys, final int tasks) {
+        iterations++;
+        this.selectWaitNanos += selectWaitNanos;
+        this.processNanos += processNanos;
+        if (processNanos > maxProcessNanos) {
+            maxProcessNanos = processNanos;
+        }
+        this.keys += keys;
+        if (keys > maxKeys) {
+            maxKeys = keys;
+        }
+        this.tasks += tasks;
+    }
+
+    public void recordCallback(final int callback, final long nanos) {
+        callbackCounts[callback]++;
+        callbackNanos[callback] += nanos;
+        if (nanos > callbackMaxNanos[callback]) {
+            callbackMaxNanos[callback] = nanos;
+        }
+        totalCallbackNanos += nanos;
+    }
+
+    /**
+     * callback time since start, lets the loop tell select wait from callbacks run inside select
+     */
+    public long getTotalCallbackNanos() {
+        return totalCallbackNanos;
+    }
+
+    public void report(final String name) {
+        final StringBuilder callbacks = new StringBuilder();
+        for (int i = 0; i < CALLBACK_NAMES.length; i++) {
+            final long count = callbackCounts[i];
+            callbacks.append(String.format(", %s: %d calls avg %d us max %d us",
+                    CALLBACK_NAMES[i], count, count != 0 ? callbackNanos[i] / count / 1000 : 0, callbackMaxNanos[i] / 1000));
+        }
+
+        logger.info("{} iterations: {}, select wait: {} ms, process: {} ms (max {} us), keys: {} (max {}), tasks: {}{}",
+                name, iterations, selectWaitNanos / 1000000, processNanos / 1000000, maxProcessNanos / 1000,
+                keys, maxKeys, tasks, callbacks);
+
+        reset();
+    }
+
+    private void reset() {
+        iterations = 0;
+        selectWaitNanos = 0;
+        processNanos = 0;
+        maxProcessNanos = 0;
+        keys = 0;
+        maxKeys = 0;
+        tasks = 0;
+        Arrays.fill(callbackCounts, 0);
+        Arrays.fill(callbackNanos, 0);
+        Arrays.fill(callbackMaxNanos, 0);
+    }
+}
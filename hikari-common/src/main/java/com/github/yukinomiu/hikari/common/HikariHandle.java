@@ -1,6 +1,8 @@
 package com.github.yukinomiu.hikari.common;
 
 import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 
 /**
  * Yukinomiu
@@ -10,6 +12,8 @@ public interface HikariHandle {
 
     void handleAccept(final SelectionKey key);
 
+    void handleAccepted(final SocketChannel channel, final Selector selector);
+
     void handleConnect(final SelectionKey key);
 
     void handleRead(final SelectionKey key);
@@ -0,0 +1,68 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * closes a proxied connection pair nothing was read from for the idle timeout
+ * <p>
+ * reads only stamp the loop clock, the timeout is re-armed for the time left when it fires
+ * <p>
+ * Yukinomiu
+ * 2018/2/12
+ */
+public final class HikariIdleTimeout implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(HikariIdleTimeout.class);
+
+    private final HikariContext context;
+    private final long idleNanos;
+
+    private HikariEventLoop loop;
+    private HikariTimer.Timeout timeout;
+    private long lastActiveTime;
+
+    public HikariIdleTimeout(final HikariContext context, final long idleMillis) {
+        this.context = context;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    }
+
+    /**
+     * arm on the loop owning the connection, must be called on that loop
+     */
+    public void start(final HikariEventLoop loop) {
+        cancel();
+        if (idleNanos <= 0) {
+            return;
+        }
+
+        this.loop = loop;
+        lastActiveTime = loop.currentTime();
+        timeout = loop.schedule(this, idleNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void touch(final long now) {
+        lastActiveTime = now;
+    }
+
+    public void cancel() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        final long idle = loop.currentTime() - lastActiveTime;
+        if (idle >= idleNanos) {
+            timeout = null;
+            logger.debug("connection idle for {} ms, close", TimeUnit.NANOSECONDS.toMillis(idle));
+            context.close();
+            return;
+        }
+
+        timeout = loop.schedule(this, idleNanos - idle, TimeUnit.NANOSECONDS);
+    }
+}
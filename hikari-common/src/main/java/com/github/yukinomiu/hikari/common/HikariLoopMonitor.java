@@ -0,0 +1,110 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * logs loops that did not come back to select in time and reports loop stats
+ * <p>
+ * Yukinomiu
+ * 2018/2/10
+ */
+public class HikariLoopMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(HikariLoopMonitor.class);
+    private static final int DEFAULT_LOOP_BLOCK_THRESHOLD = 1000;
+    private static final long MIN_CHECK_PERIOD = 10;
+
+    private final String name;
+    private final long blockThresholdNanos;
+    private final int statsInterval;
+    private final List<HikariEventLoop> loopList = new ArrayList<>();
+
+    // busy start of the last reported stall per loop, reported once
+    private long[] reportedBusySince;
+
+    private ScheduledExecutorService scheduler;
+
+    public HikariLoopMonitor(final String name, final HikariConfig config) {
+        this.name = name;
+
+        final Integer loopBlockThreshold = config.getLoopBlockThreshold();
+        final int blockThreshold = loopBlockThreshold != null ? loopBlockThreshold : DEFAULT_LOOP_BLOCK_THRESHOLD;
+        blockThresholdNanos = blockThreshold > 0 ? TimeUnit.MILLISECONDS.toNanos(blockThreshold) : 0L;
+
+        final Integer loopStatsInterval = config.getLoopStatsInterval();
+        statsInterval = loopStatsInterval != null && loopStatsInterval > 0 ? loopStatsInterval : 0;
+    }
+
+    public void watch(final HikariEventLoop loop) {
+        loopList.add(loop);
+    }
+
+    public void start() {
+        if (blockThresholdNanos == 0 && statsInterval == 0) {
+            return;
+        }
+
+        reportedBusySince = new long[loopList.size()];
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (blockThresholdNanos != 0) {
+            final long period = Math.max(TimeUnit.NANOSECONDS.toMillis(blockThresholdNanos) >> 1, MIN_CHECK_PERIOD);
+            scheduler.scheduleWithFixedDelay(this::checkBlocked, period, period, TimeUnit.MILLISECONDS);
+            logger.info("{} loop block threshold: {} ms", name, TimeUnit.NANOSECONDS.toMillis(blockThresholdNanos));
+        }
+        if (statsInterval != 0) {
+            scheduler.scheduleWithFixedDelay(this::reportStats, statsInterval, statsInterval, TimeUnit.MILLISECONDS);
+            logger.info("{} loop stats interval: {} ms", name, statsInterval);
+        }
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void checkBlocked() {
+        try {
+            final long now = System.nanoTime();
+            for (int i = 0; i < loopList.size(); i++) {
+                final HikariEventLoop loop = loopList.get(i);
+                final long busySince = loop.getBusySince();
+                if (busySince == 0 || busySince == reportedBusySince[i] || now - busySince < blockThresholdNanos) {
+                    continue;
+                }
+
+                reportedBusySince[i] = busySince;
+                logger.warn("{} has not returned to select for {} ms{}",
+                        loop.getName(), TimeUnit.NANOSECONDS.toMillis(now - busySince), formatStackTrace(loop.getThread()));
+            }
+        } catch (Exception e) {
+            logger.error("check blocked loop exception", e);
+        }
+    }
+
+    private void reportStats() {
+        for (HikariEventLoop loop : loopList) {
+            loop.execute(loop::reportStats);
+        }
+    }
+
+    private String formatStackTrace(final Thread thread) {
+        final StringBuilder sb = new StringBuilder();
+        for (StackTraceElement element : thread.getStackTrace()) {
+            sb.append(System.lineSeparator()).append("\tat ").append(element);
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,217 @@
+package com.github.yukinomiu.hikari.common;
+
+import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * one hikari connection shared by many streams, the frames of all streams queue on it in order
+ * <p>
+ * reads of the streams pause while the connection has unsent packets, so the queue holds
+ * at most a packet per stream and a few control frames. only touched by the owner loop
+ * <p>
+ * Yukinomiu
+ * 2018/2/17
+ */
+public class HikariMuxSession {
+    private static final Logger logger = LoggerFactory.getLogger(HikariMuxSession.class);
+
+    private final HikariAbstractHandle handle;
+    private final HikariContext context;
+    private boolean closed = false;
+
+    private final Map<Integer, HikariMuxStream> streamMap = new HashMap<>();
+    private int nextStreamId;
+
+    // frame, crypto and packet buffers of this session
+    private final ByteBuffer frameBuffer;
+    private final ByteBuffer cryptoBuffer;
+    private final ByteBuffer packetBuffer;
+
+    // packets the connection did not take yet and the streams waiting for them to drain
+    private final ArrayDeque<ByteBuffer> outputQueue = new ArrayDeque<>();
+    private final List<HikariMuxStream> blockedStreamList = new ArrayList<>();
+
+    public HikariMuxSession(final HikariAbstractHandle handle,
+                            final HikariContext context,
+                            final int bufferSize) {
+        this.handle = handle;
+        this.context = context;
+
+        frameBuffer = ByteBuffer.allocateDirect(bufferSize);
+        cryptoBuffer = ByteBuffer.allocateDirect(bufferSize);
+        packetBuffer = ByteBuffer.allocateDirect(bufferSize + HikariConstant.PACKET_WRAPPER_SIZE);
+    }
+
+    /**
+     * closes every stream, the connection is gone so no close frame is sent
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        outputQueue.clear();
+        blockedStreamList.clear();
+        for (HikariMuxStream stream : new ArrayList<>(streamMap.values())) {
+            stream.close();
+        }
+        streamMap.clear();
+    }
+
+    /**
+     * a stream id not used by a stream of this session
+     */
+    public int nextStreamId() {
+        do {
+            nextStreamId++;
+        } while (streamMap.containsKey(nextStreamId));
+
+        return nextStreamId;
+    }
+
+    /**
+     * returns false when the id is taken
+     */
+    public boolean addStream(final HikariMuxStream stream) {
+        if (streamMap.containsKey(stream.getId())) {
+            return false;
+        }
+
+        streamMap.put(stream.getId(), stream);
+        return true;
+    }
+
+    public HikariMuxStream getStream(final int id) {
+        return streamMap.get(id);
+    }
+
+    public int getStreamCount() {
+        return streamMap.size();
+    }
+
+    void streamClosed(final HikariMuxStream stream, final boolean notify) {
+        if (streamMap.get(stream.getId()) == stream) {
+            streamMap.remove(stream.getId());
+        }
+        blockedStreamList.remove(stream);
+
+        if (closed || !notify) {
+            return;
+        }
+
+        try {
+            writeFrame(HikariProtocol.MUX_FRAME_CLOSE, stream.getId(), null);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("send mux close frame exception: {}", msg != null ? msg : e.getClass().getName());
+            context.close();
+        }
+    }
+
+    public void writeWindow(final int id, final int increment) throws IOException {
+        frameBuffer.clear();
+        frameBuffer.put(HikariProtocol.MUX_FRAME_WINDOW);
+        frameBuffer.putInt(id);
+        frameBuffer.putShort((short) 4);
+        frameBuffer.putInt(increment);
+        frameBuffer.flip();
+
+        writePacket();
+    }
+
+    /**
+     * payload must fit a packet along with the frame header, null for none
+     */
+    public void writeFrame(final byte type, final int id, final ByteBuffer payload) throws IOException {
+        frameBuffer.clear();
+        frameBuffer.put(type);
+        frameBuffer.putInt(id);
+        if (payload != null) {
+            frameBuffer.putShort((short) payload.remaining());
+            frameBuffer.put(payload);
+        }
+        else {
+            frameBuffer.putShort((short) 0);
+        }
+        frameBuffer.flip();
+
+        writePacket();
+    }
+
+    private void writePacket() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        // encrypt
+        handle.encrypt(frameBuffer, cryptoBuffer, packetBuffer);
+
+        // write, behind the queued packets
+        if (outputQueue.isEmpty()) {
+            final SelectionKey key = context.key();
+            ((SocketChannel) key.channel()).write(packetBuffer);
+            if (!packetBuffer.hasRemaining()) {
+                return;
+            }
+
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        final ByteBuffer packet = ByteBuffer.allocate(packetBuffer.remaining());
+        packet.put(packetBuffer);
+        packet.flip();
+        outputQueue.add(packet);
+    }
+
+    /**
+     * on write readiness of the connection, streams blocked by it read again once the queue drained
+     */
+    public void flush() throws IOException {
+        final SelectionKey key = context.key();
+        final SocketChannel channel = (SocketChannel) key.channel();
+
+        ByteBuffer packet;
+        while ((packet = outputQueue.peek()) != null) {
+            channel.write(packet);
+            if (packet.hasRemaining()) {
+                return;
+            }
+            outputQueue.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+        final List<HikariMuxStream> streamList = new ArrayList<>(blockedStreamList);
+        blockedStreamList.clear();
+        for (HikariMuxStream stream : streamList) {
+            stream.resume();
+        }
+    }
+
+    public boolean isBlocked() {
+        return !outputQueue.isEmpty();
+    }
+
+    void block(final HikariMuxStream stream) {
+        blockedStreamList.add(stream);
+    }
+
+    public HikariContext getContext() {
+        return context;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
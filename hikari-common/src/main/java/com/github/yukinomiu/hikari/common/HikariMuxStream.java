@@ -0,0 +1,226 @@
+package com.github.yukinomiu.hikari.common;
+
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * one proxied connection inside a mux session, credit based flow control per direction
+ * <p>
+ * data for a slow socket queues here instead of holding up the session, the sender stops once
+ * it used up the window and the receiver gives credit back as the socket takes the data.
+ * only touched by the owner loop
+ * <p>
+ * Yukinomiu
+ * 2018/2/17
+ */
+public class HikariMuxStream {
+    // credit is given back in batches
+    private static final int WINDOW_UPDATE_THRESHOLD = HikariProtocol.MUX_INITIAL_WINDOW >>> 2;
+
+    // a sender may overrun the window by the last frame it sent
+    private static final int MAX_PENDING_BYTES = HikariProtocol.MUX_INITIAL_WINDOW + 0xFFFF;
+
+    private final int id;
+    private final HikariMuxSession session;
+    private HikariContext context;
+    private boolean closed = false;
+
+    // send side
+    private int sendWindow = HikariProtocol.MUX_INITIAL_WINDOW;
+    private boolean paused = false;
+    private boolean blocked = false;
+
+    // receive side
+    private final ArrayDeque<ByteBuffer> pendingQueue = new ArrayDeque<>();
+    private int pendingBytes;
+    private int consumedBytes;
+    private boolean remoteClosed = false;
+
+    public HikariMuxStream(final int id, final HikariMuxSession session) {
+        this.id = id;
+        this.session = session;
+    }
+
+    /**
+     * closes the socket of the stream, the peer is told unless it closed the stream first
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        end(!remoteClosed);
+
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    /**
+     * ends the stream without touching its socket or telling the peer, which dropped the stream already
+     */
+    public void reset() {
+        if (closed) {
+            return;
+        }
+        remoteClosed = true;
+        end(false);
+    }
+
+    private void end(final boolean notify) {
+        closed = true;
+        pendingQueue.clear();
+        pendingBytes = 0;
+        session.streamClosed(this, notify);
+    }
+
+    /**
+     * the peer closed the stream, the socket is closed once the queued data is written
+     */
+    public void remoteClose() {
+        remoteClosed = true;
+        if (pendingQueue.isEmpty()) {
+            close();
+        }
+    }
+
+    /**
+     * false when the stream has to stop reading, because of the window or of the session
+     */
+    public boolean isWritable() {
+        return sendWindow > 0 && !session.isBlocked();
+    }
+
+    /**
+     * stop reading the socket until credit comes back or the session drained
+     */
+    public void pause() {
+        final SelectionKey key = context.key();
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        paused = true;
+
+        if (session.isBlocked() && !blocked) {
+            blocked = true;
+            session.block(this);
+        }
+    }
+
+    void resume() {
+        blocked = false;
+        if (!paused || closed || sendWindow <= 0) {
+            return;
+        }
+
+        if (session.isBlocked()) {
+            blocked = true;
+            session.block(this);
+            return;
+        }
+
+        paused = false;
+        final SelectionKey key = context.key();
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+    }
+
+    public void consumeWindow(final int bytes) {
+        sendWindow -= bytes;
+    }
+
+    public void addWindow(final int increment) {
+        sendWindow += increment;
+        resume();
+    }
+
+    /**
+     * write data of the peer to the socket, what the socket does not take queues within the window
+     */
+    public void deliver(final ByteBuffer data) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (context == null) {
+            throw new HikariRuntimeException(String.format("mux stream %d not open", id));
+        }
+
+        final int length = data.remaining();
+        if (pendingQueue.isEmpty()) {
+            ((SocketChannel) context.key().channel()).write(data);
+        }
+
+        if (data.hasRemaining()) {
+            pendingBytes += data.remaining();
+            if (pendingBytes > MAX_PENDING_BYTES) {
+                throw new HikariRuntimeException(String.format("mux stream %d window exceeded", id));
+            }
+
+            final ByteBuffer pending = ByteBuffer.allocate(data.remaining());
+            pending.put(data);
+            pending.flip();
+            pendingQueue.add(pending);
+
+            final SelectionKey key = context.key();
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        consumed(length - data.remaining());
+    }
+
+    /**
+     * on write readiness of the socket
+     */
+    public void flush() throws IOException {
+        final SelectionKey key = context.key();
+        final SocketChannel channel = (SocketChannel) key.channel();
+
+        ByteBuffer pending;
+        while ((pending = pendingQueue.peek()) != null) {
+            final int length = pending.remaining();
+            channel.write(pending);
+            pendingBytes -= length - pending.remaining();
+            consumed(length - pending.remaining());
+
+            if (pending.hasRemaining()) {
+                return;
+            }
+            pendingQueue.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+        if (remoteClosed) {
+            close();
+        }
+    }
+
+    private void consumed(final int bytes) throws IOException {
+        consumedBytes += bytes;
+        if (consumedBytes >= WINDOW_UPDATE_THRESHOLD && !remoteClosed) {
+            session.writeWindow(id, consumedBytes);
+            consumedBytes = 0;
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public HikariMuxSession getSession() {
+        return session;
+    }
+
+    public HikariContext getContext() {
+        return context;
+    }
+
+    public void setContext(HikariContext context) {
+        this.context = context;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,224 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * runs blocking name lookups off the event loops and posts the results back to the requesting loop
+ * <p>
+ * Yukinomiu
+ * 2018/2/11
+ */
+public class HikariResolver {
+    private static final Logger logger = LoggerFactory.getLogger(HikariResolver.class);
+    private static final int DEFAULT_RESOLVER_THREAD_COUNT = 4;
+    private static final int DEFAULT_DNS_CACHE_SIZE = 4096;
+    private static final int DEFAULT_DNS_CACHE_TTL = 60;
+    private static final int DEFAULT_DNS_NEGATIVE_CACHE_TTL = 5;
+    private static final int DEFAULT_DNS_CACHE_SNAPSHOT_INTERVAL = 60;
+
+    private final String name;
+    private final ExecutorService executor;
+    private final HikariDnsCache cache;
+
+    // warm restarts
+    private final Path snapshotPath;
+    private ScheduledExecutorService snapshotScheduler;
+
+    // concurrent requests for the same domain wait on one lookup
+    private final Map<HikariDnsCache.Key, List<Waiter>> inFlightMap = new HashMap<>();
+
+    public HikariResolver(final String name, final HikariConfig config) {
+        this.name = name;
+
+        final Integer resolverThreadCount = config.getResolverThreadCount();
+        final int threadCount = resolverThreadCount != null && resolverThreadCount > 0 ? resolverThreadCount : DEFAULT_RESOLVER_THREAD_COUNT;
+
+        final AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threadCount, r -> {
+            Thread thread = new Thread(r, String.format("%s-%d", name, threadIndex.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("{} thread count: {}", name, threadCount);
+
+        // cache
+        final Integer dnsCacheSize = config.getDnsCacheSize();
+        final int cacheSize = dnsCacheSize != null ? dnsCacheSize : DEFAULT_DNS_CACHE_SIZE;
+        if (cacheSize > 0) {
+            final Integer dnsCacheTtl = config.getDnsCacheTtl();
+            final Integer dnsNegativeCacheTtl = config.getDnsNegativeCacheTtl();
+            final int ttl = dnsCacheTtl != null ? dnsCacheTtl : DEFAULT_DNS_CACHE_TTL;
+            final int negativeTtl = dnsNegativeCacheTtl != null ? dnsNegativeCacheTtl : DEFAULT_DNS_NEGATIVE_CACHE_TTL;
+
+            cache = new HikariDnsCache(cacheSize, ttl, negativeTtl);
+            logger.info("{} cache size: {}, ttl: {} s, negative ttl: {} s", name, cacheSize, ttl, negativeTtl);
+        }
+        else {
+            cache = null;
+        }
+
+        // snapshot
+        final String snapshotFile = config.getDnsCacheSnapshotFile();
+        if (cache != null && snapshotFile != null && !snapshotFile.isEmpty()) {
+            snapshotPath = Paths.get(snapshotFile);
+            loadSnapshot();
+
+            final Integer dnsCacheSnapshotInterval = config.getDnsCacheSnapshotInterval();
+            final int interval = dnsCacheSnapshotInterval != null ? dnsCacheSnapshotInterval : DEFAULT_DNS_CACHE_SNAPSHOT_INTERVAL;
+            if (interval > 0) {
+                snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, name + "-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                snapshotScheduler.scheduleWithFixedDelay(this::writeSnapshot, interval, interval, TimeUnit.SECONDS);
+            }
+        }
+        else {
+            snapshotPath = null;
+        }
+    }
+
+    /**
+     * callback runs on the given loop with all addresses of the domain, null when the lookup failed
+     * <p>
+     * cache hits complete right away on the calling thread, which must be that loop
+     */
+    public void resolve(final byte[] domain, final HikariEventLoop loop, final Callback callback) {
+        if (cache != null) {
+            final HikariDnsCache.Entry entry = cache.get(domain);
+            if (entry != null) {
+                if (cache.markRefresh(entry)) {
+                    executor.execute(() -> refresh(domain));
+                }
+
+                callback.resolved(entry.getAddresses());
+                return;
+            }
+        }
+
+        final HikariDnsCache.Key key = new HikariDnsCache.Key(domain);
+        final Waiter waiter = new Waiter(loop, callback);
+        synchronized (inFlightMap) {
+            final List<Waiter> waiterList = inFlightMap.get(key);
+            if (waiterList != null) {
+                waiterList.add(waiter);
+                return;
+            }
+
+            final List<Waiter> newWaiterList = new ArrayList<>(1);
+            newWaiterList.add(waiter);
+            inFlightMap.put(key, newWaiterList);
+        }
+
+        try {
+            executor.execute(() -> {
+                final InetAddress[] addresses = lookup(domain);
+                if (cache != null) {
+                    cache.put(domain, addresses);
+                }
+
+                // cached before removal, requests arriving in between hit the cache
+                final List<Waiter> waiterList;
+                synchronized (inFlightMap) {
+                    waiterList = inFlightMap.remove(key);
+                }
+                for (Waiter w : waiterList) {
+                    w.loop.execute(() -> w.callback.resolved(addresses));
+                }
+            });
+        } catch (RuntimeException e) {
+            synchronized (inFlightMap) {
+                inFlightMap.remove(key);
+            }
+            throw e;
+        }
+    }
+
+    public HikariDnsCache getCache() {
+        return cache;
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        if (snapshotPath != null) {
+            writeSnapshot();
+        }
+
+        if (cache != null) {
+            logger.info("{} cache hits: {}, misses: {}, evictions: {}",
+                    name, cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount());
+        }
+    }
+
+    private void loadSnapshot() {
+        try {
+            final int loaded = cache.loadSnapshot(snapshotPath);
+            logger.info("{} loaded {} entries from {}", name, loaded, snapshotPath);
+        } catch (IOException e) {
+            logger.warn("{} load dns cache snapshot exception, msg: {}", name, e.getMessage());
+        }
+    }
+
+    private void writeSnapshot() {
+        try {
+            final int written = cache.writeSnapshot(snapshotPath);
+            logger.debug("{} wrote {} entries to {}", name, written, snapshotPath);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("{} write dns cache snapshot exception: {}", name, msg != null ? msg : e.getClass().getName());
+        }
+    }
+
+    private void refresh(final byte[] domain) {
+        // a failed refresh leaves the old entry to expire
+        final InetAddress[] addresses = lookup(domain);
+        if (addresses != null) {
+            cache.put(domain, addresses);
+        }
+    }
+
+    private InetAddress[] lookup(final byte[] domain) {
+        try {
+            return InetAddress.getAllByName(new String(domain, StandardCharsets.UTF_8));
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static final class Waiter {
+        private final HikariEventLoop loop;
+        private final Callback callback;
+
+        private Waiter(final HikariEventLoop loop, final Callback callback) {
+            this.loop = loop;
+            this.callback = callback;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Callback {
+        void resolved(InetAddress[] addresses);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.yukinomiu.hikari.common;
+
+import java.nio.channels.SelectionKey;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * array backed replacement of the selector's selected key set, selector only adds and the loop drains by index
+ * <p>
+ * Yukinomiu
+ * 2018/2/9
+ */
+public final class HikariSelectedKeySet extends AbstractSet<SelectionKey> {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private SelectionKey[] keys = new SelectionKey[INITIAL_CAPACITY];
+    private int size;
+
+    @Override
+    public boolean add(final SelectionKey key) {
+        if (key == null) {
+            return false;
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+        }
+        keys[size++] = key;
+        return true;
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        return false;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<SelectionKey> iterator() {
+        return new Iterator<SelectionKey>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public SelectionKey next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys[index++];
+            }
+        };
+    }
+
+    public SelectionKey get(final int index) {
+        final SelectionKey key = keys[index];
+        keys[index] = null;
+        return key;
+    }
+
+    public void reset() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+    }
+}
@@ -7,4 +7,7 @@ package com.github.yukinomiu.hikari.common;
 public enum HikariStatus {
     HIKARI_AUTH,
     HIKARI_PROXY,
+    HIKARI_DNS,
+    HIKARI_MUX,
+    HIKARI_BOND,
 }
@@ -0,0 +1,77 @@
+package com.github.yukinomiu.hikari.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * lock-free multi-producer/single-consumer task queue
+ * <p>
+ * {@link #offer(Runnable)} may be called by any thread, {@link #poll()} and {@link #isEmpty()} only by the consumer.
+ * the size counter tells producers whether the queue goes from empty to non-empty, so the consumer only needs to be
+ * woken up once per batch of tasks.
+ * <p>
+ * Yukinomiu
+ * 2018/2/5
+ */
+public class HikariTaskQueue {
+
+    private final AtomicReference<Node> tail;
+    private final AtomicInteger size = new AtomicInteger();
+    private Node head;
+
+    public HikariTaskQueue() {
+        final Node stub = new Node(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * @return true if the queue was empty before this task, the consumer must be woken up
+     */
+    public boolean offer(final Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("task can not be null");
+        }
+
+        final Node node = new Node(task);
+        final Node prev = tail.getAndSet(node);
+        prev.next = node;
+
+        return size.getAndIncrement() == 0;
+    }
+
+    public Runnable poll() {
+        final Node next = head.next;
+        if (next == null) {
+            return null;
+        }
+
+        final Runnable task = next.task;
+        next.task = null;
+        head = next;
+
+        size.decrementAndGet();
+        return task;
+    }
+
+    /**
+     * false as soon as a producer has swapped the tail, even before its node is linked,
+     * so the consumer never blocks on a half-linked node
+     */
+    public boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    public int size() {
+        return Math.max(size.get(), 0);
+    }
+
+    private static final class Node {
+        private Runnable task;
+        private volatile Node next;
+
+        private Node(final Runnable task) {
+            this.task = task;
+        }
+    }
+}
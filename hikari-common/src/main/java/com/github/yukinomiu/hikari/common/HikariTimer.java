@@ -0,0 +1,251 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * hashed wheel timer driven by the event loop, scheduling and cancellation are O(1)
+ * <p>
+ * a timeout lands in the bucket of its deadline tick and is expired when the loop advances past that tick,
+ * deadlines further out than one turn of the wheel wait for their remaining rounds. only the loop thread touches it
+ * <p>
+ * Yukinomiu
+ * 2018/2/12
+ */
+public final class HikariTimer {
+    private static final Logger logger = LoggerFactory.getLogger(HikariTimer.class);
+
+    private final long tickNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long startTime;
+
+    // next tick to expire
+    private long tick;
+    private int pendingCount;
+
+    public HikariTimer(final long tickNanos, final int wheelSize, final long startTime) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        if (wheelSize <= 0 || (wheelSize & (wheelSize - 1)) != 0) {
+            throw new IllegalArgumentException("wheel size must be a power of 2");
+        }
+
+        this.tickNanos = tickNanos;
+        this.buckets = new Timeout[wheelSize];
+        this.mask = wheelSize - 1;
+        this.startTime = startTime;
+    }
+
+    public Timeout newTimeout(final Runnable task, final long deadline) {
+        final Timeout timeout = new Timeout(this, task, deadline);
+        add(timeout);
+        return timeout;
+    }
+
+    void add(final Timeout timeout) {
+        if (timeout.state != Timeout.STATE_INIT) {
+            return;
+        }
+
+        // rounded up, a timeout never expires before its deadline
+        final long elapsed = timeout.deadline - startTime;
+        final long deadlineTick = elapsed <= 0 ? 0L : (elapsed + tickNanos - 1) / tickNanos;
+        final long targetTick = Math.max(deadlineTick, tick);
+
+        timeout.remainingRounds = (targetTick - tick) / buckets.length;
+        timeout.bucket = (int) (targetTick & mask);
+        timeout.state = Timeout.STATE_PENDING;
+
+        // append, timeouts of the same tick expire in submission order
+        final Timeout head = buckets[timeout.bucket];
+        if (head == null) {
+            buckets[timeout.bucket] = timeout;
+            timeout.prev = timeout;
+        }
+        else {
+            final Timeout tail = head.prev;
+            tail.next = timeout;
+            timeout.prev = tail;
+            head.prev = timeout;
+        }
+        pendingCount++;
+    }
+
+    /**
+     * expire the timeouts of every tick up to now, returns the number of tasks run
+     */
+    public int expireTimeouts(final long now) {
+        if (pendingCount == 0) {
+            // nothing to expire, just catch up
+            tick = Math.max(tick, currentTick(now) + 1);
+            return 0;
+        }
+
+        final long lastTick = currentTick(now);
+        Timeout expired = null;
+        Timeout expiredTail = null;
+
+        for (; tick <= lastTick && pendingCount > 0; tick++) {
+            Timeout timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.state = Timeout.STATE_DUE;
+
+                    // run after the walk, a task may add or cancel timeouts of this bucket
+                    if (expired == null) {
+                        expired = timeout;
+                    }
+                    else {
+                        expiredTail.next = timeout;
+                    }
+                    expiredTail = timeout;
+                }
+                else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+        if (pendingCount == 0) {
+            tick = Math.max(tick, lastTick + 1);
+        }
+
+        int count = 0;
+        while (expired != null) {
+            final Timeout next = expired.next;
+            expired.next = null;
+
+            // cancelled by a task that ran before it
+            if (expired.state == Timeout.STATE_DUE) {
+                expired.state = Timeout.STATE_EXPIRED;
+                try {
+                    expired.task.run();
+                } catch (Exception e) {
+                    logger.error("timeout task exception", e);
+                }
+                count++;
+            }
+            expired = next;
+        }
+
+        return count;
+    }
+
+    /**
+     * true when a tick holding timeouts may be due
+     */
+    public boolean hasDueTick(final long now) {
+        return pendingCount > 0 && now - (startTime + tick * tickNanos) >= 0;
+    }
+
+    /**
+     * nanos until the next non-empty bucket, -1 without pending timeouts
+     */
+    public long nextTimeoutNanos(final long now) {
+        if (pendingCount == 0) {
+            return -1L;
+        }
+
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[(int) ((tick + i) & mask)] != null) {
+                return Math.max(0L, startTime + (tick + i) * tickNanos - now);
+            }
+        }
+
+        return Math.max(0L, startTime + tick * tickNanos - now);
+    }
+
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    private long currentTick(final long now) {
+        final long elapsed = now - startTime;
+        return elapsed < 0 ? -1L : elapsed / tickNanos;
+    }
+
+    private void remove(final Timeout timeout) {
+        final int bucket = timeout.bucket;
+        final Timeout head = buckets[bucket];
+
+        if (timeout == head) {
+            buckets[bucket] = timeout.next;
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+        }
+        else {
+            timeout.prev.next = timeout.next;
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            else {
+                head.prev = timeout.prev;
+            }
+        }
+
+        timeout.prev = null;
+        timeout.next = null;
+        pendingCount--;
+    }
+
+    /**
+     * handle of a scheduled task, must be cancelled on the loop thread
+     */
+    public static final class Timeout {
+        private static final int STATE_INIT = 0;
+        private static final int STATE_PENDING = 1;
+        private static final int STATE_DUE = 2;
+        private static final int STATE_CANCELLED = 3;
+        private static final int STATE_EXPIRED = 4;
+
+        private final HikariTimer timer;
+        private final Runnable task;
+        private final long deadline;
+
+        private int state = STATE_INIT;
+        private long remainingRounds;
+        private int bucket;
+
+        // bucket list, the head's prev is the tail
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(final HikariTimer timer, final Runnable task, final long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * returns false when the task already ran or was cancelled
+         */
+        public boolean cancel() {
+            if (state == STATE_PENDING) {
+                timer.remove(this);
+            }
+            else if (state != STATE_INIT && state != STATE_DUE) {
+                return false;
+            }
+
+            state = STATE_CANCELLED;
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == STATE_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == STATE_EXPIRED;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+}
@@ -7,5 +7,6 @@ package com.github.yukinomiu.hikari.common;
 public enum SocksStatus {
     SOCKS_NEW,
     SOCKS5_REQ,
+    SOCKS_EARLY,
     SOCKS_PROXY,
 }
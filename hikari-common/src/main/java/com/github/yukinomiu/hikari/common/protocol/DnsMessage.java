@@ -0,0 +1,192 @@
+package com.github.yukinomiu.hikari.common.protocol;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * minimal dns message codec of the tunneled forwarder, single question queries and A/AAAA answers
+ * <p>
+ * Yukinomiu
+ * 2018/2/16
+ */
+public final class DnsMessage {
+    public static final int HEADER_SIZE = 12;
+    public static final int MAX_UDP_SIZE = 512;
+
+    // opcode and rcode
+    public static final int OPCODE_QUERY = 0;
+    public static final int RCODE_NO_ERROR = 0;
+    public static final int RCODE_SERVER_FAILURE = 2;
+    public static final int RCODE_NAME_ERROR = 3;
+    public static final int RCODE_NOT_IMPLEMENTED = 4;
+
+    // type and class
+    public static final int TYPE_A = 1;
+    public static final int TYPE_AAAA = 28;
+    public static final int CLASS_IN = 1;
+
+    private static final int FLAG_QR = 0x8000;
+    private static final int FLAG_RD = 0x0100;
+    private static final int FLAG_RA = 0x0080;
+    private static final int OPCODE_MASK = 0x7800;
+    private static final int MAX_NAME_LENGTH = 253;
+
+    private final int id;
+    private final int flags;
+    private final String name;
+    private final int type;
+    private final int questionClass;
+    private final byte[] question;
+
+    private DnsMessage(final int id, final int flags, final String name, final int type, final int questionClass, final byte[] question) {
+        this.id = id;
+        this.flags = flags;
+        this.name = name;
+        this.type = type;
+        this.questionClass = questionClass;
+        this.question = question;
+    }
+
+    /**
+     * null when the message is not a well formed single question query
+     */
+    public static DnsMessage parseQuery(final byte[] message, final int length) {
+        if (length < HEADER_SIZE) {
+            return null;
+        }
+
+        final int id = getShort(message, 0);
+        final int flags = getShort(message, 2);
+        final int questionCount = getShort(message, 4);
+        if ((flags & FLAG_QR) != 0 || questionCount != 1) {
+            return null;
+        }
+
+        // labels, compression is not expected in the question of a query
+        final StringBuilder name = new StringBuilder();
+        int position = HEADER_SIZE;
+        while (true) {
+            if (position >= length) {
+                return null;
+            }
+
+            final int labelLength = message[position++] & 0xFF;
+            if (labelLength == 0) {
+                break;
+            }
+            if ((labelLength & 0xC0) != 0 || position + labelLength > length) {
+                return null;
+            }
+
+            if (name.length() != 0) {
+                name.append('.');
+            }
+            for (int i = 0; i < labelLength; i++) {
+                name.append(Character.toLowerCase((char) (message[position + i] & 0xFF)));
+            }
+            position += labelLength;
+
+            if (name.length() > MAX_NAME_LENGTH) {
+                return null;
+            }
+        }
+
+        if (position + 4 > length) {
+            return null;
+        }
+        final int type = getShort(message, position);
+        final int questionClass = getShort(message, position + 2);
+        position += 4;
+
+        return new DnsMessage(id, flags, name.toString(), type, questionClass, Arrays.copyOfRange(message, HEADER_SIZE, position));
+    }
+
+    /**
+     * answers of the question's type out of the addresses, as many as fit a classic udp message
+     */
+    public byte[] buildResponse(final int rcode, final InetAddress[] addresses, final int ttl) {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_UDP_SIZE);
+        buffer.putShort((short) id);
+        buffer.putShort((short) (FLAG_QR | (flags & (OPCODE_MASK | FLAG_RD)) | FLAG_RA | rcode));
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.put(question);
+
+        int answerCount = 0;
+        if (addresses != null) {
+            for (InetAddress address : addresses) {
+                final boolean match = (type == TYPE_A && address instanceof Inet4Address)
+                        || (type == TYPE_AAAA && address instanceof Inet6Address);
+                final byte[] data = address.getAddress();
+                if (!match || buffer.remaining() < 12 + data.length) {
+                    continue;
+                }
+
+                // name points to the question
+                buffer.putShort((short) 0xC00C);
+                buffer.putShort((short) type);
+                buffer.putShort((short) CLASS_IN);
+                buffer.putInt(ttl);
+                buffer.putShort((short) data.length);
+                buffer.put(data);
+                answerCount++;
+            }
+        }
+        buffer.putShort(6, (short) answerCount);
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    public static int getId(final byte[] message) {
+        return getShort(message, 0);
+    }
+
+    public static void setId(final byte[] message, final int id) {
+        message[0] = (byte) (id >>> 8);
+        message[1] = (byte) id;
+    }
+
+    public static int getRcode(final byte[] message) {
+        return getShort(message, 2) & 0x0F;
+    }
+
+    public static int getAnswerCount(final byte[] message) {
+        return getShort(message, 6);
+    }
+
+    private static int getShort(final byte[] message, final int index) {
+        return ((message[index] & 0xFF) << 8) | (message[index + 1] & 0xFF);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getOpcode() {
+        return (flags & OPCODE_MASK) >>> 11;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getQuestionClass() {
+        return questionClass;
+    }
+
+    /**
+     * name, type and class, the id is not part of it
+     */
+    public String getCacheKey() {
+        return name + '/' + type + '/' + questionClass;
+    }
+}
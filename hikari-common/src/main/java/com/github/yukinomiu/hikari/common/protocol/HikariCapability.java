@@ -0,0 +1,105 @@
+package com.github.yukinomiu.hikari.common.protocol;
+
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * options of a hikari2 request or response: length of the option list, then type, value length and value of each
+ * <p>
+ * a request offers what the client supports, the response carries what both sides use.
+ * options a peer does not know are skipped, so new ones need no new version
+ * <p>
+ * Yukinomiu
+ * 2018/2/19
+ */
+public final class HikariCapability {
+    // option list length, frame size and features
+    public static final int MAX_SIZE = 1 + (1 + 1 + 2) + (1 + 1 + 4);
+
+    // null when not offered
+    private final Integer frameSize;
+    private final int features;
+
+    public HikariCapability(final Integer frameSize, final int features) {
+        this.frameSize = frameSize;
+        this.features = features;
+    }
+
+    public static HikariCapability read(final ByteBuffer buffer) {
+        final int length = buffer.get() & 0xFF;
+        if (buffer.remaining() < length) {
+            throw new HikariRuntimeException("bad hikari options");
+        }
+
+        final int end = buffer.position() + length;
+        Integer frameSize = null;
+        int features = 0;
+        while (buffer.position() < end) {
+            if (end - buffer.position() < 2) {
+                throw new HikariRuntimeException("bad hikari options");
+            }
+
+            final byte type = buffer.get();
+            final int valueLength = buffer.get() & 0xFF;
+            final int valueEnd = buffer.position() + valueLength;
+            if (valueEnd > end) {
+                throw new HikariRuntimeException("bad hikari options");
+            }
+
+            if (type == HikariProtocol.OPTION_FRAME_SIZE && valueLength == 2) {
+                frameSize = buffer.getShort() & 0xFFFF;
+            }
+            else if (type == HikariProtocol.OPTION_FEATURES && valueLength == 4) {
+                features = buffer.getInt();
+            }
+            buffer.position(valueEnd);
+        }
+
+        return new HikariCapability(frameSize, features);
+    }
+
+    public void write(final ByteBuffer buffer) {
+        final int lengthPosition = buffer.position();
+        buffer.put((byte) 0);
+
+        if (frameSize != null) {
+            buffer.put(HikariProtocol.OPTION_FRAME_SIZE);
+            buffer.put((byte) 2);
+            buffer.putShort((short) (int) frameSize);
+        }
+
+        buffer.put(HikariProtocol.OPTION_FEATURES);
+        buffer.put((byte) 4);
+        buffer.putInt(features);
+
+        buffer.put(lengthPosition, (byte) (buffer.position() - lengthPosition - 1));
+    }
+
+    /**
+     * the options of the response to this offer, the frame size is only set when the peer offered one
+     */
+    public HikariCapability negotiate(final HikariCapability offer) {
+        final Integer negotiatedFrameSize;
+        if (offer.frameSize == null || offer.frameSize <= 0) {
+            negotiatedFrameSize = null;
+        }
+        else {
+            negotiatedFrameSize = frameSize != null ? Math.min(frameSize, offer.frameSize) : offer.frameSize;
+        }
+
+        return new HikariCapability(negotiatedFrameSize, features & offer.features);
+    }
+
+    public Integer getFrameSize() {
+        return frameSize;
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    public boolean hasFeature(final int feature) {
+        return (features & feature) != 0;
+    }
+}
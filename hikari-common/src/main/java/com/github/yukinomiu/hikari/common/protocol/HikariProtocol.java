@@ -11,15 +11,65 @@ public class HikariProtocol {
     // version
     public static final byte VERSION_HIKARI1 = 0x01;
 
+    // options follow the key hash of a request and the reply of an ok response
+    public static final byte VERSION_HIKARI2 = 0x02;
+
     // address type
     public static final byte ADDRESS_TYPE_IPV4 = 0x00;
     public static final byte ADDRESS_TYPE_IPV6 = 0x01;
     public static final byte ADDRESS_TYPE_DOMAIN = 0x02;
 
+    // no address and port follow, the connection carries tcp framed dns messages
+    public static final byte ADDRESS_TYPE_DNS_TUNNEL = 0x03;
+
+    // no address and port follow, the connection carries mux frames of many streams
+    public static final byte ADDRESS_TYPE_MUX = 0x04;
+
+    // long bond id and bond request follow, an open is followed by the address and port of the target
+    public static final byte ADDRESS_TYPE_BOND = 0x05;
+
     // auth response
     public static final byte AUTH_RESPONSE_OK = 0x00;
     public static final byte AUTH_RESPONSE_VERSION_NOT_SUPPORT = 0x01;
     public static final byte AUTH_RESPONSE_AUTH_FAIL = 0x02;
     public static final byte AUTH_RESPONSE_DNS_RESOLVE_FAIL = 0x03;
     public static final byte AUTH_RESPONSE_CONNECT_TARGET_FAIL = 0x04;
+    public static final byte AUTH_RESPONSE_BOND_NOT_FOUND = 0x05;
+
+    // hikari2 option: type, value length and value, unknown types are skipped
+    // short, largest packet data the sender reads. the response carries the size both sides use
+    public static final byte OPTION_FRAME_SIZE = 0x00;
+    // int, feature flags the sender supports. the response carries the ones both support
+    public static final byte OPTION_FEATURES = 0x01;
+
+    public static final int FEATURE_DNS_TUNNEL = 0x01;
+    public static final int FEATURE_MUX = 0x02;
+    public static final int FEATURE_BOND = 0x04;
+    public static final int FEATURE_EARLY_DATA = 0x08;
+    public static final int FEATURES_ALL = FEATURE_DNS_TUNNEL | FEATURE_MUX | FEATURE_BOND | FEATURE_EARLY_DATA;
+
+    // mux frame: type, stream id, payload length and payload, frames never span packets
+    public static final int MUX_FRAME_HEADER_SIZE = 1 + 4 + 2;
+
+    // address of the target, same layout as in the auth request
+    public static final byte MUX_FRAME_OPEN = 0x00;
+    // auth response code, bind address and port when ok
+    public static final byte MUX_FRAME_REPLY = 0x01;
+    public static final byte MUX_FRAME_DATA = 0x02;
+    // int, bytes the receiver of the stream consumed
+    public static final byte MUX_FRAME_WINDOW = 0x03;
+    public static final byte MUX_FRAME_CLOSE = 0x04;
+
+    // bytes a stream may send ahead of the window updates of the receiver
+    public static final int MUX_INITIAL_WINDOW = 256 * 1024;
+
+    // bond request: the first connection of a bond connects the target, the others join it
+    public static final byte BOND_OPEN = 0x00;
+    public static final byte BOND_JOIN = 0x01;
+
+    // bond frame: int sequence and data, a frame without data ends the stream. one frame per packet
+    public static final int BOND_FRAME_HEADER_SIZE = 4;
+
+    // connections of one bond, the first included
+    public static final int BOND_MAX_CONNECTIONS = 8;
 }
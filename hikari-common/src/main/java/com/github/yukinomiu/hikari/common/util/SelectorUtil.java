@@ -0,0 +1,102 @@
+package com.github.yukinomiu.hikari.common.util;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Yukinomiu
+ * 2018/2/9
+ */
+public final class SelectorUtil {
+    private static final String SELECTOR_IMPL = "sun.nio.ch.SelectorImpl";
+    private static final MethodHandle SELECT_ACTION;
+    private static final MethodHandle SELECT_TIMEOUT_ACTION;
+    private static final MethodHandle SELECT_NOW_ACTION;
+
+    static {
+        // select with an action is only exposed since java 11
+        MethodHandle select;
+        MethodHandle selectTimeout;
+        MethodHandle selectNow;
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            select = lookup.findVirtual(Selector.class, "select", MethodType.methodType(int.class, Consumer.class));
+            selectTimeout = lookup.findVirtual(Selector.class, "select", MethodType.methodType(int.class, Consumer.class, long.class));
+            selectNow = lookup.findVirtual(Selector.class, "selectNow", MethodType.methodType(int.class, Consumer.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            select = null;
+            selectTimeout = null;
+            selectNow = null;
+        }
+        SELECT_ACTION = select;
+        SELECT_TIMEOUT_ACTION = selectTimeout;
+        SELECT_NOW_ACTION = selectNow;
+    }
+
+    private SelectorUtil() {
+    }
+
+    /**
+     * replace the selector's hash set based selected keys, fails on java 9+ unless java.base/sun.nio.ch is opened
+     */
+    public static boolean replaceSelectedKeys(final Selector selector, final Set<SelectionKey> selectedKeys) {
+        try {
+            final Class<?> implClass = Class.forName(SELECTOR_IMPL, false, ClassLoader.getSystemClassLoader());
+            if (!implClass.isAssignableFrom(selector.getClass())) {
+                return false;
+            }
+
+            final Field selectedKeysField = implClass.getDeclaredField("selectedKeys");
+            final Field publicSelectedKeysField = implClass.getDeclaredField("publicSelectedKeys");
+            selectedKeysField.setAccessible(true);
+            publicSelectedKeysField.setAccessible(true);
+
+            selectedKeysField.set(selector, selectedKeys);
+            publicSelectedKeysField.set(selector, selectedKeys);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public static boolean isSelectActionSupported() {
+        return SELECT_ACTION != null;
+    }
+
+    public static int select(final Selector selector, final Consumer<SelectionKey> action) throws IOException {
+        try {
+            return (int) SELECT_ACTION.invokeExact(selector, action);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException(t);
+        }
+    }
+
+    public static int select(final Selector selector, final Consumer<SelectionKey> action, final long timeout) throws IOException {
+        try {
+            return (int) SELECT_TIMEOUT_ACTION.invokeExact(selector, action, timeout);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException(t);
+        }
+    }
+
+    public static int selectNow(final Selector selector, final Consumer<SelectionKey> action) throws IOException {
+        try {
+            return (int) SELECT_NOW_ACTION.invokeExact(selector, action);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException(t);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.yukinomiu.hikari.common.util;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.nio.channels.NetworkChannel;
+
+/**
+ * Yukinomiu
+ * 2018/2/4
+ */
+public final class SocketUtil {
+    private static final String SO_REUSEPORT = "SO_REUSEPORT";
+
+    private SocketUtil() {
+    }
+
+    /**
+     * SO_REUSEPORT is only exposed since java 9, look it up by name to keep java 8 runtime working
+     */
+    @SuppressWarnings("unchecked")
+    public static void enableReusePort(final NetworkChannel channel) throws IOException {
+        for (SocketOption<?> option : channel.supportedOptions()) {
+            if (SO_REUSEPORT.equals(option.name()) && option.type() == Boolean.class) {
+                channel.setOption((SocketOption<Boolean>) option, Boolean.TRUE);
+                return;
+            }
+        }
+
+        throw new IOException("SO_REUSEPORT not supported by current platform");
+    }
+}
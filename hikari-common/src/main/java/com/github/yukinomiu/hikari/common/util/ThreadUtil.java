@@ -0,0 +1,39 @@
+package com.github.yukinomiu.hikari.common.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Yukinomiu
+ * 2018/2/6
+ */
+public final class ThreadUtil {
+    private static final MethodHandle ON_SPIN_WAIT;
+
+    static {
+        // Thread.onSpinWait is only exposed since java 9
+        MethodHandle onSpinWait;
+        try {
+            onSpinWait = MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            onSpinWait = null;
+        }
+        ON_SPIN_WAIT = onSpinWait;
+    }
+
+    private ThreadUtil() {
+    }
+
+    public static void onSpinWait() {
+        if (ON_SPIN_WAIT == null) {
+            return;
+        }
+
+        try {
+            ON_SPIN_WAIT.invokeExact();
+        } catch (Throwable ignore) {
+            // never thrown
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.yukinomiu.hikari.common;
+
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Yukinomiu
+ * 2018/2/18
+ */
+public class HikariBondTest {
+    private static final int BUFFER_SIZE = 2048;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private final List<SocketChannel> channelList = new ArrayList<>();
+
+    private SocketChannel streamPeer;
+    private TestContext streamContext;
+    private TestContext firstMember;
+    private TestContext secondMember;
+    private HikariBond bond;
+
+    @Before
+    public void setUp() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        final HikariConfig config = new HikariConfig();
+        config.setEncryptType("plain");
+        config.setSecret("secret");
+
+        final SocketChannel[] streamPair = connect();
+        streamPeer = streamPair[1];
+        streamContext = new TestContext(streamPair[0].register(selector, SelectionKey.OP_READ));
+        firstMember = new TestContext(connect()[0].register(selector, SelectionKey.OP_READ));
+        secondMember = new TestContext(connect()[0].register(selector, SelectionKey.OP_READ));
+
+        bond = new HikariBond(1, new TestHandle(config), BUFFER_SIZE);
+        bond.setStream(streamContext);
+        Assert.assertTrue(bond.addMember(firstMember));
+        Assert.assertTrue(bond.addMember(secondMember));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SocketChannel channel : channelList) {
+            channel.close();
+        }
+        serverChannel.close();
+        selector.close();
+    }
+
+    @Test
+    public void testReorder() throws IOException {
+        // the second member overtakes the first
+        bond.receive(secondMember, frame(1, "b"));
+        bond.receive(secondMember, frame(3, "d"));
+        Assert.assertEquals("", readStream());
+
+        bond.receive(firstMember, frame(0, "a"));
+        Assert.assertEquals("ab", readStream());
+
+        bond.receive(firstMember, frame(2, "c"));
+        Assert.assertEquals("cd", readStream());
+        Assert.assertFalse(bond.isClosed());
+    }
+
+    @Test
+    public void testEnd() throws IOException {
+        // the end arrives before the data in front of it
+        bond.receive(secondMember, frame(1, null));
+        Assert.assertFalse(bond.isClosed());
+
+        bond.receive(firstMember, frame(0, "a"));
+        Assert.assertEquals("a", readStream());
+        Assert.assertTrue(bond.isClosed());
+        Assert.assertTrue(streamContext.closed);
+        Assert.assertTrue(firstMember.closed);
+        Assert.assertTrue(secondMember.closed);
+    }
+
+    @Test(expected = HikariRuntimeException.class)
+    public void testDuplicate() throws IOException {
+        bond.receive(firstMember, frame(1, "b"));
+        bond.receive(secondMember, frame(1, "b"));
+    }
+
+    @Test
+    public void testMemberLimit() {
+        for (int i = bond.getMemberCount(); i < 8; i++) {
+            Assert.assertTrue(bond.addMember(new TestContext(null)));
+        }
+        Assert.assertFalse(bond.addMember(new TestContext(null)));
+    }
+
+    private ByteBuffer frame(final int seq, final String data) {
+        final ByteBuffer frame = ByteBuffer.allocate(BUFFER_SIZE);
+        frame.putInt(seq);
+        if (data != null) {
+            frame.put(data.getBytes());
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private String readStream() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        streamPeer.read(buffer);
+        return new String(buffer.array(), 0, buffer.position());
+    }
+
+    private SocketChannel[] connect() throws IOException {
+        final SocketChannel channel = SocketChannel.open(serverChannel.getLocalAddress());
+        final SocketChannel peer = serverChannel.accept();
+        channel.configureBlocking(false);
+        peer.configureBlocking(false);
+        channelList.add(channel);
+        channelList.add(peer);
+        return new SocketChannel[]{channel, peer};
+    }
+
+    private static final class TestContext implements HikariContext {
+        private SelectionKey key;
+        private boolean closed;
+
+        private TestContext(final SelectionKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public SelectionKey key() {
+            return key;
+        }
+
+        @Override
+        public void updateKey(final SelectionKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public ByteBuffer writeBuffer() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static final class TestHandle extends HikariAbstractHandle {
+
+        private TestHandle(final HikariConfig config) {
+            super(config);
+        }
+
+        @Override
+        public void handleAccept(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleAccepted(final SocketChannel channel, final Selector selector) {
+        }
+
+        @Override
+        public void handleConnect(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleRead(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleWrite(final SelectionKey key) {
+        }
+    }
+}
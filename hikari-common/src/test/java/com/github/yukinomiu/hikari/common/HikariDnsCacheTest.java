@@ -0,0 +1,104 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Yukinomiu
+ * 2018/2/12
+ */
+public class HikariDnsCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testLruEviction() throws Exception {
+        final HikariDnsCache cache = new HikariDnsCache(2, 60, 5);
+        final InetAddress[] addresses = InetAddress.getAllByName("127.0.0.1");
+
+        cache.put(domain("a.com"), addresses);
+        cache.put(domain("b.com"), addresses);
+        Assert.assertNotNull(cache.get(domain("a.com")));
+
+        // b.com is the least recently used now
+        cache.put(domain("c.com"), addresses);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNull(cache.get(domain("b.com")));
+        Assert.assertNotNull(cache.get(domain("a.com")));
+        Assert.assertNotNull(cache.get(domain("c.com")));
+
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testNegativeEntry() {
+        final HikariDnsCache cache = new HikariDnsCache(16, 60, 5);
+        cache.put(domain("no-such-host.invalid"), null);
+
+        final HikariDnsCache.Entry entry = cache.get(domain("no-such-host.invalid"));
+        Assert.assertNotNull(entry);
+        Assert.assertNull(entry.getAddresses());
+        Assert.assertFalse(cache.markRefresh(entry));
+
+        final HikariDnsCache disabled = new HikariDnsCache(16, 60, 0);
+        disabled.put(domain("no-such-host.invalid"), null);
+        Assert.assertNull(disabled.get(domain("no-such-host.invalid")));
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        final HikariDnsCache cache = new HikariDnsCache(16, 1, 1);
+        cache.put(domain("a.com"), InetAddress.getAllByName("127.0.0.1"));
+
+        HikariDnsCache.Entry entry = cache.get(domain("a.com"));
+        Assert.assertFalse(cache.markRefresh(entry));
+
+        // popular and in the last fifth of its ttl
+        Thread.sleep(850);
+        entry = cache.get(domain("a.com"));
+        Assert.assertNotNull(entry);
+        Assert.assertTrue(cache.markRefresh(entry));
+        Assert.assertFalse(cache.markRefresh(entry));
+
+        Thread.sleep(200);
+        Assert.assertNull(cache.get(domain("a.com")));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final Path path = temporaryFolder.getRoot().toPath().resolve("dns.snapshot");
+        final HikariDnsCache cache = new HikariDnsCache(16, 60, 5);
+        cache.put(domain("a.com"), InetAddress.getAllByName("127.0.0.1"));
+        cache.put(domain("b.com"), InetAddress.getAllByName("::1"));
+        cache.put(domain("no-such-host.invalid"), null);
+        Assert.assertEquals(2, cache.writeSnapshot(path));
+
+        final HikariDnsCache loadedCache = new HikariDnsCache(16, 60, 5);
+        Assert.assertEquals(2, loadedCache.loadSnapshot(path));
+        Assert.assertEquals(InetAddress.getByName("127.0.0.1"), loadedCache.get(domain("a.com")).getAddresses()[0]);
+        Assert.assertEquals(InetAddress.getByName("::1"), loadedCache.get(domain("b.com")).getAddresses()[0]);
+        Assert.assertNull(loadedCache.get(domain("no-such-host.invalid")));
+
+        // expired while down
+        final HikariDnsCache shortCache = new HikariDnsCache(16, 1, 1);
+        shortCache.put(domain("a.com"), InetAddress.getAllByName("127.0.0.1"));
+        Assert.assertEquals(1, shortCache.writeSnapshot(path));
+        Thread.sleep(1100);
+        Assert.assertEquals(0, new HikariDnsCache(16, 60, 5).loadSnapshot(path));
+
+        Assert.assertEquals(0, new HikariDnsCache(16, 60, 5).loadSnapshot(path.resolveSibling("missing.snapshot")));
+    }
+
+    private byte[] domain(final String domain) {
+        return domain.getBytes(StandardCharsets.UTF_8);
+    }
+}
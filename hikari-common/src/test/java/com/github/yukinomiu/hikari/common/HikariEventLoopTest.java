@@ -0,0 +1,299 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Yukinomiu
+ * 2018/2/6
+ */
+public class HikariEventLoopTest {
+
+    @Test
+    public void testExecute() throws Exception {
+        runExecute(newConfig(null));
+        runExecute(newConfig(50));
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        final HikariEventLoop loop = new HikariEventLoop("test-loop", owner -> new NoopHandle(), newConfig(null));
+        loop.start();
+
+        try {
+            final StringBuffer order = new StringBuffer();
+            final CountDownLatch latch = new CountDownLatch(3);
+            final long startTime = System.nanoTime();
+            final AtomicLong firstElapsed = new AtomicLong();
+
+            loop.schedule(() -> {
+                order.append('c');
+                latch.countDown();
+            }, 150, TimeUnit.MILLISECONDS);
+            loop.schedule(() -> {
+                firstElapsed.set(System.nanoTime() - startTime);
+                order.append('a');
+                latch.countDown();
+            }, 50, TimeUnit.MILLISECONDS);
+            loop.schedule(() -> {
+                order.append('b');
+                latch.countDown();
+            }, 100, TimeUnit.MILLISECONDS);
+
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals("abc", order.toString());
+            Assert.assertTrue(firstElapsed.get() >= TimeUnit.MILLISECONDS.toNanos(50));
+        } finally {
+            loop.stop();
+        }
+    }
+
+    @Test
+    public void testSelectedKeyDispatch() throws Exception {
+        runSelectedKeyDispatch(newConfig(null, true));
+        runSelectedKeyDispatch(newConfig(null, false));
+    }
+
+    @Test
+    public void testBusySince() throws Exception {
+        final HikariEventLoop loop = new HikariEventLoop("test-loop", owner -> new NoopHandle(), newConfig(null));
+        loop.start();
+
+        try {
+            final CountDownLatch running = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            loop.execute(() -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            Assert.assertTrue(running.await(10, TimeUnit.SECONDS));
+            Assert.assertNotEquals(0L, loop.getBusySince());
+            release.countDown();
+
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (loop.getBusySince() != 0L && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            Assert.assertEquals(0L, loop.getBusySince());
+        } finally {
+            loop.stop();
+        }
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkLoopLag() throws Exception {
+        runLoopLagBenchmark("blocking select", newConfig(null));
+        runLoopLagBenchmark("busy poll 50us", newConfig(50));
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkSelectedKeyDispatch() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            runSelectedKeyDispatchBenchmark("hash set iterator", newConfig(null, false));
+            runSelectedKeyDispatchBenchmark("optimized dispatch", newConfig(null, true));
+        }
+    }
+
+    private void runExecute(final HikariConfig config) throws Exception {
+        final HikariEventLoop loop = new HikariEventLoop("test-loop", owner -> new NoopHandle(), config);
+        loop.start();
+
+        try {
+            final int taskCount = 1000;
+            final CountDownLatch latch = new CountDownLatch(taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                loop.execute(() -> {
+                    Assert.assertTrue(loop.inEventLoop());
+                    latch.countDown();
+                });
+            }
+
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            loop.stop();
+        }
+    }
+
+    private void runLoopLagBenchmark(final String mode, final HikariConfig config) throws Exception {
+        final HikariEventLoop loop = new HikariEventLoop("bench-loop", owner -> new NoopHandle(), config);
+        loop.start();
+
+        final int sampleCount = 20000;
+        final long[] lags = new long[sampleCount];
+        try {
+            for (int i = 0; i < sampleCount; i++) {
+                final int index = i;
+                final CountDownLatch latch = new CountDownLatch(1);
+                final long submitTime = System.nanoTime();
+                loop.execute(() -> {
+                    lags[index] = System.nanoTime() - submitTime;
+                    latch.countDown();
+                });
+                latch.await();
+
+                // let the loop go back to select
+                LockSupport.parkNanos(100000);
+            }
+        } finally {
+            loop.stop();
+        }
+
+        Arrays.sort(lags);
+        System.out.println(String.format("%s loop lag p50: %d ns, p99: %d ns, p999: %d ns",
+                mode, lags[sampleCount / 2], lags[sampleCount * 99 / 100], lags[sampleCount * 999 / 1000]));
+    }
+
+    private void runSelectedKeyDispatch(final HikariConfig config) throws Exception {
+        final int pipeCount = 16;
+        final CountDownLatch latch = new CountDownLatch(pipeCount);
+        final HikariEventLoop loop = new HikariEventLoop("test-loop", owner -> new ReadHandle(latch, null), config);
+        loop.start();
+
+        final Pipe[] pipes = openPipes(loop, pipeCount);
+        try {
+            for (Pipe pipe : pipes) {
+                pipe.sink().write(ByteBuffer.wrap(new byte[]{1}));
+            }
+
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            loop.stop();
+            closePipes(pipes);
+        }
+    }
+
+    private void runSelectedKeyDispatchBenchmark(final String mode, final HikariConfig config) throws Exception {
+        // pipes are never drained, every select reports all of them ready
+        final int pipeCount = 256;
+        final AtomicLong events = new AtomicLong();
+        final HikariEventLoop loop = new HikariEventLoop("bench-loop", owner -> new ReadHandle(null, events), config);
+        loop.start();
+
+        final Pipe[] pipes = openPipes(loop, pipeCount);
+        try {
+            for (Pipe pipe : pipes) {
+                pipe.sink().write(ByteBuffer.wrap(new byte[]{1}));
+            }
+
+            Thread.sleep(1000);
+            final long start = events.get();
+            final long startTime = System.nanoTime();
+            Thread.sleep(3000);
+            final long count = events.get() - start;
+            final long elapsed = System.nanoTime() - startTime;
+
+            System.out.println(String.format("%s: %d events/s", mode, count * 1000000000L / elapsed));
+        } finally {
+            loop.stop();
+            closePipes(pipes);
+        }
+    }
+
+    private Pipe[] openPipes(final HikariEventLoop loop, final int pipeCount) throws Exception {
+        final Pipe[] pipes = new Pipe[pipeCount];
+        final CountDownLatch registered = new CountDownLatch(pipeCount);
+        for (int i = 0; i < pipeCount; i++) {
+            final Pipe pipe = Pipe.open();
+            pipe.source().configureBlocking(false);
+            pipes[i] = pipe;
+
+            loop.execute(() -> {
+                try {
+                    pipe.source().register(loop.getSelector(), SelectionKey.OP_READ);
+                    registered.countDown();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        Assert.assertTrue(registered.await(10, TimeUnit.SECONDS));
+        return pipes;
+    }
+
+    private void closePipes(final Pipe[] pipes) throws Exception {
+        for (Pipe pipe : pipes) {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    private HikariConfig newConfig(final Integer busyPollMicros) {
+        return newConfig(busyPollMicros, null);
+    }
+
+    private HikariConfig newConfig(final Integer busyPollMicros, final Boolean selectedKeysOptimization) {
+        final HikariConfig config = new HikariConfig();
+        config.setBusyPollMicros(busyPollMicros);
+        config.setSelectedKeysOptimization(selectedKeysOptimization);
+        return config;
+    }
+
+    private static class ReadHandle extends NoopHandle {
+        private final CountDownLatch latch;
+        private final AtomicLong events;
+        private final ByteBuffer buffer = ByteBuffer.allocate(16);
+
+        private ReadHandle(final CountDownLatch latch, final AtomicLong events) {
+            this.latch = latch;
+            this.events = events;
+        }
+
+        @Override
+        public void handleRead(final SelectionKey key) {
+            if (events != null) {
+                events.lazySet(events.get() + 1);
+                return;
+            }
+
+            try {
+                buffer.clear();
+                ((Pipe.SourceChannel) key.channel()).read(buffer);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            latch.countDown();
+        }
+    }
+
+    private static class NoopHandle implements HikariHandle {
+        @Override
+        public void handleAccept(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleAccepted(final SocketChannel channel, final Selector selector) {
+        }
+
+        @Override
+        public void handleConnect(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleRead(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleWrite(final SelectionKey key) {
+        }
+    }
+}
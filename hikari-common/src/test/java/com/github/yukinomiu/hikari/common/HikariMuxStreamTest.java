@@ -0,0 +1,229 @@
+package com.github.yukinomiu.hikari.common;
+
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Yukinomiu
+ * 2018/2/17
+ */
+public class HikariMuxStreamTest {
+    private static final int BUFFER_SIZE = 2048;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private final List<SocketChannel> channelList = new ArrayList<>();
+
+    private SocketChannel sessionPeer;
+    private SocketChannel streamPeer;
+    private TestContext streamContext;
+    private HikariMuxSession session;
+
+    @Before
+    public void setUp() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        final HikariConfig config = new HikariConfig();
+        config.setEncryptType("plain");
+        config.setSecret("secret");
+
+        final SocketChannel[] sessionPair = connect();
+        final SocketChannel[] streamPair = connect();
+        sessionPeer = sessionPair[1];
+        streamPeer = streamPair[1];
+
+        final TestContext sessionContext = new TestContext(sessionPair[0].register(selector, SelectionKey.OP_READ));
+        streamContext = new TestContext(streamPair[0].register(selector, SelectionKey.OP_READ));
+        session = new HikariMuxSession(new TestHandle(config), sessionContext, BUFFER_SIZE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SocketChannel channel : channelList) {
+            channel.close();
+        }
+        serverChannel.close();
+        selector.close();
+    }
+
+    @Test
+    public void testSendWindow() {
+        final HikariMuxStream stream = newStream();
+        Assert.assertTrue(stream.isWritable());
+
+        stream.consumeWindow(HikariProtocol.MUX_INITIAL_WINDOW);
+        Assert.assertFalse(stream.isWritable());
+
+        // paused until credit comes back
+        stream.pause();
+        Assert.assertEquals(0, streamContext.key().interestOps() & SelectionKey.OP_READ);
+
+        stream.addWindow(1);
+        Assert.assertTrue(stream.isWritable());
+        Assert.assertEquals(SelectionKey.OP_READ, streamContext.key().interestOps() & SelectionKey.OP_READ);
+    }
+
+    @Test
+    public void testWindowUpdate() throws IOException {
+        final HikariMuxStream stream = newStream();
+        final int length = HikariProtocol.MUX_INITIAL_WINDOW >>> 2;
+
+        // credit once the socket took the data
+        stream.deliver(ByteBuffer.allocate(length));
+        final ByteBuffer received = ByteBuffer.allocate(length);
+        while (received.hasRemaining()) {
+            stream.flush();
+            streamPeer.read(received);
+        }
+        stream.flush();
+
+        final ByteBuffer frame = readFrame();
+        Assert.assertEquals(HikariProtocol.MUX_FRAME_WINDOW, frame.get());
+        Assert.assertEquals(stream.getId(), frame.getInt());
+        Assert.assertEquals(4, frame.getShort());
+        Assert.assertEquals(length, frame.getInt());
+    }
+
+    @Test
+    public void testWindowExceeded() throws IOException {
+        final HikariMuxStream stream = newStream();
+
+        // the peer of the socket never reads
+        long delivered = 0;
+        try {
+            while (delivered < 64L * HikariProtocol.MUX_INITIAL_WINDOW) {
+                stream.deliver(ByteBuffer.allocate(BUFFER_SIZE));
+                delivered += BUFFER_SIZE;
+            }
+            Assert.fail("window not enforced");
+        } catch (HikariRuntimeException e) {
+            Assert.assertTrue(delivered >= HikariProtocol.MUX_INITIAL_WINDOW);
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        final HikariMuxStream stream = newStream();
+
+        stream.close();
+        Assert.assertTrue(streamContext.closed);
+        Assert.assertNull(session.getStream(stream.getId()));
+
+        final ByteBuffer frame = readFrame();
+        Assert.assertEquals(HikariProtocol.MUX_FRAME_CLOSE, frame.get());
+        Assert.assertEquals(stream.getId(), frame.getInt());
+        Assert.assertEquals(0, frame.getShort());
+
+        // closed by the peer, nothing is sent back
+        final HikariMuxStream remoteClosedStream = newStream();
+        remoteClosedStream.remoteClose();
+        Assert.assertTrue(remoteClosedStream.isClosed());
+        Assert.assertEquals(0, sessionPeer.read(ByteBuffer.allocate(16)));
+    }
+
+    private HikariMuxStream newStream() {
+        final HikariMuxStream stream = new HikariMuxStream(session.nextStreamId(), session);
+        stream.setContext(streamContext);
+        Assert.assertTrue(session.addStream(stream));
+        return stream;
+    }
+
+    private ByteBuffer readFrame() throws IOException {
+        // plain packet: length, checksum and frame
+        final ByteBuffer header = ByteBuffer.allocate(HikariConstant.PACKET_WRAPPER_SIZE);
+        while (header.hasRemaining()) {
+            sessionPeer.read(header);
+        }
+        header.flip();
+
+        final ByteBuffer frame = ByteBuffer.allocate(header.getShort() - 4);
+        while (frame.hasRemaining()) {
+            sessionPeer.read(frame);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private SocketChannel[] connect() throws IOException {
+        final SocketChannel channel = SocketChannel.open(serverChannel.getLocalAddress());
+        final SocketChannel peer = serverChannel.accept();
+        channel.configureBlocking(false);
+        peer.configureBlocking(false);
+        channelList.add(channel);
+        channelList.add(peer);
+        return new SocketChannel[]{channel, peer};
+    }
+
+    private static final class TestContext implements HikariContext {
+        private SelectionKey key;
+        private boolean closed;
+
+        private TestContext(final SelectionKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public SelectionKey key() {
+            return key;
+        }
+
+        @Override
+        public void updateKey(final SelectionKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public ByteBuffer writeBuffer() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static final class TestHandle extends HikariAbstractHandle {
+
+        private TestHandle(final HikariConfig config) {
+            super(config);
+        }
+
+        @Override
+        public void handleAccept(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleAccepted(final SocketChannel channel, final Selector selector) {
+        }
+
+        @Override
+        public void handleConnect(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleRead(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleWrite(final SelectionKey key) {
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Yukinomiu
+ * 2018/2/11
+ */
+public class HikariResolverTest {
+
+    @Test
+    public void testResolve() throws Exception {
+        final HikariConfig config = new HikariConfig();
+        final HikariResolver resolver = new HikariResolver("test-resolver", config);
+        final HikariEventLoop loop = new HikariEventLoop("test-loop", owner -> new NoopHandle(), config);
+        loop.start();
+
+        try {
+            final AtomicReference<InetAddress[]> resolved = new AtomicReference<>();
+            final AtomicBoolean inEventLoop = new AtomicBoolean();
+            final CountDownLatch latch = new CountDownLatch(2);
+
+            resolver.resolve("127.0.0.1".getBytes(StandardCharsets.UTF_8), loop, addresses -> {
+                resolved.set(addresses);
+                inEventLoop.set(loop.inEventLoop());
+                latch.countDown();
+            });
+
+            final AtomicBoolean failed = new AtomicBoolean();
+            resolver.resolve("no-such-host.invalid".getBytes(StandardCharsets.UTF_8), loop, addresses -> {
+                failed.set(addresses == null);
+                latch.countDown();
+            });
+
+            Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+            Assert.assertArrayEquals(InetAddress.getAllByName("127.0.0.1"), resolved.get());
+            Assert.assertTrue(inEventLoop.get());
+            Assert.assertTrue(failed.get());
+        } finally {
+            loop.stop();
+            resolver.stop();
+        }
+    }
+
+    @Test
+    public void testSharedLookup() throws Exception {
+        final HikariConfig config = new HikariConfig();
+        config.setResolverThreadCount(1);
+        config.setDnsCacheSize(0);
+        final HikariResolver resolver = new HikariResolver("test-resolver", config);
+        final HikariEventLoop loop = new HikariEventLoop("test-loop", owner -> new NoopHandle(), config);
+        loop.start();
+
+        try {
+            final int requestCount = 50;
+            final CountDownLatch latch = new CountDownLatch(requestCount);
+            final AtomicInteger resolved = new AtomicInteger();
+
+            // requests are made on the loop, waiters joining an in-flight lookup are all completed
+            loop.execute(() -> {
+                for (int i = 0; i < requestCount; i++) {
+                    resolver.resolve("127.0.0.1".getBytes(StandardCharsets.UTF_8), loop, addresses -> {
+                        if (addresses != null && loop.inEventLoop()) {
+                            resolved.incrementAndGet();
+                        }
+                        latch.countDown();
+                    });
+                }
+            });
+
+            Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals(requestCount, resolved.get());
+            Assert.assertNull(resolver.getCache());
+        } finally {
+            loop.stop();
+            resolver.stop();
+        }
+    }
+
+    private static class NoopHandle implements HikariHandle {
+        @Override
+        public void handleAccept(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleAccepted(final SocketChannel channel, final Selector selector) {
+        }
+
+        @Override
+        public void handleConnect(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleRead(final SelectionKey key) {
+        }
+
+        @Override
+        public void handleWrite(final SelectionKey key) {
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Yukinomiu
+ * 2018/2/5
+ */
+public class HikariTaskQueueTest {
+
+    @Test
+    public void testWakeupOnlyWhenEmpty() {
+        final HikariTaskQueue queue = new HikariTaskQueue();
+        final Runnable task = () -> {
+        };
+
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertTrue(queue.offer(task));
+        Assert.assertFalse(queue.offer(task));
+        Assert.assertFalse(queue.isEmpty());
+        Assert.assertEquals(2, queue.size());
+
+        Assert.assertSame(task, queue.poll());
+        Assert.assertSame(task, queue.poll());
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+
+        Assert.assertTrue(queue.offer(task));
+    }
+
+    @Test
+    public void testMultiProducer() throws InterruptedException {
+        final HikariTaskQueue queue = new HikariTaskQueue();
+        final int producerCount = 4;
+        final int taskCount = 100000;
+
+        final AtomicInteger executed = new AtomicInteger();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final Thread[] producers = new Thread[producerCount];
+        for (int i = 0; i < producerCount; i++) {
+            producers[i] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (int j = 0; j < taskCount; j++) {
+                    queue.offer(executed::incrementAndGet);
+                }
+            });
+            producers[i].start();
+        }
+
+        startLatch.countDown();
+
+        final int expected = producerCount * taskCount;
+        final long deadline = System.currentTimeMillis() + 30000;
+        while (executed.get() < expected && System.currentTimeMillis() < deadline) {
+            final Runnable task = queue.poll();
+            if (task != null) {
+                task.run();
+            }
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        Assert.assertEquals(expected, executed.get());
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.yukinomiu.hikari.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Yukinomiu
+ * 2018/2/12
+ */
+public class HikariTimerTest {
+    private static final long TICK = 10L;
+
+    @Test
+    public void testExpire() {
+        final HikariTimer timer = new HikariTimer(TICK, 8, 0L);
+        final StringBuilder order = new StringBuilder();
+
+        timer.newTimeout(() -> order.append('b'), 25L);
+        timer.newTimeout(() -> order.append('a'), 5L);
+        timer.newTimeout(() -> order.append('c'), 25L);
+
+        Assert.assertEquals(3, timer.getPendingCount());
+        Assert.assertEquals(TICK, timer.nextTimeoutNanos(0L));
+
+        Assert.assertEquals(0, timer.expireTimeouts(9L));
+        Assert.assertTrue(timer.hasDueTick(10L));
+        Assert.assertEquals(1, timer.expireTimeouts(10L));
+        Assert.assertEquals("a", order.toString());
+
+        // never before the deadline, same tick in submission order
+        Assert.assertEquals(0, timer.expireTimeouts(29L));
+        Assert.assertEquals(2, timer.expireTimeouts(30L));
+        Assert.assertEquals("abc", order.toString());
+        Assert.assertEquals(0, timer.getPendingCount());
+        Assert.assertEquals(-1L, timer.nextTimeoutNanos(30L));
+    }
+
+    @Test
+    public void testCancel() {
+        final HikariTimer timer = new HikariTimer(TICK, 8, 0L);
+        final StringBuilder order = new StringBuilder();
+
+        final HikariTimer.Timeout first = timer.newTimeout(() -> order.append('a'), 10L);
+        final HikariTimer.Timeout second = timer.newTimeout(() -> order.append('b'), 10L);
+        timer.newTimeout(() -> order.append('c'), 10L);
+
+        Assert.assertTrue(second.cancel());
+        Assert.assertFalse(second.cancel());
+        Assert.assertTrue(second.isCancelled());
+        Assert.assertEquals(2, timer.getPendingCount());
+
+        // a task cancelling a timeout of the same tick
+        final HikariTimer.Timeout[] later = new HikariTimer.Timeout[1];
+        timer.newTimeout(() -> later[0].cancel(), 10L);
+        later[0] = timer.newTimeout(() -> order.append('d'), 10L);
+
+        Assert.assertEquals(3, timer.expireTimeouts(100L));
+        Assert.assertEquals("ac", order.toString());
+        Assert.assertTrue(first.isExpired());
+        Assert.assertFalse(first.cancel());
+        Assert.assertTrue(later[0].isCancelled());
+    }
+
+    @Test
+    public void testRounds() {
+        final HikariTimer timer = new HikariTimer(TICK, 8, 0L);
+        final StringBuilder order = new StringBuilder();
+
+        // wraps the wheel twice into the bucket of tick 1
+        timer.newTimeout(() -> order.append('b'), 170L);
+        timer.newTimeout(() -> order.append('a'), 10L);
+
+        Assert.assertEquals(1, timer.expireTimeouts(10L));
+        Assert.assertEquals(0, timer.expireTimeouts(90L));
+        Assert.assertEquals(0, timer.expireTimeouts(169L));
+        Assert.assertEquals(1, timer.expireTimeouts(170L));
+        Assert.assertEquals("ab", order.toString());
+
+        // scheduled from a task, past deadlines expire on the next tick
+        timer.newTimeout(() -> timer.newTimeout(() -> order.append('c'), 0L), 180L);
+        Assert.assertEquals(1, timer.expireTimeouts(180L));
+        Assert.assertEquals(1, timer.expireTimeouts(190L));
+        Assert.assertEquals("abc", order.toString());
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.yukinomiu.hikari.common.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+
+/**
+ * Yukinomiu
+ * 2018/2/16
+ */
+public class DnsMessageTest {
+
+    private static byte[] query(final int id, final String name, final int type) {
+        final byte[] message = new byte[DnsMessage.HEADER_SIZE + name.length() + 2 + 4];
+        DnsMessage.setId(message, id);
+        message[2] = 0x01;
+        message[5] = 0x01;
+
+        int position = DnsMessage.HEADER_SIZE;
+        for (String label : name.split("\\.")) {
+            message[position++] = (byte) label.length();
+            for (char c : label.toCharArray()) {
+                message[position++] = (byte) c;
+            }
+        }
+        message[position++] = 0;
+        message[position++] = (byte) (type >>> 8);
+        message[position++] = (byte) type;
+        message[position++] = 0;
+        message[position] = (byte) DnsMessage.CLASS_IN;
+        return message;
+    }
+
+    @Test
+    public void testParseQuery() {
+        final byte[] message = query(0x1234, "WWW.Example.com", DnsMessage.TYPE_AAAA);
+        final DnsMessage query = DnsMessage.parseQuery(message, message.length);
+
+        Assert.assertNotNull(query);
+        Assert.assertEquals(0x1234, query.getId());
+        Assert.assertEquals(DnsMessage.OPCODE_QUERY, query.getOpcode());
+        Assert.assertEquals("www.example.com", query.getName());
+        Assert.assertEquals(DnsMessage.TYPE_AAAA, query.getType());
+        Assert.assertEquals(DnsMessage.CLASS_IN, query.getQuestionClass());
+
+        // truncated
+        Assert.assertNull(DnsMessage.parseQuery(message, message.length - 1));
+        Assert.assertNull(DnsMessage.parseQuery(message, DnsMessage.HEADER_SIZE - 1));
+    }
+
+    @Test
+    public void testBuildResponse() throws Exception {
+        final byte[] message = query(7, "example.com", DnsMessage.TYPE_A);
+        final DnsMessage query = DnsMessage.parseQuery(message, message.length);
+        final InetAddress[] addresses = new InetAddress[]{
+                InetAddress.getByName("10.0.0.1"),
+                InetAddress.getByName("::1"),
+                InetAddress.getByName("10.0.0.2")
+        };
+
+        // only answers of the question's type
+        final byte[] response = query.buildResponse(DnsMessage.RCODE_NO_ERROR, addresses, 60);
+        Assert.assertEquals(7, DnsMessage.getId(response));
+        Assert.assertEquals(DnsMessage.RCODE_NO_ERROR, DnsMessage.getRcode(response));
+        Assert.assertEquals(2, DnsMessage.getAnswerCount(response));
+        Assert.assertEquals(message.length + 2 * (12 + 4), response.length);
+        Assert.assertEquals(2, response[response.length - 1]);
+
+        final byte[] failure = query.buildResponse(DnsMessage.RCODE_SERVER_FAILURE, null, 0);
+        Assert.assertEquals(DnsMessage.RCODE_SERVER_FAILURE, DnsMessage.getRcode(failure));
+        Assert.assertEquals(0, DnsMessage.getAnswerCount(failure));
+    }
+}
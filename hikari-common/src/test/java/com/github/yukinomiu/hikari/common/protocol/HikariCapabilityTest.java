@@ -0,0 +1,67 @@
+package com.github.yukinomiu.hikari.common.protocol;
+
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Yukinomiu
+ * 2018/2/19
+ */
+public class HikariCapabilityTest {
+
+    @Test
+    public void testWriteRead() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        new HikariCapability(4096, HikariProtocol.FEATURE_MUX | HikariProtocol.FEATURE_BOND).write(buffer);
+        Assert.assertEquals(HikariCapability.MAX_SIZE, buffer.position());
+        buffer.put((byte) 0x7F);
+        buffer.flip();
+
+        final HikariCapability capability = HikariCapability.read(buffer);
+        Assert.assertEquals(Integer.valueOf(4096), capability.getFrameSize());
+        Assert.assertTrue(capability.hasFeature(HikariProtocol.FEATURE_MUX));
+        Assert.assertFalse(capability.hasFeature(HikariProtocol.FEATURE_EARLY_DATA));
+
+        // the request goes on after the options
+        Assert.assertEquals(0x7F, buffer.get());
+    }
+
+    @Test
+    public void testUnknownOptionSkipped() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put((byte) (3 + 6));
+        buffer.put((byte) 0x40).put((byte) 1).put((byte) 0x55);
+        buffer.put(HikariProtocol.OPTION_FEATURES).put((byte) 4).putInt(HikariProtocol.FEATURE_DNS_TUNNEL);
+        buffer.flip();
+
+        final HikariCapability capability = HikariCapability.read(buffer);
+        Assert.assertNull(capability.getFrameSize());
+        Assert.assertEquals(HikariProtocol.FEATURE_DNS_TUNNEL, capability.getFeatures());
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(expected = HikariRuntimeException.class)
+    public void testTruncated() {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put((byte) 6);
+        buffer.put(HikariProtocol.OPTION_FEATURES).put((byte) 4).put((byte) 0);
+        buffer.flip();
+
+        HikariCapability.read(buffer);
+    }
+
+    @Test
+    public void testNegotiate() {
+        final HikariCapability server = new HikariCapability(2048, HikariProtocol.FEATURES_ALL);
+
+        final HikariCapability chosen = server.negotiate(new HikariCapability(8192, HikariProtocol.FEATURE_MUX | 0x100));
+        Assert.assertEquals(Integer.valueOf(2048), chosen.getFrameSize());
+        Assert.assertEquals(HikariProtocol.FEATURE_MUX, chosen.getFeatures());
+
+        // no frame size offered, the connection keeps the configured buffer size
+        Assert.assertNull(server.negotiate(new HikariCapability(null, HikariProtocol.FEATURES_ALL)).getFrameSize());
+    }
+}
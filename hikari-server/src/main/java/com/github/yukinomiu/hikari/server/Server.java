@@ -1,6 +1,12 @@
 package com.github.yukinomiu.hikari.server;
 
+import com.github.yukinomiu.hikari.common.HikariAcceptHandle;
+import com.github.yukinomiu.hikari.common.HikariEventLoop;
+import com.github.yukinomiu.hikari.common.HikariEventLoopGroup;
+import com.github.yukinomiu.hikari.common.HikariLoopMonitor;
+import com.github.yukinomiu.hikari.common.HikariResolver;
 import com.github.yukinomiu.hikari.common.LifeCycle;
+import com.github.yukinomiu.hikari.common.util.SocketUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,9 +17,9 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Yukinomiu
@@ -21,9 +27,21 @@ import java.util.Set;
  */
 public class Server implements LifeCycle {
     private static final Logger logger = LoggerFactory.getLogger(Server.class);
+    private static final int DEFAULT_REBALANCE_INTERVAL = 1000;
+    private static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 5;
+    private static final int DEFAULT_CIRCUIT_BREAKER_COOL_DOWN = 30000;
+    private static final int DEFAULT_CIRCUIT_BREAKER_SIZE = 4096;
     private final ServerConfig serverConfig;
 
-    private List<Worker> workerList;
+    private HikariEventLoopGroup workerGroup;
+    private HikariEventLoop bossLoop;
+    private HikariLoopMonitor loopMonitor;
+    private HikariResolver resolver;
+    private ServerCircuitBreaker circuitBreaker;
+    private ServerEgressPool egressPool;
+    private ServerBalancer balancer;
+    private Map<Long, ServerBond> bondMap;
+    private List<ServerSocketChannel> serverChannelList;
 
     public Server(final ServerConfig serverConfig) {
         this.serverConfig = serverConfig;
@@ -44,120 +62,131 @@ public class Server implements LifeCycle {
     private void init() throws IOException {
         logger.info("init resource");
 
-        String listenAddress = serverConfig.getListenAddress();
-        List<Integer> listenPortList = serverConfig.getListenPortList();
-        workerList = new ArrayList<>(listenPortList.size());
+        // resolver
+        resolver = new HikariResolver("server-resolver", serverConfig);
+
+        // connect breaker
+        final Integer threshold = serverConfig.getCircuitBreakerThreshold();
+        final Integer coolDown = serverConfig.getCircuitBreakerCoolDown();
+        final Integer size = serverConfig.getCircuitBreakerSize();
+        circuitBreaker = new ServerCircuitBreaker(
+                threshold != null ? threshold : DEFAULT_CIRCUIT_BREAKER_THRESHOLD,
+                coolDown != null ? coolDown : DEFAULT_CIRCUIT_BREAKER_COOL_DOWN,
+                size != null ? size : DEFAULT_CIRCUIT_BREAKER_SIZE);
+        if (circuitBreaker.isEnabled()) {
+            logger.info("circuit breaker enabled");
+        }
 
-        for (Integer listenPort : listenPortList) {
-            // open selector and channel
-            Selector selector = Selector.open();
-            ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
-            serverSocketChannel.configureBlocking(false);
+        // egress addresses
+        egressPool = new ServerEgressPool(serverConfig.getEgressAddressList(), serverConfig.getEgressSelection());
 
-            // bind address
-            SocketAddress socketAddress = new InetSocketAddress(listenAddress, listenPort);
-            serverSocketChannel.bind(socketAddress);
-            logger.info("listen on {}:{}", listenAddress, listenPort);
+        // bonds by id, members may land on any worker loop
+        bondMap = new ConcurrentHashMap<>();
 
-            // register
-            SelectionKey key = serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
-            Thread thread = new Thread(new ServerMainLoop(key));
+        // worker loops
+        final int workerCount = HikariEventLoopGroup.resolveLoopCount(serverConfig.getWorkerCount());
+        workerGroup = new HikariEventLoopGroup("server-worker", workerCount, serverConfig, loop -> new ServerHandler(serverConfig, resolver, circuitBreaker, egressPool, bondMap, loop));
 
-            Worker worker = new Worker(key, thread);
-            workerList.add(worker);
+        // balancer
+        final Integer rebalanceInterval = serverConfig.getRebalanceInterval();
+        final int interval = rebalanceInterval != null ? rebalanceInterval : DEFAULT_REBALANCE_INTERVAL;
+        if (workerCount > 1 && interval > 0) {
+            balancer = new ServerBalancer(workerGroup.loops(), interval);
         }
-    }
 
-    private void destroy() throws IOException {
-        logger.info("destroy resource");
+        String listenAddress = serverConfig.getListenAddress();
+        List<Integer> listenPortList = serverConfig.getListenPortList();
+        serverChannelList = new ArrayList<>();
+
+        final Boolean reusePort = serverConfig.getReusePort();
+        if (reusePort != null && reusePort) {
+            // one listen channel per worker and port, kernel spreads the connections
+            for (HikariEventLoop workerLoop : workerGroup.loops()) {
+                for (Integer listenPort : listenPortList) {
+                    listen(listenAddress, listenPort, true, workerLoop.getSelector());
+                }
+            }
+            logger.info("SO_REUSEPORT enabled, {} listen channels per port", workerCount);
+        }
+        else {
+            // boss loop
+            bossLoop = new HikariEventLoop("server-boss", loop -> new HikariAcceptHandle(workerGroup), serverConfig);
 
-        for (Worker worker : workerList) {
-            worker.selectionKey.cancel();
-            worker.selectionKey.selector().close();
-            worker.selectionKey.channel().close();
+            for (Integer listenPort : listenPortList) {
+                listen(listenAddress, listenPort, false, bossLoop.getSelector());
+            }
         }
-    }
 
-    private void run() {
-        for (Worker worker : workerList) {
-            worker.thread.start();
+        // watchdog and stats
+        loopMonitor = new HikariLoopMonitor("server-monitor", serverConfig);
+        for (HikariEventLoop workerLoop : workerGroup.loops()) {
+            loopMonitor.watch(workerLoop);
+        }
+        if (bossLoop != null) {
+            loopMonitor.watch(bossLoop);
         }
     }
 
-    private void stop() {
-        for (Worker worker : workerList) {
-            worker.thread.interrupt();
+    private void listen(final String listenAddress,
+                        final Integer listenPort,
+                        final boolean reusePort,
+                        final Selector selector) throws IOException {
+        // open channel
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.configureBlocking(false);
+        serverChannelList.add(serverSocketChannel);
+
+        if (reusePort) {
+            SocketUtil.enableReusePort(serverSocketChannel);
         }
+
+        // bind address
+        SocketAddress socketAddress = new InetSocketAddress(listenAddress, listenPort);
+        serverSocketChannel.bind(socketAddress);
+        logger.info("listen on {}:{}", listenAddress, listenPort);
+
+        // register
+        serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
     }
 
-    private class Worker {
-        private final SelectionKey selectionKey;
-        private final Thread thread;
+    private void destroy() throws IOException {
+        logger.info("destroy resource");
+
+        for (ServerSocketChannel serverChannel : serverChannelList) {
+            serverChannel.close();
+        }
 
-        private Worker(final SelectionKey selectionKey, final Thread thread) {
-            this.selectionKey = selectionKey;
-            this.thread = thread;
+        if (bossLoop != null) {
+            bossLoop.close();
         }
+        workerGroup.close();
     }
 
-    private class ServerMainLoop implements Runnable {
-        private final SelectionKey selectionKey;
-
-        private ServerMainLoop(final SelectionKey selectionKey) {
-            this.selectionKey = selectionKey;
+    private void run() {
+        workerGroup.start();
+        if (bossLoop != null) {
+            bossLoop.start();
         }
+        loopMonitor.start();
+        if (balancer != null) {
+            balancer.start();
+        }
+    }
 
-        @Override
-        public void run() {
-            logger.info("server thread<{}> run...", Thread.currentThread().getName());
-
-            final ServerHandler handler = new ServerHandler(serverConfig);
-            final Selector selector = selectionKey.selector();
-
-            // loop
-            while (true) {
-                try {
-                    int count = selector.select();
-
-                    if (Thread.currentThread().isInterrupted()) {
-                        logger.info("server thread {} exit loop", Thread.currentThread().getId());
-                        break;
-                    }
-
-                    if (count == 0) {
-                        continue;
-                    }
-
-                    Set<SelectionKey> keys = selector.selectedKeys();
-                    Iterator<SelectionKey> iterator = keys.iterator();
-                    while (iterator.hasNext()) {
-                        SelectionKey key = iterator.next();
-                        iterator.remove();
-
-                        if (!key.isValid()) {
-                            key.cancel();
-                            continue;
-                        }
-
-                        if (key.isReadable()) {
-                            handler.handleRead(key);
-                        }
-                        else if (key.isWritable()) {
-                            handler.handleWrite(key);
-                        }
-                        else if (key.isAcceptable()) {
-                            handler.handleAccept(key);
-                        }
-                        else if (key.isConnectable()) {
-                            handler.handleConnect(key);
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.error("server main loop exception", e);
-                }
-            }
+    private void stop() {
+        loopMonitor.stop();
+        if (balancer != null) {
+            balancer.stop();
+        }
+        if (bossLoop != null) {
+            bossLoop.stop();
+        }
+        workerGroup.stop();
+        resolver.stop();
 
-            logger.info("server thread {} stop", Thread.currentThread().getId());
+        if (circuitBreaker.isEnabled()) {
+            logger.info("circuit breaker refused {} connects", circuitBreaker.getRefuseCount());
         }
+        egressPool.report();
     }
 }
@@ -0,0 +1,167 @@
+package com.github.yukinomiu.hikari.server;
+
+import com.github.yukinomiu.hikari.common.HikariEventLoop;
+import com.github.yukinomiu.hikari.common.HikariStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * moves heavy client/target pairs from the busiest worker loop to the idlest one
+ * <p>
+ * Yukinomiu
+ * 2018/2/8
+ */
+public class ServerBalancer {
+    private static final Logger logger = LoggerFactory.getLogger(ServerBalancer.class);
+    private static final long MIN_IMBALANCE_BYTES = 1 << 20;
+    private static final int SETTLE_ROUNDS = 2;
+
+    private final HikariEventLoop[] loops;
+    private final int interval;
+    private final AtomicLongArray loadBytes;
+
+    private ScheduledExecutorService scheduler;
+
+    // rounds left whose samples were taken around a migration, only touched by the scheduler thread
+    private int settleRounds;
+
+    public ServerBalancer(final HikariEventLoop[] loops, final int interval) {
+        this.loops = loops;
+        this.interval = interval;
+        this.loadBytes = new AtomicLongArray(loops.length);
+    }
+
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "server-balancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::balance, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("rebalance interval: {} ms", interval);
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void balance() {
+        try {
+            // loads were published by the samples of the last round
+            int maxIndex = 0;
+            int minIndex = 0;
+            for (int i = 1; i < loops.length; i++) {
+                if (loadBytes.get(i) > loadBytes.get(maxIndex)) {
+                    maxIndex = i;
+                }
+                if (loadBytes.get(i) < loadBytes.get(minIndex)) {
+                    minIndex = i;
+                }
+            }
+
+            // a moved pair is missed by the samples of its round and sampled for two rounds by the next ones
+            final long imbalance = loadBytes.get(maxIndex) - loadBytes.get(minIndex);
+            if (settleRounds > 0) {
+                settleRounds--;
+            }
+            else if (imbalance > MIN_IMBALANCE_BYTES) {
+                final HikariEventLoop sourceLoop = loops[maxIndex];
+                final HikariEventLoop targetLoop = loops[minIndex];
+
+                // moving a pair of rate r turns the difference d into |d - 2r|, only worth it well below d
+                final long maxRate = imbalance * 3 / 4;
+                sourceLoop.execute(() -> migrateHeaviest(sourceLoop, targetLoop, maxRate));
+                settleRounds = SETTLE_ROUNDS;
+            }
+
+            // next samples
+            for (int i = 0; i < loops.length; i++) {
+                final int index = i;
+                final HikariEventLoop loop = loops[i];
+                loop.execute(() -> loadBytes.set(index, sample(loop.getSelector())));
+            }
+        } catch (Exception e) {
+            logger.error("balance exception", e);
+        }
+    }
+
+    private long sample(final Selector selector) {
+        long load = 0;
+        for (SelectionKey key : selector.keys()) {
+            final Object attachment = key.attachment();
+            if (attachment instanceof ServerClientContext) {
+                load += ((ServerClientContext) attachment).sampleTraffic();
+            }
+        }
+
+        return load;
+    }
+
+    private void migrateHeaviest(final HikariEventLoop sourceLoop, final HikariEventLoop targetLoop, final long maxRate) {
+        ServerClientContext heaviest = null;
+        for (SelectionKey key : sourceLoop.getSelector().keys()) {
+            final Object attachment = key.attachment();
+            if (!key.isValid() || !(attachment instanceof ServerClientContext)) {
+                continue;
+            }
+
+            final ServerClientContext clientContext = (ServerClientContext) attachment;
+            if (clientContext.getStatus() != HikariStatus.HIKARI_PROXY || clientContext.getTrafficRate() > maxRate) {
+                continue;
+            }
+
+            if (heaviest == null || clientContext.getTrafficRate() > heaviest.getTrafficRate()) {
+                heaviest = clientContext;
+            }
+        }
+
+        if (heaviest == null || heaviest.getTrafficRate() == 0) {
+            return;
+        }
+
+        final ServerClientContext clientContext = heaviest;
+        final ServerTargetContext targetContext = clientContext.getTargetContext();
+        final SelectionKey clientKey = clientContext.key();
+        final SelectionKey targetKey = targetContext.key();
+        if (!clientKey.isValid() || !targetKey.isValid()) {
+            return;
+        }
+
+        // pending data stays in the context buffers, interest ops keep the back pressure state
+        final int clientOps = clientKey.interestOps();
+        final int targetOps = targetKey.interestOps();
+        clientKey.cancel();
+        targetKey.cancel();
+
+        // timers belong to the loop, re-armed on the target loop
+        clientContext.getIdleTimeout().cancel();
+
+        targetLoop.execute(() -> {
+            if (clientContext.isClosed()) {
+                return;
+            }
+
+            try {
+                final Selector selector = targetLoop.getSelector();
+                clientContext.updateKey(clientKey.channel().register(selector, clientOps, clientContext));
+                targetContext.updateKey(targetKey.channel().register(selector, targetOps, targetContext));
+                clientContext.getIdleTimeout().start(targetLoop);
+            } catch (Exception e) {
+                String msg = e.getMessage();
+                logger.warn("adopt connection exception: {}", msg != null ? msg : e.getClass().getName());
+                clientContext.close();
+            }
+        });
+
+        logger.info("migrate connection from {} to {}, rate: {} bytes", sourceLoop.getName(), targetLoop.getName(), clientContext.getTrafficRate());
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.yukinomiu.hikari.server;
+
+import com.github.yukinomiu.hikari.common.HikariBond;
+import com.github.yukinomiu.hikari.common.HikariEventLoop;
+
+import java.util.Map;
+
+/**
+ * bond connected to its target by the first member, the others join it from any worker loop
+ * <p>
+ * Yukinomiu
+ * 2018/2/18
+ */
+public class ServerBond extends HikariBond {
+    private final ServerHandler handler;
+    private final HikariEventLoop eventLoop;
+    private final ServerClientContext leader;
+    private final Map<Long, ServerBond> bondMap;
+
+    public ServerBond(final long id,
+                      final ServerHandler handler,
+                      final HikariEventLoop eventLoop,
+                      final ServerClientContext leader,
+                      final Map<Long, ServerBond> bondMap,
+                      final int bufferSize) {
+        super(id, handler, bufferSize);
+        this.handler = handler;
+        this.eventLoop = eventLoop;
+        this.leader = leader;
+        this.bondMap = bondMap;
+    }
+
+    @Override
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+
+        bondMap.remove(getId(), this);
+        super.close();
+    }
+
+    public ServerHandler getHandler() {
+        return handler;
+    }
+
+    public HikariEventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+    public ServerClientContext getLeader() {
+        return leader;
+    }
+}
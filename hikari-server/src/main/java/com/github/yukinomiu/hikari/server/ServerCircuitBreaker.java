@@ -0,0 +1,133 @@
+package com.github.yukinomiu.hikari.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * per destination connect breaker shared by all loops, bounded lru table keyed by target address and port
+ * <p>
+ * closed: attempts pass and consecutive failures are counted. open: attempts are refused until the cool down
+ * passed. half open: one probe passes, its success closes the breaker and its failure opens it again.
+ * a probe that never reports, e.g. it lost a connect race, lets the next probe through after another cool down
+ * <p>
+ * Yukinomiu
+ * 2018/2/14
+ */
+public class ServerCircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(ServerCircuitBreaker.class);
+
+    private static final int STATE_CLOSED = 0;
+    private static final int STATE_OPEN = 1;
+    private static final int STATE_HALF_OPEN = 2;
+
+    private final int threshold;
+    private final long coolDownNanos;
+    private final int maxSize;
+    private final Map<InetSocketAddress, Entry> map;
+
+    private final LongAdder refuseCount = new LongAdder();
+
+    public ServerCircuitBreaker(final int threshold, final int coolDownMillis, final int maxSize) {
+        this.threshold = threshold;
+        this.coolDownNanos = TimeUnit.MILLISECONDS.toNanos(coolDownMillis);
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<InetSocketAddress, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<InetSocketAddress, ServerCircuitBreaker.Entry> eldest) {
+                return size() > ServerCircuitBreaker.this.maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return threshold > 0 && maxSize > 0;
+    }
+
+    /**
+     * whether an attempt to the address may start now, an open breaker past its cool down lets one probe pass
+     */
+    public boolean allow(final InetSocketAddress address, final long now) {
+        if (!isEnabled()) {
+            return true;
+        }
+
+        synchronized (map) {
+            final Entry entry = map.get(address);
+            if (entry == null || entry.state == STATE_CLOSED) {
+                return true;
+            }
+
+            if (now - entry.retryTime < 0) {
+                refuseCount.increment();
+                return false;
+            }
+
+            entry.state = STATE_HALF_OPEN;
+            entry.retryTime = now + coolDownNanos;
+            return true;
+        }
+    }
+
+    public void recordSuccess(final InetSocketAddress address) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        final Entry entry;
+        synchronized (map) {
+            entry = map.remove(address);
+        }
+
+        if (entry != null && entry.state != STATE_CLOSED) {
+            logger.info("circuit closed for {}", address);
+        }
+    }
+
+    public void recordFailure(final InetSocketAddress address, final long now) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        final int failures;
+        synchronized (map) {
+            Entry entry = map.get(address);
+            if (entry == null) {
+                entry = new Entry();
+                map.put(address, entry);
+            }
+
+            // attempts started before the breaker opened
+            if (entry.state == STATE_OPEN) {
+                return;
+            }
+
+            failures = ++entry.failures;
+            if (entry.state == STATE_CLOSED && failures < threshold) {
+                return;
+            }
+
+            entry.state = STATE_OPEN;
+            entry.retryTime = now + coolDownNanos;
+        }
+
+        logger.warn("circuit open for {}, {} connect failures in a row", address, failures);
+    }
+
+    public long getRefuseCount() {
+        return refuseCount.sum();
+    }
+
+    private static final class Entry {
+        private int state = STATE_CLOSED;
+        private int failures;
+
+        // end of the cool down while open, probe deadline while half open
+        private long retryTime;
+    }
+}
@@ -1,11 +1,15 @@
 package com.github.yukinomiu.hikari.server;
 
+import com.github.yukinomiu.hikari.common.HikariIdleTimeout;
+import com.github.yukinomiu.hikari.common.HikariMuxSession;
 import com.github.yukinomiu.hikari.common.HikariStatus;
 import com.github.yukinomiu.hikari.common.PacketContext;
+import com.github.yukinomiu.hikari.common.protocol.HikariCapability;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
@@ -20,6 +24,31 @@ public class ServerClientContext extends ServerContext {
 
     private HikariStatus status;
     private ServerTargetContext targetContext;
+    private ServerConnectRace connectRace;
+    private HikariIdleTimeout idleTimeout;
+
+    // options agreed in a hikari2 handshake, null for hikari1 clients
+    private HikariCapability capability;
+
+    // largest packet data sent to the client
+    private int frameSize;
+
+    // dns tunnel, queries split over packets
+    private ByteBuffer dnsFrameBuffer;
+
+    // mux, streams sharing this connection
+    private HikariMuxSession muxSession;
+
+    // bond, the stream striped over this and other connections
+    private ServerBond bond;
+
+    // data sent along with the auth request, written once the target is connected
+    private ByteBuffer earlyData;
+
+    // traffic of the client/target pair, only touched by the owner loop
+    private long trafficBytes;
+    private long sampledTrafficBytes;
+    private long trafficRate;
 
     public ServerClientContext(final SelectionKey key,
                                final Integer bufferSize,
@@ -27,6 +56,7 @@ public class ServerClientContext extends ServerContext {
         super(ServerContextType.CLIENT, key, bufferSize);
         packetContext = new PacketContext(bufferSize);
         this.status = status;
+        frameSize = bufferSize;
     }
 
     @Override
@@ -35,6 +65,10 @@ public class ServerClientContext extends ServerContext {
             return;
         }
         closed = true;
+        cancelTimeout();
+        if (idleTimeout != null) {
+            idleTimeout.cancel();
+        }
 
         final SelectionKey key = key();
         if (key != null) {
@@ -48,9 +82,21 @@ public class ServerClientContext extends ServerContext {
             }
         }
 
+        if (connectRace != null) {
+            connectRace.abandon(null);
+        }
+
         if (targetContext != null) {
             targetContext.close();
         }
+
+        if (muxSession != null) {
+            muxSession.close();
+        }
+
+        if (bond != null) {
+            bond.close();
+        }
     }
 
     public PacketContext getPacketContext() {
@@ -72,4 +118,86 @@ public class ServerClientContext extends ServerContext {
     public void setTargetContext(ServerTargetContext targetContext) {
         this.targetContext = targetContext;
     }
+
+    public ServerConnectRace getConnectRace() {
+        return connectRace;
+    }
+
+    public void setConnectRace(ServerConnectRace connectRace) {
+        this.connectRace = connectRace;
+    }
+
+    public HikariIdleTimeout getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(HikariIdleTimeout idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public HikariCapability getCapability() {
+        return capability;
+    }
+
+    public void setCapability(HikariCapability capability) {
+        this.capability = capability;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public void setFrameSize(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
+    public ByteBuffer getDnsFrameBuffer() {
+        return dnsFrameBuffer;
+    }
+
+    public void setDnsFrameBuffer(ByteBuffer dnsFrameBuffer) {
+        this.dnsFrameBuffer = dnsFrameBuffer;
+    }
+
+    public HikariMuxSession getMuxSession() {
+        return muxSession;
+    }
+
+    public void setMuxSession(HikariMuxSession muxSession) {
+        this.muxSession = muxSession;
+    }
+
+    public ServerBond getBond() {
+        return bond;
+    }
+
+    public void setBond(ServerBond bond) {
+        this.bond = bond;
+    }
+
+    public ByteBuffer getEarlyData() {
+        return earlyData;
+    }
+
+    public void setEarlyData(ByteBuffer earlyData) {
+        this.earlyData = earlyData;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void addTraffic(final int bytes) {
+        trafficBytes += bytes;
+    }
+
+    public long sampleTraffic() {
+        trafficRate = trafficBytes - sampledTrafficBytes;
+        sampledTrafficBytes = trafficBytes;
+        return trafficRate;
+    }
+
+    public long getTrafficRate() {
+        return trafficRate;
+    }
 }
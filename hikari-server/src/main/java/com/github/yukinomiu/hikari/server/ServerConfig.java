@@ -12,6 +12,15 @@ public class ServerConfig extends HikariConfig {
     private String listenAddress;
     private List<Integer> listenPortList;
     private List<String> privateKeyList;
+    private Integer workerCount;
+    private Boolean reusePort;
+    private Integer rebalanceInterval;
+    private Integer connectAttemptDelay;
+    private Integer circuitBreakerThreshold;
+    private Integer circuitBreakerCoolDown;
+    private Integer circuitBreakerSize;
+    private List<String> egressAddressList;
+    private String egressSelection;
 
     public String getListenAddress() {
         return listenAddress;
@@ -36,4 +45,76 @@ public class ServerConfig extends HikariConfig {
     public void setPrivateKeyList(List<String> privateKeyList) {
         this.privateKeyList = privateKeyList;
     }
+
+    public Integer getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(Integer workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    public Boolean getReusePort() {
+        return reusePort;
+    }
+
+    public void setReusePort(Boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    public Integer getRebalanceInterval() {
+        return rebalanceInterval;
+    }
+
+    public void setRebalanceInterval(Integer rebalanceInterval) {
+        this.rebalanceInterval = rebalanceInterval;
+    }
+
+    public Integer getConnectAttemptDelay() {
+        return connectAttemptDelay;
+    }
+
+    public void setConnectAttemptDelay(Integer connectAttemptDelay) {
+        this.connectAttemptDelay = connectAttemptDelay;
+    }
+
+    public Integer getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    public void setCircuitBreakerThreshold(Integer circuitBreakerThreshold) {
+        this.circuitBreakerThreshold = circuitBreakerThreshold;
+    }
+
+    public Integer getCircuitBreakerCoolDown() {
+        return circuitBreakerCoolDown;
+    }
+
+    public void setCircuitBreakerCoolDown(Integer circuitBreakerCoolDown) {
+        this.circuitBreakerCoolDown = circuitBreakerCoolDown;
+    }
+
+    public Integer getCircuitBreakerSize() {
+        return circuitBreakerSize;
+    }
+
+    public void setCircuitBreakerSize(Integer circuitBreakerSize) {
+        this.circuitBreakerSize = circuitBreakerSize;
+    }
+
+    public List<String> getEgressAddressList() {
+        return egressAddressList;
+    }
+
+    public void setEgressAddressList(List<String> egressAddressList) {
+        this.egressAddressList = egressAddressList;
+    }
+
+    public String getEgressSelection() {
+        return egressSelection;
+    }
+
+    public void setEgressSelection(String egressSelection) {
+        this.egressSelection = egressSelection;
+    }
 }
@@ -0,0 +1,118 @@
+package com.github.yukinomiu.hikari.server;
+
+import com.github.yukinomiu.hikari.common.HikariTimer;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * staggered connect attempts to all addresses of a target, RFC 8305 happy eyeballs
+ * <p>
+ * Yukinomiu
+ * 2018/2/13
+ */
+public class ServerConnectRace {
+    private final InetAddress[] addresses;
+    private final short port;
+    private int nextIndex;
+    private final List<ServerTargetContext> attemptList = new ArrayList<>(2);
+    private HikariTimer.Timeout timeout;
+
+    public ServerConnectRace(final InetAddress[] addresses, final short port) {
+        this.addresses = interleave(addresses);
+        this.port = port;
+    }
+
+    /**
+     * alternate address families, starting with the family the resolver put first
+     */
+    static InetAddress[] interleave(final InetAddress[] addresses) {
+        if (addresses.length < 3) {
+            return addresses;
+        }
+
+        final boolean firstIpv6 = isIpv6(addresses[0]);
+        final List<InetAddress> firstList = new ArrayList<>(addresses.length);
+        final List<InetAddress> secondList = new ArrayList<>(addresses.length);
+        for (InetAddress address : addresses) {
+            if (isIpv6(address) == firstIpv6) {
+                firstList.add(address);
+            }
+            else {
+                secondList.add(address);
+            }
+        }
+
+        final InetAddress[] result = new InetAddress[addresses.length];
+        int i = 0;
+        for (int j = 0; j < firstList.size() || j < secondList.size(); j++) {
+            if (j < firstList.size()) {
+                result[i++] = firstList.get(j);
+            }
+            if (j < secondList.size()) {
+                result[i++] = secondList.get(j);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isIpv6(final InetAddress address) {
+        return address instanceof Inet6Address;
+    }
+
+    public boolean hasNext() {
+        return nextIndex < addresses.length;
+    }
+
+    public InetSocketAddress next() {
+        return new InetSocketAddress(addresses[nextIndex++], port & 0xFFFF);
+    }
+
+    /**
+     * number of attempts started so far, lets a delayed start tell whether another attempt was started meanwhile
+     */
+    public int getStartedCount() {
+        return nextIndex;
+    }
+
+    public void addAttempt(final ServerTargetContext targetContext) {
+        attemptList.add(targetContext);
+    }
+
+    public void removeAttempt(final ServerTargetContext targetContext) {
+        attemptList.remove(targetContext);
+    }
+
+    public boolean hasAttempts() {
+        return !attemptList.isEmpty();
+    }
+
+    public List<ServerTargetContext> getAttemptList() {
+        return attemptList;
+    }
+
+    public void setTimeout(final HikariTimer.Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * ends the race, closes every attempt except the winner, null winner closes all
+     */
+    public void abandon(final ServerTargetContext winner) {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+
+        for (ServerTargetContext targetContext : attemptList) {
+            if (targetContext != winner) {
+                targetContext.abandon();
+            }
+        }
+        attemptList.clear();
+    }
+}
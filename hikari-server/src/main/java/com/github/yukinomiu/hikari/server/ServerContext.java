@@ -1,6 +1,7 @@
 package com.github.yukinomiu.hikari.server;
 
 import com.github.yukinomiu.hikari.common.HikariContext;
+import com.github.yukinomiu.hikari.common.HikariTimer;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
@@ -12,9 +13,12 @@ import java.nio.channels.SelectionKey;
 public abstract class ServerContext implements HikariContext {
 
     private final ServerContextType type;
-    private final SelectionKey key;
+    private SelectionKey key;
     private final ByteBuffer writeBuffer;
 
+    // pending handshake or connect timeout, only touched by the owner loop
+    private HikariTimer.Timeout timeout;
+
     protected ServerContext(final ServerContextType type, final SelectionKey key, final int bufferSize) {
         this.type = type;
         this.key = key;
@@ -26,6 +30,11 @@ public abstract class ServerContext implements HikariContext {
         return key;
     }
 
+    @Override
+    public final void updateKey(final SelectionKey key) {
+        this.key = key;
+    }
+
     @Override
     public final ByteBuffer writeBuffer() {
         return writeBuffer;
@@ -34,4 +43,16 @@ public abstract class ServerContext implements HikariContext {
     public ServerContextType getType() {
         return type;
     }
+
+    public final void setTimeout(final HikariTimer.Timeout timeout) {
+        cancelTimeout();
+        this.timeout = timeout;
+    }
+
+    public final void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package com.github.yukinomiu.hikari.server;
+
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * local source addresses target connections are bound to, spreads the ephemeral ports over several addresses
+ * <p>
+ * an address is only used for targets of its own family, targets without a matching address are left to the kernel
+ * <p>
+ * Yukinomiu
+ * 2018/2/15
+ */
+public class ServerEgressPool {
+    private static final Logger logger = LoggerFactory.getLogger(ServerEgressPool.class);
+    public static final String SELECTION_ROUND_ROBIN = "round-robin";
+    public static final String SELECTION_HASH = "hash";
+
+    private final Source[] ipv4Sources;
+    private final Source[] ipv6Sources;
+    private final boolean hashSelection;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    public ServerEgressPool(final List<String> addressList, final String selection) throws UnknownHostException {
+        if (selection == null || SELECTION_ROUND_ROBIN.equals(selection)) {
+            hashSelection = false;
+        }
+        else if (SELECTION_HASH.equals(selection)) {
+            hashSelection = true;
+        }
+        else {
+            throw new HikariRuntimeException(String.format("egress selection '%s' not supported", selection));
+        }
+
+        final List<Source> ipv4List = new ArrayList<>();
+        final List<Source> ipv6List = new ArrayList<>();
+        if (addressList != null) {
+            for (String address : addressList) {
+                final InetAddress inetAddress = InetAddress.getByName(address);
+                if (inetAddress instanceof Inet6Address) {
+                    ipv6List.add(new Source(inetAddress));
+                }
+                else {
+                    ipv4List.add(new Source(inetAddress));
+                }
+                logger.info("egress address: {}", inetAddress.getHostAddress());
+            }
+        }
+
+        ipv4Sources = ipv4List.toArray(new Source[0]);
+        ipv6Sources = ipv6List.toArray(new Source[0]);
+    }
+
+    public boolean isEmpty() {
+        return ipv4Sources.length == 0 && ipv6Sources.length == 0;
+    }
+
+    /**
+     * acquires a source for the target, null when no address of the target's family is configured
+     */
+    public Source acquire(final InetSocketAddress targetAddress) {
+        final InetAddress address = targetAddress.getAddress();
+        final Source[] sources = address instanceof Inet6Address ? ipv6Sources : ipv4Sources;
+        if (sources.length == 0) {
+            return null;
+        }
+
+        final int index;
+        if (hashSelection) {
+            // the same destination always leaves from the same address
+            index = ((address.hashCode() * 31 + targetAddress.getPort()) & Integer.MAX_VALUE) % sources.length;
+        }
+        else {
+            index = (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % sources.length;
+        }
+
+        final Source source = sources[index];
+        source.activeCount.incrementAndGet();
+        source.totalCount.increment();
+        return source;
+    }
+
+    public void report() {
+        for (Source source : ipv4Sources) {
+            source.report();
+        }
+        for (Source source : ipv6Sources) {
+            source.report();
+        }
+    }
+
+    public static final class Source {
+        private final InetAddress address;
+        private final AtomicLong activeCount = new AtomicLong();
+        private final LongAdder totalCount = new LongAdder();
+
+        private Source(final InetAddress address) {
+            this.address = address;
+        }
+
+        public InetAddress getAddress() {
+            return address;
+        }
+
+        public void release() {
+            activeCount.decrementAndGet();
+        }
+
+        /**
+         * target connections currently bound to the address
+         */
+        public long getActiveCount() {
+            return activeCount.get();
+        }
+
+        /**
+         * target connections bound to the address since start
+         */
+        public long getTotalCount() {
+            return totalCount.sum();
+        }
+
+        private void report() {
+            logger.info("egress {}: {} active, {} total", address.getHostAddress(), getActiveCount(), getTotalCount());
+        }
+    }
+}
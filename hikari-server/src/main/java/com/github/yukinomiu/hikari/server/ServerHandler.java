@@ -2,9 +2,16 @@ package com.github.yukinomiu.hikari.server;
 
 import com.github.yukinomiu.hikari.common.HikariAbstractHandle;
 import com.github.yukinomiu.hikari.common.HikariConstant;
+import com.github.yukinomiu.hikari.common.HikariEventLoop;
+import com.github.yukinomiu.hikari.common.HikariIdleTimeout;
+import com.github.yukinomiu.hikari.common.HikariMuxSession;
+import com.github.yukinomiu.hikari.common.HikariMuxStream;
+import com.github.yukinomiu.hikari.common.HikariResolver;
 import com.github.yukinomiu.hikari.common.HikariStatus;
 import com.github.yukinomiu.hikari.common.PacketContext;
 import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import com.github.yukinomiu.hikari.common.protocol.DnsMessage;
+import com.github.yukinomiu.hikari.common.protocol.HikariCapability;
 import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
 import com.github.yukinomiu.hikari.common.util.HexUtil;
 import com.github.yukinomiu.hikari.common.util.Md5Util;
@@ -21,7 +28,9 @@ import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Yukinomiu
@@ -29,21 +38,44 @@ import java.util.Set;
  */
 public class ServerHandler extends HikariAbstractHandle {
     private static final Logger logger = LoggerFactory.getLogger(ServerHandler.class);
+    private static final int DEFAULT_CONNECT_ATTEMPT_DELAY = 250;
+    private static final int DEFAULT_DNS_ANSWER_TTL = 60;
     private final ServerConfig config;
+    private final HikariResolver resolver;
+    private final ServerCircuitBreaker circuitBreaker;
+    private final ServerEgressPool egressPool;
+    private final Map<Long, ServerBond> bondMap;
+    private final HikariEventLoop eventLoop;
 
     private final Integer bufferSize;
     private final ByteBuffer dataBuffer;
     private final ByteBuffer cacheBuffer;
     private final ByteBuffer cryptoBuffer;
     private final ByteBuffer packetBuffer;
+    private final ByteBuffer streamBuffer;
 
     private final Set<String> privateKeyHashSet;
 
-    public ServerHandler(final ServerConfig config) {
+    // what hikari2 clients are offered
+    private final HikariCapability localCapability;
+    private final int connectAttemptDelay;
+    private final int dnsAnswerTtl;
+
+    public ServerHandler(final ServerConfig config,
+                         final HikariResolver resolver,
+                         final ServerCircuitBreaker circuitBreaker,
+                         final ServerEgressPool egressPool,
+                         final Map<Long, ServerBond> bondMap,
+                         final HikariEventLoop eventLoop) {
         super(config);
 
         // config
         this.config = config;
+        this.resolver = resolver;
+        this.circuitBreaker = circuitBreaker;
+        this.egressPool = egressPool;
+        this.bondMap = bondMap;
+        this.eventLoop = eventLoop;
 
         // buffer
         bufferSize = config.getBufferSize();
@@ -52,6 +84,9 @@ public class ServerHandler extends HikariAbstractHandle {
         cryptoBuffer = ByteBuffer.allocateDirect(bufferSize);
         packetBuffer = ByteBuffer.allocateDirect(bufferSize + HikariConstant.PACKET_WRAPPER_SIZE);
 
+        // stream reads, room for a mux or bond frame header
+        streamBuffer = ByteBuffer.allocateDirect(bufferSize - HikariProtocol.MUX_FRAME_HEADER_SIZE);
+
         // private keys
         List<String> privateKeyList = config.getPrivateKeyList();
         privateKeyHashSet = new HashSet<>(privateKeyList.size(), 1);
@@ -61,6 +96,17 @@ public class ServerHandler extends HikariAbstractHandle {
             String hexString = md5Util.md5String(key);
             privateKeyHashSet.add(hexString);
         }
+
+        // hikari2 options
+        localCapability = new HikariCapability(bufferSize, HikariProtocol.FEATURES_ALL);
+
+        // happy eyeballs
+        final Integer configConnectAttemptDelay = config.getConnectAttemptDelay();
+        connectAttemptDelay = configConnectAttemptDelay != null ? configConnectAttemptDelay : DEFAULT_CONNECT_ATTEMPT_DELAY;
+
+        // dns tunnel, answers live as long as the resolver caches them
+        final Integer configDnsCacheTtl = config.getDnsCacheTtl();
+        dnsAnswerTtl = configDnsCacheTtl != null ? configDnsCacheTtl : DEFAULT_DNS_ANSWER_TTL;
     }
 
     @Override
@@ -70,15 +116,38 @@ public class ServerHandler extends HikariAbstractHandle {
 
         try {
             SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+
+            handleAccepted(channel, selector);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle accept exception: {}", msg != null ? msg : e.getClass().getName());
+        }
+    }
+
+    @Override
+    public void handleAccepted(final SocketChannel channel, final Selector selector) {
+        try {
             channel.configureBlocking(false);
 
             SelectionKey clientKey = channel.register(selector, SelectionKey.OP_READ);
 
             ServerClientContext clientContext = new ServerClientContext(clientKey, bufferSize, HikariStatus.HIKARI_AUTH);
             clientKey.attach(clientContext);
+
+            // connections that never send a complete auth request
+            clientContext.setTimeout(scheduleTimeout(eventLoop, () -> processHandshakeTimeout(clientContext), handshakeTimeout));
         } catch (Exception e) {
             String msg = e.getMessage();
-            logger.warn("handle accept exception: {}", msg != null ? msg : e.getClass().getName());
+            logger.warn("handle accepted exception: {}", msg != null ? msg : e.getClass().getName());
+
+            try {
+                channel.close();
+            } catch (IOException ce) {
+                logger.warn("close client socket channel exception, msg: {}", ce.getMessage());
+            }
         }
     }
 
@@ -89,16 +158,29 @@ public class ServerHandler extends HikariAbstractHandle {
 
         final ServerClientContext clientContext = targetContext.getClientContext();
         final SocketChannel clientChannel = (SocketChannel) clientContext.key().channel();
+        final ServerMuxStream muxStream = targetContext.getMuxStream();
+        final ServerConnectRace connectRace = getConnectRace(clientContext, muxStream);
 
         try {
             try {
                 targetChannel.finishConnect();
             } catch (IOException e) {
-                logger.warn("connect to target fail, msg: {}", e.getMessage());
-                writeHikariFail(HikariProtocol.AUTH_RESPONSE_CONNECT_TARGET_FAIL, clientChannel, targetContext);
+                processAttemptFail(clientContext, muxStream, connectRace, targetContext, e);
                 return;
             }
 
+            // first connected attempt wins the race
+            circuitBreaker.recordSuccess(targetContext.getTargetAddress());
+            connectRace.abandon(targetContext);
+            if (muxStream != null) {
+                muxStream.setConnectRace(null);
+                muxStream.setContext(targetContext);
+            }
+            else {
+                clientContext.setConnectRace(null);
+                clientContext.setTargetContext(targetContext);
+            }
+
             key.interestOps(SelectionKey.OP_READ);
 
             // response
@@ -119,9 +201,13 @@ public class ServerHandler extends HikariAbstractHandle {
                 throw new HikariRuntimeException(String.format("address type '%s' not supported", localAddress.getClass().getName()));
             }
 
+            if (muxStream != null) {
+                writeMuxReply(muxStream, HikariProtocol.AUTH_RESPONSE_OK, bindHikariAddressType, bindAddress, port);
+                return;
+            }
+
             dataBuffer.clear();
-            dataBuffer.put(HikariProtocol.VERSION_HIKARI1);
-            dataBuffer.put(HikariProtocol.AUTH_RESPONSE_OK);
+            putResponseHeader(clientContext, HikariProtocol.AUTH_RESPONSE_OK);
             dataBuffer.put(bindHikariAddressType);
             dataBuffer.put(bindAddress);
             dataBuffer.putShort(port);
@@ -138,8 +224,31 @@ public class ServerHandler extends HikariAbstractHandle {
                 return;
             }
 
-            // set status
-            clientContext.setStatus(HikariStatus.HIKARI_PROXY);
+            // set status, a bond is never moved to another loop
+            final ServerBond bond = clientContext.getBond();
+            if (bond != null) {
+                clientContext.setStatus(HikariStatus.HIKARI_BOND);
+                bond.setStream(targetContext);
+                bond.addMember(clientContext);
+            }
+            else {
+                clientContext.setStatus(HikariStatus.HIKARI_PROXY);
+            }
+
+            final HikariIdleTimeout idle = new HikariIdleTimeout(clientContext, idleTimeout);
+            clientContext.setIdleTimeout(idle);
+            idle.start(eventLoop);
+
+            // open, a partial early data write pauses the client again
+            final SelectionKey clientKey = clientContext.key();
+            clientKey.interestOps(clientKey.interestOps() | SelectionKey.OP_READ);
+
+            final ByteBuffer earlyData = clientContext.getEarlyData();
+            if (earlyData != null) {
+                clientContext.setEarlyData(null);
+                clientContext.addTraffic(earlyData.remaining());
+                write(clientContext, targetContext, earlyData);
+            }
         } catch (Exception e) {
             String msg = e.getMessage();
             logger.warn("handle connect exception: {}", msg != null ? msg : e.getClass().getName());
@@ -166,6 +275,18 @@ public class ServerHandler extends HikariAbstractHandle {
                         processHikariProxyRead(key, clientContext);
                         break;
 
+                    case HIKARI_DNS:
+                        processHikariDnsRead(key, clientContext);
+                        break;
+
+                    case HIKARI_MUX:
+                        processHikariMuxRead(key, clientContext);
+                        break;
+
+                    case HIKARI_BOND:
+                        processHikariBondRead(key, clientContext);
+                        break;
+
                     default:
                         throw new HikariRuntimeException(String.format("server hikari status '%s' not supported", status.name()));
                 }
@@ -193,19 +314,41 @@ public class ServerHandler extends HikariAbstractHandle {
         try {
             if (type == ServerContextType.CLIENT) {
                 final ServerClientContext clientContext = (ServerClientContext) context;
+                if (clientContext.getStatus() == HikariStatus.HIKARI_MUX) {
+                    clientContext.getMuxSession().flush();
+                    return;
+                }
+                else if (clientContext.getStatus() == HikariStatus.HIKARI_BOND) {
+                    clientContext.getBond().flushMember(clientContext);
+                    return;
+                }
+
                 final SocketChannel clientChannel = (SocketChannel) key.channel();
                 final ByteBuffer writeBuffer = clientContext.writeBuffer();
 
                 clientChannel.write(writeBuffer);
                 if (!writeBuffer.hasRemaining()) {
-                    final SelectionKey targetKey = clientContext.getTargetContext().key();
-
                     key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
-                    targetKey.interestOps(targetKey.interestOps() | SelectionKey.OP_READ);
+
+                    // a dns tunnel has no target, its reads are never paused
+                    final ServerTargetContext targetContext = clientContext.getTargetContext();
+                    if (targetContext != null) {
+                        final SelectionKey targetKey = targetContext.key();
+                        targetKey.interestOps(targetKey.interestOps() | SelectionKey.OP_READ);
+                    }
                 }
             }
             else if (type == ServerContextType.TARGET) {
                 final ServerTargetContext targetContext = (ServerTargetContext) context;
+                if (targetContext.getMuxStream() != null) {
+                    targetContext.getMuxStream().flush();
+                    return;
+                }
+                else if (targetContext.getClientContext().getBond() != null) {
+                    targetContext.getClientContext().getBond().flushStream();
+                    return;
+                }
+
                 final SocketChannel targetChannel = (SocketChannel) key.channel();
                 final ByteBuffer writeBuffer = targetContext.writeBuffer();
 
@@ -245,7 +388,7 @@ public class ServerHandler extends HikariAbstractHandle {
 
         // ver
         final byte ver = cacheBuffer.get();
-        if (ver != HikariProtocol.VERSION_HIKARI1) {
+        if (ver != HikariProtocol.VERSION_HIKARI1 && ver != HikariProtocol.VERSION_HIKARI2) {
             writeHikariFail(HikariProtocol.AUTH_RESPONSE_VERSION_NOT_SUPPORT, clientChannel, clientContext);
             return;
         }
@@ -253,6 +396,16 @@ public class ServerHandler extends HikariAbstractHandle {
         // auth
         final byte[] auth = new byte[16];
         cacheBuffer.get(auth);
+
+        // options, answered in the same version
+        if (ver == HikariProtocol.VERSION_HIKARI2) {
+            final HikariCapability capability = localCapability.negotiate(HikariCapability.read(cacheBuffer));
+            clientContext.setCapability(capability);
+            if (capability.getFrameSize() != null) {
+                clientContext.setFrameSize(capability.getFrameSize());
+            }
+        }
+
         String keyHashHex = HexUtil.hexString(auth);
         if (!privateKeyHashSet.contains(keyHashHex)) {
             writeHikariFail(HikariProtocol.AUTH_RESPONSE_AUTH_FAIL, clientChannel, clientContext);
@@ -260,31 +413,73 @@ public class ServerHandler extends HikariAbstractHandle {
         }
 
         // address
-        final byte hikariAddressType = cacheBuffer.get();
-        final byte[] address;
-        if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_DOMAIN) {
-            // resolve
-            int length = cacheBuffer.get();
-            byte[] domainByteArray = new byte[length];
-            cacheBuffer.get(domainByteArray, 0, length);
+        byte hikariAddressType = cacheBuffer.get();
+        if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_DNS_TUNNEL) {
+            if (cacheBuffer.hasRemaining()) {
+                logger.warn("bad hikari auth request");
+                clientContext.close();
+                return;
+            }
+            clientContext.cancelTimeout();
 
-            InetAddress inetAddress;
-            final String domain = new String(domainByteArray, StandardCharsets.UTF_8);
-            try {
-                inetAddress = InetAddress.getByName(domain);
-            } catch (UnknownHostException e) {
-                logger.warn("DNS resolve fail: {}", domain);
-                writeHikariFail(HikariProtocol.AUTH_RESPONSE_DNS_RESOLVE_FAIL, clientChannel, clientContext);
+            startDnsTunnel(clientChannel, clientContext);
+            return;
+        }
+        else if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_MUX) {
+            if (cacheBuffer.hasRemaining()) {
+                logger.warn("bad hikari auth request");
+                clientContext.close();
+                return;
+            }
+            clientContext.cancelTimeout();
+
+            startMux(clientChannel, clientContext);
+            return;
+        }
+        else if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_BOND) {
+            final long bondId = cacheBuffer.getLong();
+            final byte bondRequest = cacheBuffer.get();
+            if (bondRequest == HikariProtocol.BOND_JOIN) {
+                if (cacheBuffer.hasRemaining()) {
+                    logger.warn("bad hikari auth request");
+                    clientContext.close();
+                    return;
+                }
+                clientContext.cancelTimeout();
+
+                joinBond(clientChannel, clientContext, bondId);
                 return;
             }
+            else if (bondRequest != HikariProtocol.BOND_OPEN) {
+                throw new HikariRuntimeException(String.format("hikari bond request '%s' not supported", bondRequest));
+            }
+
+            // the target address follows, members join once it is connected
+            final ServerBond bond = new ServerBond(bondId, this, eventLoop, clientContext, bondMap, bufferSize);
+            if (bondMap.putIfAbsent(bondId, bond) != null) {
+                throw new HikariRuntimeException(String.format("bond %d already open", bondId));
+            }
+            clientContext.setBond(bond);
+
+            hikariAddressType = cacheBuffer.get();
+        }
+
+        final byte[] domain;
+        final byte[] address;
+        if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_DOMAIN) {
+            int length = cacheBuffer.get();
+            domain = new byte[length];
+            cacheBuffer.get(domain, 0, length);
 
-            address = inetAddress.getAddress();
+            address = null;
         }
         else if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_IPV4) {
+            domain = null;
             address = new byte[4];
             cacheBuffer.get(address, 0, 4);
         }
         else if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_IPV6) {
+            domain = null;
             address = new byte[16];
             cacheBuffer.get(address, 0, 16);
         }
@@ -295,77 +490,742 @@ public class ServerHandler extends HikariAbstractHandle {
         // port
         final short port = cacheBuffer.getShort();
 
+        // early data of a client that did not wait for the response, a bond frames all its data
         if (cacheBuffer.hasRemaining()) {
-            logger.warn("bad hikari auth request");
-            clientContext.close();
+            if (clientContext.getBond() != null) {
+                logger.warn("bad hikari auth request");
+                clientContext.close();
+                return;
+            }
+
+            final ByteBuffer earlyData = ByteBuffer.allocate(cacheBuffer.remaining());
+            earlyData.put(cacheBuffer);
+            earlyData.flip();
+            clientContext.setEarlyData(earlyData);
+        }
+        clientContext.cancelTimeout();
+
+        // the client stays in auth status and is not read until the target is connected, later data waits in the socket
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+
+        if (domain != null) {
+            // resolve off the loop
+            resolver.resolve(domain, eventLoop, addresses -> processResolved(clientContext, null, domain, addresses, port));
             return;
         }
 
-        // connect to target
-        InetAddress inetAddress = InetAddress.getByAddress(address);
+        connectTarget(clientContext, null, new InetAddress[]{InetAddress.getByAddress(address)}, port);
+    }
+
+    private void processResolved(final ServerClientContext clientContext,
+                                 final ServerMuxStream muxStream,
+                                 final byte[] domain,
+                                 final InetAddress[] addresses,
+                                 final short port) {
+        if (isConnectAbandoned(clientContext, muxStream)) {
+            return;
+        }
+
+        try {
+            if (addresses == null) {
+                logger.warn("DNS resolve fail: {}", new String(domain, StandardCharsets.UTF_8));
+                writeConnectFail(HikariProtocol.AUTH_RESPONSE_DNS_RESOLVE_FAIL, clientContext, muxStream);
+                return;
+            }
+
+            connectTarget(clientContext, muxStream, addresses, port);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle resolved exception: {}", msg != null ? msg : e.getClass().getName());
+            closeConnect(clientContext, muxStream);
+        }
+    }
+
+    /**
+     * a connect for the client connection itself or, when the stream is not null, for a stream of its mux session
+     */
+    private void connectTarget(final ServerClientContext clientContext,
+                               final ServerMuxStream muxStream,
+                               final InetAddress[] addresses,
+                               final short port) throws IOException {
+        final ServerConnectRace connectRace = new ServerConnectRace(addresses, port);
+        setConnectRace(clientContext, muxStream, connectRace);
+        connectRace.setTimeout(scheduleTimeout(eventLoop, () -> processConnectTimeout(clientContext, muxStream, connectRace), connectTimeout));
+
+        startConnectAttempt(clientContext, muxStream, connectRace);
+    }
 
+    private void startConnectAttempt(final ServerClientContext clientContext,
+                                     final ServerMuxStream muxStream,
+                                     final ServerConnectRace connectRace) throws IOException {
         final SelectionKey clientKey = clientContext.key();
         final Selector selector = clientKey.selector();
-        final SocketAddress targetAddress = new InetSocketAddress(inetAddress, port);
+
+        // skip addresses refused by their breaker
+        final long now = eventLoop.currentTime();
+        InetSocketAddress targetAddress = null;
+        while (connectRace.hasNext()) {
+            final InetSocketAddress address = connectRace.next();
+            if (circuitBreaker.allow(address, now)) {
+                targetAddress = address;
+                break;
+            }
+        }
+
+        if (targetAddress == null) {
+            if (!connectRace.hasAttempts()) {
+                logger.warn("connect to target refused, circuit open");
+                connectRace.abandon(null);
+                setConnectRace(clientContext, muxStream, null);
+                writeConnectFail(HikariProtocol.AUTH_RESPONSE_CONNECT_TARGET_FAIL, clientContext, muxStream);
+            }
+            return;
+        }
 
         SocketChannel targetChannel = SocketChannel.open();
         targetChannel.configureBlocking(false);
 
         final SelectionKey targetKey = targetChannel.register(selector, SelectionKey.OP_CONNECT);
-        ServerTargetContext targetContext = new ServerTargetContext(targetKey, bufferSize, clientContext);
+        ServerTargetContext targetContext = new ServerTargetContext(targetKey, bufferSize, clientContext, targetAddress, muxStream);
         targetKey.attach(targetContext);
 
-        clientContext.setTargetContext(targetContext);
+        connectRace.addAttempt(targetContext);
+
+        final boolean connectedNow;
+        try {
+            // bind to a source address, the kernel picks the ephemeral port at bind time from the range of that address,
+            // so every address adds its own range and ports are not shared between destinations
+            final ServerEgressPool.Source egressSource = egressPool.acquire(targetAddress);
+            if (egressSource != null) {
+                targetContext.setEgressSource(egressSource);
+                targetChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                targetChannel.bind(new InetSocketAddress(egressSource.getAddress(), 0));
+            }
+
+            connectedNow = targetChannel.connect(targetAddress);
+        } catch (IOException e) {
+            // e.g. no route for this address family
+            processAttemptFail(clientContext, muxStream, connectRace, targetContext, e);
+            return;
+        }
 
-        boolean connectedNow = targetChannel.connect(targetAddress);
         if (connectedNow) {
             handleConnect(targetKey);
+            return;
+        }
+
+        // next address after the attempt delay unless another attempt was started meanwhile
+        if (connectRace.hasNext()) {
+            final int startedCount = connectRace.getStartedCount();
+            eventLoop.schedule(() -> {
+                if (isConnectAbandoned(clientContext, muxStream)
+                        || getConnectRace(clientContext, muxStream) != connectRace
+                        || connectRace.getStartedCount() != startedCount) {
+                    return;
+                }
+
+                try {
+                    startConnectAttempt(clientContext, muxStream, connectRace);
+                } catch (Exception e) {
+                    String msg = e.getMessage();
+                    logger.warn("start connect attempt exception: {}", msg != null ? msg : e.getClass().getName());
+                    closeConnect(clientContext, muxStream);
+                }
+            }, connectAttemptDelay, TimeUnit.MILLISECONDS);
         }
     }
 
-    private void processHikariProxyRead(final SelectionKey key,
+    private void processAttemptFail(final ServerClientContext clientContext,
+                                    final ServerMuxStream muxStream,
+                                    final ServerConnectRace connectRace,
+                                    final ServerTargetContext targetContext,
+                                    final IOException cause) throws IOException {
+        connectRace.removeAttempt(targetContext);
+        targetContext.abandon();
+        circuitBreaker.recordFailure(targetContext.getTargetAddress(), eventLoop.currentTime());
+
+        // a failed attempt starts the next one right away
+        if (connectRace.hasNext()) {
+            startConnectAttempt(clientContext, muxStream, connectRace);
+        }
+        else if (!connectRace.hasAttempts()) {
+            logger.warn("connect to target fail, msg: {}", cause.getMessage());
+            connectRace.abandon(null);
+            setConnectRace(clientContext, muxStream, null);
+            writeConnectFail(HikariProtocol.AUTH_RESPONSE_CONNECT_TARGET_FAIL, clientContext, muxStream);
+        }
+    }
+
+    private ServerConnectRace getConnectRace(final ServerClientContext clientContext,
+                                             final ServerMuxStream muxStream) {
+        return muxStream != null ? muxStream.getConnectRace() : clientContext.getConnectRace();
+    }
+
+    private void setConnectRace(final ServerClientContext clientContext,
+                                final ServerMuxStream muxStream,
+                                final ServerConnectRace connectRace) {
+        if (muxStream != null) {
+            muxStream.setConnectRace(connectRace);
+        }
+        else {
+            clientContext.setConnectRace(connectRace);
+        }
+    }
+
+    private boolean isConnectAbandoned(final ServerClientContext clientContext,
+                                       final ServerMuxStream muxStream) {
+        // streams are closed along with their session
+        return muxStream != null ? muxStream.isClosed() : clientContext.isClosed();
+    }
+
+    private void closeConnect(final ServerClientContext clientContext,
+                              final ServerMuxStream muxStream) {
+        if (muxStream != null) {
+            muxStream.close();
+        }
+        else {
+            clientContext.close();
+        }
+    }
+
+    private void writeConnectFail(final byte rsp,
+                                  final ServerClientContext clientContext,
+                                  final ServerMuxStream muxStream) throws IOException {
+        if (muxStream != null) {
+            writeMuxReply(muxStream, rsp, (byte) 0, null, (short) 0);
+            return;
+        }
+
+        writeHikariFail(rsp, (SocketChannel) clientContext.key().channel(), clientContext);
+    }
+
+    private void startDnsTunnel(final SocketChannel clientChannel,
+                                final ServerClientContext clientContext) throws IOException {
+        if (!writeTunnelResponse(clientChannel, clientContext)) {
+            return;
+        }
+
+        // set status
+        clientContext.setStatus(HikariStatus.HIKARI_DNS);
+        clientContext.setDnsFrameBuffer(ByteBuffer.allocate(bufferSize << 1));
+
+        final HikariIdleTimeout idle = new HikariIdleTimeout(clientContext, idleTimeout);
+        clientContext.setIdleTimeout(idle);
+        idle.start(eventLoop);
+    }
+
+    private void startMux(final SocketChannel clientChannel,
+                          final ServerClientContext clientContext) throws IOException {
+        if (!writeTunnelResponse(clientChannel, clientContext)) {
+            return;
+        }
+
+        // set status, never moved to another loop along with its targets
+        clientContext.setStatus(HikariStatus.HIKARI_MUX);
+        clientContext.setMuxSession(new HikariMuxSession(this, clientContext, bufferSize));
+
+        final HikariIdleTimeout idle = new HikariIdleTimeout(clientContext, idleTimeout);
+        clientContext.setIdleTimeout(idle);
+        idle.start(eventLoop);
+    }
+
+    private void joinBond(final SocketChannel clientChannel,
+                          final ServerClientContext clientContext,
+                          final long bondId) throws IOException {
+        final ServerBond bond = bondMap.get(bondId);
+        if (bond == null) {
+            // ended before its members connected, common for short streams
+            logger.debug("bond to join not found");
+            writeHikariFail(HikariProtocol.AUTH_RESPONSE_BOND_NOT_FOUND, clientChannel, clientContext);
+            return;
+        }
+
+        if (bond.getEventLoop() == eventLoop) {
+            processBondJoin(clientContext, bond);
+            return;
+        }
+
+        // members live on the loop of the bond, handed over like a rebalanced connection
+        clientContext.key().cancel();
+        bond.getEventLoop().execute(() -> bond.getHandler().processBondJoin(clientContext, bond));
+    }
+
+    /**
+     * on the loop of the bond
+     */
+    void processBondJoin(final ServerClientContext clientContext,
+                         final ServerBond bond) {
+        if (clientContext.isClosed()) {
+            return;
+        }
+
+        try {
+            final SocketChannel clientChannel = (SocketChannel) clientContext.key().channel();
+            final Selector selector = eventLoop.getSelector();
+            if (clientContext.key().selector() != selector) {
+                clientContext.updateKey(clientChannel.register(selector, 0, clientContext));
+            }
+
+            // members join a bond whose target is connected
+            if (bond.isClosed() || bond.getStream() == null || bond.getMemberCount() >= HikariProtocol.BOND_MAX_CONNECTIONS) {
+                logger.debug("bond to join not open");
+                writeHikariFail(HikariProtocol.AUTH_RESPONSE_BOND_NOT_FOUND, clientChannel, clientContext);
+                return;
+            }
+
+            if (!writeTunnelResponse(clientChannel, clientContext)) {
+                return;
+            }
+
+            // set status
+            clientContext.setStatus(HikariStatus.HIKARI_BOND);
+            clientContext.setBond(bond);
+            bond.addMember(clientContext);
+            clientContext.key().interestOps(SelectionKey.OP_READ);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("join bond exception: {}", msg != null ? msg : e.getClass().getName());
+            clientContext.close();
+        }
+    }
+
+    /**
+     * ok response of a connection without target
+     */
+    private boolean writeTunnelResponse(final SocketChannel clientChannel,
                                         final ServerClientContext clientContext) throws IOException {
+        // response, no bind address
+        dataBuffer.clear();
+        putResponseHeader(clientContext, HikariProtocol.AUTH_RESPONSE_OK);
+        dataBuffer.put(HikariProtocol.ADDRESS_TYPE_IPV4);
+        dataBuffer.putInt(0);
+        dataBuffer.putShort((short) 0);
+        dataBuffer.flip();
+
+        // encrypt
+        encrypt(dataBuffer, cryptoBuffer, packetBuffer);
+
+        // write
+        clientChannel.write(packetBuffer);
+        if (packetBuffer.hasRemaining()) {
+            logger.warn("send hikari auth response fail");
+            clientContext.close();
+            return false;
+        }
+
+        return true;
+    }
+
+    private void processHikariDnsRead(final SelectionKey key,
+                                      final ServerClientContext clientContext) throws IOException {
         final SocketChannel clientChannel = (SocketChannel) key.channel();
+        final PacketContext packetContext = clientContext.getPacketContext();
+        final ByteBuffer frameBuffer = clientContext.getDnsFrameBuffer();
+        clientContext.getIdleTimeout().touch(eventLoop.currentTime());
 
         if (!read(clientChannel, packetBuffer, clientContext)) {
             return;
         }
 
         // decrypt
+        while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+            if (frameBuffer.remaining() < dataBuffer.remaining()) {
+                logger.warn("dns query too large");
+                clientContext.close();
+                return;
+            }
+            frameBuffer.put(dataBuffer);
+        }
+
+        // 2 bytes length before each message, rfc 1035 tcp framing
+        frameBuffer.flip();
+        while (frameBuffer.remaining() >= 2) {
+            final int length = frameBuffer.getShort(frameBuffer.position()) & 0xFFFF;
+            if (frameBuffer.remaining() < 2 + length) {
+                break;
+            }
+
+            frameBuffer.position(frameBuffer.position() + 2);
+            final byte[] message = new byte[length];
+            frameBuffer.get(message);
+
+            processDnsQuery(clientContext, message);
+        }
+        frameBuffer.compact();
+    }
+
+    private void processDnsQuery(final ServerClientContext clientContext,
+                                 final byte[] message) throws IOException {
+        final DnsMessage query = DnsMessage.parseQuery(message, message.length);
+        if (query == null) {
+            logger.warn("bad dns query");
+            return;
+        }
+
+        // only address lookups go through the resolver
+        final int type = query.getType();
+        if (query.getOpcode() != DnsMessage.OPCODE_QUERY
+                || query.getQuestionClass() != DnsMessage.CLASS_IN
+                || (type != DnsMessage.TYPE_A && type != DnsMessage.TYPE_AAAA)
+                || query.getName().isEmpty()) {
+            writeDnsResponse(clientContext, query.buildResponse(DnsMessage.RCODE_NOT_IMPLEMENTED, null, 0));
+            return;
+        }
+
+        final byte[] domain = query.getName().getBytes(StandardCharsets.US_ASCII);
+        resolver.resolve(domain, eventLoop, addresses -> processDnsResolved(clientContext, query, addresses));
+    }
+
+    private void processDnsResolved(final ServerClientContext clientContext,
+                                    final DnsMessage query,
+                                    final InetAddress[] addresses) {
+        if (clientContext.isClosed()) {
+            return;
+        }
+
+        try {
+            final int rcode = addresses != null ? DnsMessage.RCODE_NO_ERROR : DnsMessage.RCODE_SERVER_FAILURE;
+            writeDnsResponse(clientContext, query.buildResponse(rcode, addresses, dnsAnswerTtl));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle dns resolved exception: {}", msg != null ? msg : e.getClass().getName());
+            clientContext.close();
+        }
+    }
+
+    private void writeDnsResponse(final ServerClientContext clientContext,
+                                  final byte[] response) throws IOException {
+        dataBuffer.clear();
+        dataBuffer.putShort((short) response.length);
+        dataBuffer.put(response);
+        dataBuffer.flip();
+
+        // encrypt
+        encrypt(dataBuffer, cryptoBuffer, packetBuffer);
+
+        // write, a dropped response times out on the client
+        if (!writeOrQueue(clientContext, packetBuffer)) {
+            logger.warn("dns tunnel write buffer full, drop response");
+        }
+    }
+
+    private void processHikariMuxRead(final SelectionKey key,
+                                      final ServerClientContext clientContext) throws IOException {
+        final SocketChannel clientChannel = (SocketChannel) key.channel();
         final PacketContext packetContext = clientContext.getPacketContext();
-        final ServerTargetContext targetContext = clientContext.getTargetContext();
+        final HikariMuxSession muxSession = clientContext.getMuxSession();
+        clientContext.getIdleTimeout().touch(eventLoop.currentTime());
+
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!read(clientChannel, packetBuffer, clientContext)) {
+                return;
+            }
+            final int length = packetBuffer.remaining();
+            bufferFilled = length == packetBuffer.capacity();
 
-        cacheBuffer.clear();
-        while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
-            cacheBuffer.put(dataBuffer);
+            // decrypt, whole packets hold whole frames
+            cacheBuffer.clear();
+            while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+                cacheBuffer.put(dataBuffer);
+            }
+            cacheBuffer.flip();
+            clientContext.addTraffic(cacheBuffer.remaining());
+
+            while (cacheBuffer.hasRemaining()) {
+                if (cacheBuffer.remaining() < HikariProtocol.MUX_FRAME_HEADER_SIZE) {
+                    throw new HikariRuntimeException("bad mux frame");
+                }
+
+                final byte type = cacheBuffer.get();
+                final int id = cacheBuffer.getInt();
+                final int payloadLength = cacheBuffer.getShort() & 0xFFFF;
+                if (cacheBuffer.remaining() < payloadLength) {
+                    throw new HikariRuntimeException("bad mux frame");
+                }
+
+                final int limit = cacheBuffer.limit();
+                final int end = cacheBuffer.position() + payloadLength;
+                cacheBuffer.limit(end);
+                processMuxFrame(clientContext, muxSession, type, id, cacheBuffer);
+                cacheBuffer.limit(limit);
+                cacheBuffer.position(end);
+            }
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
+    }
+
+    private void processMuxFrame(final ServerClientContext clientContext,
+                                 final HikariMuxSession muxSession,
+                                 final byte type,
+                                 final int id,
+                                 final ByteBuffer payload) throws IOException {
+        if (type == HikariProtocol.MUX_FRAME_OPEN) {
+            processMuxOpen(clientContext, muxSession, id, payload);
+            return;
         }
-        cacheBuffer.flip();
 
-        // write
-        write(clientContext, targetContext, cacheBuffer);
+        // frames of a stream closed here meanwhile are dropped
+        final HikariMuxStream muxStream = muxSession.getStream(id);
+        if (muxStream == null) {
+            return;
+        }
+
+        // a failing target connection or a stream breaking its window only ends that stream
+        try {
+            switch (type) {
+                case HikariProtocol.MUX_FRAME_DATA:
+                    muxStream.deliver(payload);
+                    break;
+
+                case HikariProtocol.MUX_FRAME_WINDOW:
+                    muxStream.addWindow(payload.getInt());
+                    break;
+
+                case HikariProtocol.MUX_FRAME_CLOSE:
+                    muxStream.remoteClose();
+                    break;
+
+                default:
+                    throw new HikariRuntimeException(String.format("mux frame type '%s' not supported", type));
+            }
+        } catch (IOException | HikariRuntimeException e) {
+            logger.warn("mux stream {} reset, msg: {}", id, e.getMessage());
+            muxStream.close();
+        }
+    }
+
+    private void processMuxOpen(final ServerClientContext clientContext,
+                                final HikariMuxSession muxSession,
+                                final int id,
+                                final ByteBuffer payload) throws IOException {
+        final ServerMuxStream muxStream = new ServerMuxStream(id, muxSession);
+        if (!muxSession.addStream(muxStream)) {
+            throw new HikariRuntimeException(String.format("mux stream %d already open", id));
+        }
+
+        // address
+        final byte hikariAddressType = payload.get();
+        final byte[] domain;
+        final byte[] address;
+        if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_DOMAIN) {
+            final int length = payload.get() & 0xFF;
+            domain = new byte[length];
+            payload.get(domain, 0, length);
+
+            address = null;
+        }
+        else if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_IPV4) {
+            domain = null;
+            address = new byte[4];
+            payload.get(address, 0, 4);
+        }
+        else if (hikariAddressType == HikariProtocol.ADDRESS_TYPE_IPV6) {
+            domain = null;
+            address = new byte[16];
+            payload.get(address, 0, 16);
+        }
+        else {
+            throw new HikariRuntimeException(String.format("hikari address type '%s' not supported", hikariAddressType));
+        }
+
+        // port
+        final short port = payload.getShort();
+
+        if (domain != null) {
+            // resolve off the loop
+            resolver.resolve(domain, eventLoop, addresses -> processResolved(clientContext, muxStream, domain, addresses, port));
+            return;
+        }
+
+        try {
+            connectTarget(clientContext, muxStream, new InetAddress[]{InetAddress.getByAddress(address)}, port);
+        } catch (IOException e) {
+            logger.warn("mux stream connect exception, msg: {}", e.getMessage());
+            muxStream.close();
+        }
+    }
+
+    /**
+     * reply to an open frame, a stream that failed is dropped on both sides without close frames
+     */
+    private void writeMuxReply(final ServerMuxStream muxStream,
+                               final byte rsp,
+                               final byte bindHikariAddressType,
+                               final byte[] bindAddress,
+                               final short port) throws IOException {
+        dataBuffer.clear();
+        dataBuffer.put(rsp);
+        if (rsp == HikariProtocol.AUTH_RESPONSE_OK) {
+            dataBuffer.put(bindHikariAddressType);
+            dataBuffer.put(bindAddress);
+            dataBuffer.putShort(port);
+        }
+        dataBuffer.flip();
+
+        muxStream.getSession().writeFrame(HikariProtocol.MUX_FRAME_REPLY, muxStream.getId(), dataBuffer);
+        if (rsp != HikariProtocol.AUTH_RESPONSE_OK) {
+            muxStream.reset();
+        }
+    }
+
+    private void processHandshakeTimeout(final ServerClientContext clientContext) {
+        if (clientContext.isClosed()) {
+            return;
+        }
+
+        logger.debug("hikari auth timeout");
+        clientContext.close();
+    }
+
+    private void processConnectTimeout(final ServerClientContext clientContext,
+                                       final ServerMuxStream muxStream,
+                                       final ServerConnectRace connectRace) {
+        if (isConnectAbandoned(clientContext, muxStream) || getConnectRace(clientContext, muxStream) != connectRace) {
+            return;
+        }
+
+        logger.warn("connect to target timeout");
+        for (ServerTargetContext attempt : connectRace.getAttemptList()) {
+            circuitBreaker.recordFailure(attempt.getTargetAddress(), eventLoop.currentTime());
+        }
+        connectRace.abandon(null);
+        setConnectRace(clientContext, muxStream, null);
+
+        try {
+            writeConnectFail(HikariProtocol.AUTH_RESPONSE_CONNECT_TARGET_FAIL, clientContext, muxStream);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            logger.warn("handle connect timeout exception: {}", msg != null ? msg : e.getClass().getName());
+            closeConnect(clientContext, muxStream);
+        }
+    }
+
+    private void processHikariProxyRead(final SelectionKey key,
+                                        final ServerClientContext clientContext) throws IOException {
+        final SocketChannel clientChannel = (SocketChannel) key.channel();
+        final PacketContext packetContext = clientContext.getPacketContext();
+        final ServerTargetContext targetContext = clientContext.getTargetContext();
+        clientContext.getIdleTimeout().touch(eventLoop.currentTime());
+
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!read(clientChannel, packetBuffer, clientContext)) {
+                return;
+            }
+            final int length = packetBuffer.remaining();
+            bufferFilled = length == packetBuffer.capacity();
+
+            // decrypt
+            cacheBuffer.clear();
+            while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+                cacheBuffer.put(dataBuffer);
+            }
+            cacheBuffer.flip();
+            clientContext.addTraffic(cacheBuffer.remaining());
+
+            // write
+            write(clientContext, targetContext, cacheBuffer);
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
+    }
+
+    private void processHikariBondRead(final SelectionKey key,
+                                       final ServerClientContext clientContext) throws IOException {
+        final SocketChannel clientChannel = (SocketChannel) key.channel();
+        final PacketContext packetContext = clientContext.getPacketContext();
+        final ServerBond bond = clientContext.getBond();
+        bond.getLeader().getIdleTimeout().touch(eventLoop.currentTime());
+
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!read(clientChannel, packetBuffer, clientContext)) {
+                return;
+            }
+            final int length = packetBuffer.remaining();
+            bufferFilled = length == packetBuffer.capacity();
+
+            // decrypt, a packet holds a frame
+            while (decrypt(packetBuffer, cryptoBuffer, dataBuffer, packetContext)) {
+                bond.receive(clientContext, dataBuffer);
+            }
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
     }
 
     private void processTargetRead(final SelectionKey key,
                                    final ServerTargetContext targetContext) throws IOException {
         final SocketChannel targetChannel = (SocketChannel) key.channel();
-        if (!read(targetChannel, dataBuffer, targetContext)) {
+        final ServerClientContext clientContext = targetContext.getClientContext();
+        clientContext.getIdleTimeout().touch(eventLoop.currentTime());
+
+        if (targetContext.getMuxStream() != null) {
+            readMuxStream(key, targetContext.getMuxStream(), streamBuffer);
+            return;
+        }
+        else if (clientContext.getBond() != null) {
+            readBondStream(key, clientContext.getBond(), streamBuffer);
             return;
         }
 
-        // encrypt
-        encrypt(dataBuffer, cryptoBuffer, packetBuffer);
+        final int frameSize = clientContext.getFrameSize();
+        int reads = 0;
+        long bytes = 0;
+        boolean bufferFilled;
+        do {
+            if (!read(targetChannel, dataBuffer, frameSize, targetContext)) {
+                return;
+            }
+            final int length = dataBuffer.remaining();
+            bufferFilled = length == frameSize;
+            clientContext.addTraffic(length);
 
-        // write
-        final ServerClientContext clientContext = targetContext.getClientContext();
-        write(targetContext, clientContext, packetBuffer);
+            // encrypt
+            encrypt(dataBuffer, cryptoBuffer, packetBuffer);
+
+            // write
+            write(targetContext, clientContext, packetBuffer);
+
+            reads++;
+            bytes += length;
+        } while (continueReading(key, reads, bytes, bufferFilled));
+    }
+
+    /**
+     * version and reply, an ok response to a hikari2 request also carries the agreed options
+     */
+    private void putResponseHeader(final ServerClientContext clientContext, final byte rsp) {
+        final HikariCapability capability = clientContext.getCapability();
+        if (capability == null) {
+            dataBuffer.put(HikariProtocol.VERSION_HIKARI1);
+            dataBuffer.put(rsp);
+            return;
+        }
+
+        dataBuffer.put(HikariProtocol.VERSION_HIKARI2);
+        dataBuffer.put(rsp);
+        if (rsp == HikariProtocol.AUTH_RESPONSE_OK) {
+            capability.write(dataBuffer);
+        }
     }
 
     private void writeHikariFail(final byte rsp,
                                  final SocketChannel channel,
-                                 final ServerContext context) throws IOException {
+                                 final ServerClientContext clientContext) throws IOException {
         dataBuffer.clear();
-        dataBuffer.put(HikariProtocol.VERSION_HIKARI1);
-        dataBuffer.put(rsp);
+        putResponseHeader(clientContext, rsp);
         dataBuffer.flip();
 
         // encrypt
@@ -377,6 +1237,6 @@ public class ServerHandler extends HikariAbstractHandle {
             logger.warn("send hikari auth response fail");
         }
 
-        context.close();
+        clientContext.close();
     }
 }
@@ -0,0 +1,36 @@
+package com.github.yukinomiu.hikari.server;
+
+import com.github.yukinomiu.hikari.common.HikariMuxSession;
+import com.github.yukinomiu.hikari.common.HikariMuxStream;
+
+/**
+ * stream of a mux session, connected to its own target
+ * <p>
+ * Yukinomiu
+ * 2018/2/17
+ */
+public class ServerMuxStream extends HikariMuxStream {
+    private ServerConnectRace connectRace;
+
+    public ServerMuxStream(final int id, final HikariMuxSession session) {
+        super(id, session);
+    }
+
+    @Override
+    public void close() {
+        if (connectRace != null) {
+            connectRace.abandon(null);
+            connectRace = null;
+        }
+
+        super.close();
+    }
+
+    public ServerConnectRace getConnectRace() {
+        return connectRace;
+    }
+
+    public void setConnectRace(ServerConnectRace connectRace) {
+        this.connectRace = connectRace;
+    }
+}
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 
@@ -16,12 +17,21 @@ public class ServerTargetContext extends ServerContext {
     private boolean closed = false;
 
     private final ServerClientContext clientContext;
+    private final InetSocketAddress targetAddress;
+    private ServerEgressPool.Source egressSource;
+
+    // stream of a mux session, null when the client connection is the target's own
+    private final ServerMuxStream muxStream;
 
     public ServerTargetContext(final SelectionKey key,
                                final Integer bufferSize,
-                               final ServerClientContext clientContext) {
+                               final ServerClientContext clientContext,
+                               final InetSocketAddress targetAddress,
+                               final ServerMuxStream muxStream) {
         super(ServerContextType.TARGET, key, bufferSize);
         this.clientContext = clientContext;
+        this.targetAddress = targetAddress;
+        this.muxStream = muxStream;
     }
 
     @Override
@@ -30,6 +40,7 @@ public class ServerTargetContext extends ServerContext {
             return;
         }
         closed = true;
+        releaseEgressSource();
 
         final SelectionKey key = key();
         if (key != null) {
@@ -43,12 +54,59 @@ public class ServerTargetContext extends ServerContext {
             }
         }
 
-        if (clientContext != null) {
+        // a mux session outlives its streams
+        if (muxStream != null) {
+            muxStream.close();
+        }
+        else if (clientContext != null) {
             clientContext.close();
         }
     }
 
+    /**
+     * close a losing connect attempt, the client stays open
+     */
+    public void abandon() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        releaseEgressSource();
+
+        final SelectionKey key = key();
+        key.cancel();
+
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            logger.warn("close target socket channel exception, msg: {}", e.getMessage());
+        }
+    }
+
     public ServerClientContext getClientContext() {
         return clientContext;
     }
+
+    public InetSocketAddress getTargetAddress() {
+        return targetAddress;
+    }
+
+    public ServerMuxStream getMuxStream() {
+        return muxStream;
+    }
+
+    public ServerEgressPool.Source getEgressSource() {
+        return egressSource;
+    }
+
+    public void setEgressSource(ServerEgressPool.Source egressSource) {
+        this.egressSource = egressSource;
+    }
+
+    private void releaseEgressSource() {
+        if (egressSource != null) {
+            egressSource.release();
+            egressSource = null;
+        }
+    }
 }
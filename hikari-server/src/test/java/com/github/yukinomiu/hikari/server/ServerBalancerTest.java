@@ -0,0 +1,225 @@
+package com.github.yukinomiu.hikari.server;
+
+import com.github.yukinomiu.hikari.common.HikariEventLoop;
+import com.github.yukinomiu.hikari.common.HikariStatus;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * pairs relaying data on one of two loops
+ * <p>
+ * Yukinomiu
+ * 2018/2/20
+ */
+public class ServerBalancerTest {
+    private static final int INTERVAL = 200;
+    private static final int IDLE_TIMEOUT = 1000;
+
+    private ServerTestSupport support;
+    private ServerTestSupport.EchoTarget target;
+    private ServerBalancer balancer;
+    private HikariEventLoop busyLoop;
+    private HikariEventLoop idleLoop;
+
+    @Before
+    public void setUp() throws IOException {
+        final ServerConfig config = ServerTestSupport.config(2);
+        config.setIdleTimeout(IDLE_TIMEOUT);
+
+        support = new ServerTestSupport(config);
+        target = new ServerTestSupport.EchoTarget();
+        busyLoop = support.loops()[0];
+        idleLoop = support.loops()[1];
+
+        balancer = new ServerBalancer(support.loops(), INTERVAL);
+        balancer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        balancer.stop();
+        support.close();
+        target.close();
+    }
+
+    @Test
+    public void testHeaviestPairMigrates() throws Exception {
+        final Pump first = new Pump(support.connectTarget(busyLoop, target.getAddress()));
+        final Pump second = new Pump(support.connectTarget(busyLoop, target.getAddress()));
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (proxyPorts(idleLoop).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        // one pair moved with its target, the other one stayed
+        final Set<Integer> movedPorts = proxyPorts(idleLoop);
+        Assert.assertEquals(1, movedPorts.size());
+        Assert.assertEquals(1, proxyPorts(busyLoop).size());
+        Assert.assertEquals(1, targetCount(idleLoop));
+        Assert.assertEquals(1, targetCount(busyLoop));
+
+        // both still relay, nothing lost or reordered on the way
+        final long firstBytes = first.verifiedBytes.get();
+        final long secondBytes = second.verifiedBytes.get();
+        Thread.sleep(500);
+        Assert.assertTrue(first.verifiedBytes.get() > firstBytes);
+        Assert.assertTrue(second.verifiedBytes.get() > secondBytes);
+        Assert.assertFalse(first.corrupted);
+        Assert.assertFalse(second.corrupted);
+
+        // one pair per loop is balanced, neither moves again
+        Thread.sleep(INTERVAL * 6);
+        Assert.assertEquals(movedPorts, proxyPorts(idleLoop));
+        Assert.assertEquals(1, proxyPorts(busyLoop).size());
+
+        // the idle timeout runs on the new loop
+        final Pump moved = movedPorts.contains(first.socket.getLocalPort()) ? first : second;
+        final Pump stayed = moved == first ? second : first;
+        moved.stop();
+        moved.reader.join(IDLE_TIMEOUT * 5);
+        Assert.assertTrue(moved.closed);
+        Assert.assertFalse(stayed.closed);
+
+        stayed.stop();
+        stayed.socket.close();
+    }
+
+    @Test
+    public void testSinglePairStays() throws Exception {
+        // moving the only busy pair would just swap the loops
+        final Pump pump = new Pump(support.connectTarget(busyLoop, target.getAddress()));
+        Thread.sleep(INTERVAL * 8);
+
+        Assert.assertTrue(proxyPorts(idleLoop).isEmpty());
+        Assert.assertEquals(1, proxyPorts(busyLoop).size());
+        Assert.assertTrue(pump.verifiedBytes.get() > 0);
+        Assert.assertFalse(pump.corrupted);
+
+        pump.stop();
+        pump.socket.close();
+    }
+
+    /**
+     * ports of the proxied client connections registered on the loop, read on the loop
+     */
+    private static Set<Integer> proxyPorts(final HikariEventLoop loop) throws Exception {
+        final CompletableFuture<Set<Integer>> future = new CompletableFuture<>();
+        loop.execute(() -> {
+            final Set<Integer> ports = new HashSet<>();
+            for (SelectionKey key : loop.getSelector().keys()) {
+                final Object attachment = key.attachment();
+                if (key.isValid() && attachment instanceof ServerClientContext
+                        && ((ServerClientContext) attachment).getStatus() == HikariStatus.HIKARI_PROXY) {
+                    ports.add(((SocketChannel) key.channel()).socket().getPort());
+                }
+            }
+            future.complete(ports);
+        });
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    private static int targetCount(final HikariEventLoop loop) throws Exception {
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        loop.execute(() -> {
+            int count = 0;
+            for (SelectionKey key : loop.getSelector().keys()) {
+                if (key.isValid() && key.attachment() instanceof ServerTargetContext) {
+                    count++;
+                }
+            }
+            future.complete(count);
+        });
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * writes a running byte pattern as fast as the pair takes it and checks what comes back
+     */
+    private static class Pump {
+        private static final int CHUNK_SIZE = 2000;
+
+        private final Socket socket;
+        private final Thread writer;
+        private final Thread reader;
+        private final AtomicLong verifiedBytes = new AtomicLong();
+
+        private volatile boolean running = true;
+        private volatile boolean corrupted;
+        private volatile boolean closed;
+
+        private Pump(final Socket socket) {
+            this.socket = socket;
+
+            writer = new Thread(this::write, "pump-writer");
+            writer.setDaemon(true);
+            writer.start();
+
+            reader = new Thread(this::read, "pump-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void stop() throws InterruptedException {
+            running = false;
+            writer.join(5000);
+        }
+
+        private void write() {
+            try {
+                final OutputStream out = socket.getOutputStream();
+                final byte[] chunk = new byte[CHUNK_SIZE];
+                long offset = 0;
+                while (running) {
+                    for (int i = 0; i < CHUNK_SIZE; i++) {
+                        chunk[i] = pattern(offset + i);
+                    }
+                    ServerTestSupport.writePacket(out, chunk, 0, CHUNK_SIZE);
+                    offset += CHUNK_SIZE;
+                }
+            } catch (IOException e) {
+                // connection gone
+            }
+        }
+
+        private void read() {
+            try {
+                final DataInputStream in = new DataInputStream(socket.getInputStream());
+                long offset = 0;
+                byte[] data;
+                while ((data = ServerTestSupport.readPacket(in)) != null) {
+                    for (byte b : data) {
+                        if (b != pattern(offset++)) {
+                            corrupted = true;
+                        }
+                    }
+                    verifiedBytes.addAndGet(data.length);
+                }
+                closed = true;
+            } catch (SocketTimeoutException e) {
+                // still open
+            } catch (IOException e) {
+                closed = true;
+            }
+        }
+
+        private static byte pattern(final long offset) {
+            return (byte) (offset % 251);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.yukinomiu.hikari.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Yukinomiu
+ * 2018/2/14
+ */
+public class ServerCircuitBreakerTest {
+    private static final int THRESHOLD = 3;
+    private static final int COOL_DOWN_MILLIS = 1000;
+    private static final long COOL_DOWN = TimeUnit.MILLISECONDS.toNanos(COOL_DOWN_MILLIS);
+
+    private static final InetSocketAddress FIRST = new InetSocketAddress("10.0.0.1", 80);
+    private static final InetSocketAddress SECOND = new InetSocketAddress("10.0.0.2", 80);
+    private static final InetSocketAddress THIRD = new InetSocketAddress("10.0.0.3", 80);
+
+    private ServerCircuitBreaker open(final InetSocketAddress address, final long now) {
+        final ServerCircuitBreaker breaker = new ServerCircuitBreaker(THRESHOLD, COOL_DOWN_MILLIS, 16);
+        for (int i = 0; i < THRESHOLD; i++) {
+            breaker.recordFailure(address, now);
+        }
+        return breaker;
+    }
+
+    @Test
+    public void testOpenAfterThreshold() {
+        final ServerCircuitBreaker breaker = new ServerCircuitBreaker(THRESHOLD, COOL_DOWN_MILLIS, 16);
+        for (int i = 1; i < THRESHOLD; i++) {
+            breaker.recordFailure(FIRST, 0);
+            Assert.assertTrue(breaker.allow(FIRST, 0));
+        }
+
+        breaker.recordFailure(FIRST, 0);
+        Assert.assertFalse(breaker.allow(FIRST, 0));
+        Assert.assertFalse(breaker.allow(FIRST, COOL_DOWN - 1));
+        Assert.assertEquals(2, breaker.getRefuseCount());
+
+        // other destinations are not affected
+        Assert.assertTrue(breaker.allow(SECOND, 0));
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        final ServerCircuitBreaker breaker = new ServerCircuitBreaker(THRESHOLD, COOL_DOWN_MILLIS, 16);
+        for (int i = 1; i < THRESHOLD; i++) {
+            breaker.recordFailure(FIRST, 0);
+        }
+        breaker.recordSuccess(FIRST);
+
+        breaker.recordFailure(FIRST, 0);
+        Assert.assertTrue(breaker.allow(FIRST, 0));
+    }
+
+    @Test
+    public void testHalfOpenSingleProbe() {
+        final ServerCircuitBreaker breaker = open(FIRST, 0);
+
+        // one probe after the cool down, the others wait for it
+        Assert.assertTrue(breaker.allow(FIRST, COOL_DOWN));
+        Assert.assertFalse(breaker.allow(FIRST, COOL_DOWN));
+        Assert.assertFalse(breaker.allow(FIRST, COOL_DOWN + COOL_DOWN / 2));
+    }
+
+    @Test
+    public void testProbeSuccessCloses() {
+        final ServerCircuitBreaker breaker = open(FIRST, 0);
+        Assert.assertTrue(breaker.allow(FIRST, COOL_DOWN));
+
+        breaker.recordSuccess(FIRST);
+        Assert.assertTrue(breaker.allow(FIRST, COOL_DOWN));
+        Assert.assertTrue(breaker.allow(FIRST, COOL_DOWN));
+    }
+
+    @Test
+    public void testProbeFailureReopens() {
+        final ServerCircuitBreaker breaker = open(FIRST, 0);
+        Assert.assertTrue(breaker.allow(FIRST, COOL_DOWN));
+
+        // a single failure of the probe opens it again for a full cool down
+        final long failTime = COOL_DOWN + 10;
+        breaker.recordFailure(FIRST, failTime);
+        Assert.assertFalse(breaker.allow(FIRST, failTime + COOL_DOWN - 1));
+        Assert.assertTrue(breaker.allow(FIRST, failTime + COOL_DOWN));
+    }
+
+    @Test
+    public void testLostProbe() {
+        final ServerCircuitBreaker breaker = open(FIRST, 0);
+        Assert.assertTrue(breaker.allow(FIRST, COOL_DOWN));
+
+        // the probe never reported, the next one passes after another cool down
+        Assert.assertFalse(breaker.allow(FIRST, 2 * COOL_DOWN - 1));
+        Assert.assertTrue(breaker.allow(FIRST, 2 * COOL_DOWN));
+    }
+
+    @Test
+    public void testLateFailureIgnoredWhileOpen() {
+        final ServerCircuitBreaker breaker = open(FIRST, 0);
+
+        // attempts started before the breaker opened do not extend the cool down
+        breaker.recordFailure(FIRST, COOL_DOWN / 2);
+        Assert.assertTrue(breaker.allow(FIRST, COOL_DOWN));
+    }
+
+    @Test
+    public void testEviction() {
+        final ServerCircuitBreaker breaker = new ServerCircuitBreaker(1, COOL_DOWN_MILLIS, 2);
+        breaker.recordFailure(FIRST, 0);
+        breaker.recordFailure(SECOND, 0);
+        Assert.assertFalse(breaker.allow(FIRST, 0));
+
+        // least recently used entry goes first, the refused lookup above touched the first
+        breaker.recordFailure(THIRD, 0);
+        Assert.assertFalse(breaker.allow(FIRST, 0));
+        Assert.assertTrue(breaker.allow(SECOND, 0));
+        Assert.assertFalse(breaker.allow(THIRD, 0));
+    }
+
+    @Test
+    public void testDisabled() {
+        final ServerCircuitBreaker breaker = new ServerCircuitBreaker(0, COOL_DOWN_MILLIS, 16);
+        Assert.assertFalse(breaker.isEnabled());
+
+        for (int i = 0; i < 10; i++) {
+            breaker.recordFailure(FIRST, 0);
+        }
+        Assert.assertTrue(breaker.allow(FIRST, 0));
+        Assert.assertEquals(0, breaker.getRefuseCount());
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.yukinomiu.hikari.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Yukinomiu
+ * 2018/2/13
+ */
+public class ServerConnectRaceTest {
+    private static final short PORT = 443;
+
+    private static InetAddress address(final String address) throws IOException {
+        return InetAddress.getByName(address);
+    }
+
+    @Test
+    public void testInterleaveIpv6First() throws IOException {
+        final InetAddress[] addresses = {
+                address("2001:db8::1"), address("2001:db8::2"), address("2001:db8::3"),
+                address("192.0.2.1"), address("192.0.2.2")
+        };
+
+        final ServerConnectRace race = new ServerConnectRace(addresses, PORT);
+        final InetAddress[] expected = {
+                addresses[0], addresses[3], addresses[1], addresses[4], addresses[2]
+        };
+        for (InetAddress address : expected) {
+            Assert.assertTrue(race.hasNext());
+            Assert.assertEquals(new InetSocketAddress(address, PORT), race.next());
+        }
+        Assert.assertFalse(race.hasNext());
+        Assert.assertEquals(expected.length, race.getStartedCount());
+    }
+
+    @Test
+    public void testInterleaveIpv4First() throws IOException {
+        // the family the resolver put first starts, whatever order the rest came in
+        final InetAddress[] addresses = {
+                address("192.0.2.1"), address("2001:db8::1"), address("192.0.2.2"), address("192.0.2.3"), address("2001:db8::2")
+        };
+
+        final InetAddress[] expected = {
+                addresses[0], addresses[1], addresses[2], addresses[4], addresses[3]
+        };
+        Assert.assertArrayEquals(expected, ServerConnectRace.interleave(addresses));
+    }
+
+    @Test
+    public void testShortListKept() throws IOException {
+        final InetAddress[] addresses = {address("192.0.2.1"), address("192.0.2.2")};
+        Assert.assertArrayEquals(addresses, ServerConnectRace.interleave(addresses));
+    }
+
+    @Test
+    public void testHighPort() throws IOException {
+        final ServerConnectRace race = new ServerConnectRace(new InetAddress[]{address("192.0.2.1")}, (short) 50000);
+        Assert.assertEquals(50000, race.next().getPort());
+    }
+
+    @Test
+    public void testAbandonClosesLosers() throws IOException {
+        final ServerConnectRace race = new ServerConnectRace(new InetAddress[]{address("192.0.2.1"), address("2001:db8::1")}, PORT);
+
+        try (Selector selector = Selector.open()) {
+            final SocketChannel[] channels = new SocketChannel[3];
+            final ServerTargetContext[] attempts = new ServerTargetContext[3];
+            for (int i = 0; i < attempts.length; i++) {
+                channels[i] = SocketChannel.open();
+                channels[i].configureBlocking(false);
+                final SelectionKey key = channels[i].register(selector, SelectionKey.OP_CONNECT);
+                attempts[i] = new ServerTargetContext(key, 2048, null, null, null);
+                race.addAttempt(attempts[i]);
+            }
+
+            race.abandon(attempts[1]);
+            Assert.assertFalse(race.hasAttempts());
+
+            Assert.assertTrue(channels[1].isOpen());
+            Assert.assertTrue(attempts[1].key().isValid());
+            for (int i : new int[]{0, 2}) {
+                Assert.assertFalse(channels[i].isOpen());
+                Assert.assertFalse(attempts[i].key().isValid());
+            }
+
+            // no winner, the remaining attempts are closed as well
+            final ServerConnectRace timedOut = new ServerConnectRace(new InetAddress[]{address("192.0.2.1")}, PORT);
+            timedOut.addAttempt(attempts[1]);
+            timedOut.abandon(null);
+            Assert.assertFalse(channels[1].isOpen());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.yukinomiu.hikari.server;
+
+import com.github.yukinomiu.hikari.common.exception.HikariRuntimeException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Yukinomiu
+ * 2018/2/15
+ */
+public class ServerEgressPoolTest {
+    private static final List<String> ADDRESS_LIST = Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3", "fd00::1");
+
+    private static final InetSocketAddress TARGET = new InetSocketAddress("192.168.0.1", 80);
+    private static final InetSocketAddress IPV6_TARGET = new InetSocketAddress("2001:db8::1", 443);
+
+    @Test
+    public void testRoundRobin() throws UnknownHostException {
+        final ServerEgressPool pool = new ServerEgressPool(ADDRESS_LIST, ServerEgressPool.SELECTION_ROUND_ROBIN);
+
+        // the same destination goes over every address in turn
+        final String[] expected = {"10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.1", "10.0.0.2", "10.0.0.3"};
+        for (String address : expected) {
+            Assert.assertEquals(address, pool.acquire(TARGET).getAddress().getHostAddress());
+        }
+    }
+
+    @Test
+    public void testRoundRobinDefault() throws UnknownHostException {
+        final ServerEgressPool pool = new ServerEgressPool(ADDRESS_LIST, null);
+
+        final ServerEgressPool.Source first = pool.acquire(TARGET);
+        final ServerEgressPool.Source second = pool.acquire(TARGET);
+        Assert.assertNotSame(first, second);
+    }
+
+    @Test
+    public void testHash() throws UnknownHostException {
+        final ServerEgressPool pool = new ServerEgressPool(ADDRESS_LIST, ServerEgressPool.SELECTION_HASH);
+
+        // a destination stays on its address
+        final ServerEgressPool.Source source = pool.acquire(TARGET);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertSame(source, pool.acquire(TARGET));
+        }
+
+        // different destinations are spread over the addresses
+        final Set<ServerEgressPool.Source> used = new HashSet<>();
+        for (int i = 0; i < 64; i++) {
+            used.add(pool.acquire(new InetSocketAddress("192.168.1." + i, 80 + i)));
+        }
+        Assert.assertEquals(3, used.size());
+    }
+
+    @Test
+    public void testFamily() throws UnknownHostException {
+        final ServerEgressPool pool = new ServerEgressPool(ADDRESS_LIST, ServerEgressPool.SELECTION_ROUND_ROBIN);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals("fd00:0:0:0:0:0:0:1", pool.acquire(IPV6_TARGET).getAddress().getHostAddress());
+        }
+
+        // a target without an address of its family is left to the kernel
+        final ServerEgressPool ipv4Pool = new ServerEgressPool(Arrays.asList("10.0.0.1"), ServerEgressPool.SELECTION_ROUND_ROBIN);
+        Assert.assertNull(ipv4Pool.acquire(IPV6_TARGET));
+        Assert.assertNotNull(ipv4Pool.acquire(TARGET));
+    }
+
+    @Test
+    public void testCount() throws UnknownHostException {
+        final ServerEgressPool pool = new ServerEgressPool(Arrays.asList("10.0.0.1"), ServerEgressPool.SELECTION_ROUND_ROBIN);
+
+        final ServerEgressPool.Source source = pool.acquire(TARGET);
+        pool.acquire(TARGET);
+        pool.acquire(TARGET);
+        Assert.assertEquals(3, source.getActiveCount());
+        Assert.assertEquals(3, source.getTotalCount());
+
+        // released connections leave the active count only
+        source.release();
+        source.release();
+        Assert.assertEquals(1, source.getActiveCount());
+        Assert.assertEquals(3, source.getTotalCount());
+
+        pool.acquire(TARGET);
+        Assert.assertEquals(2, source.getActiveCount());
+        Assert.assertEquals(4, source.getTotalCount());
+    }
+
+    @Test
+    public void testEmpty() throws UnknownHostException {
+        final ServerEgressPool pool = new ServerEgressPool(null, null);
+        Assert.assertTrue(pool.isEmpty());
+        Assert.assertNull(pool.acquire(TARGET));
+        Assert.assertFalse(new ServerEgressPool(ADDRESS_LIST, null).isEmpty());
+    }
+
+    @Test(expected = HikariRuntimeException.class)
+    public void testUnknownSelection() throws UnknownHostException {
+        new ServerEgressPool(ADDRESS_LIST, "random");
+    }
+}
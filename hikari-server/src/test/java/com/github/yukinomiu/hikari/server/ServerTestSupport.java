@@ -0,0 +1,217 @@
+package com.github.yukinomiu.hikari.server;
+
+import com.github.yukinomiu.hikari.common.HikariEventLoop;
+import com.github.yukinomiu.hikari.common.HikariEventLoopGroup;
+import com.github.yukinomiu.hikari.common.HikariResolver;
+import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
+import com.github.yukinomiu.hikari.common.util.Md5Util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * worker loops of a server without its listen channels, connections are handed to a chosen loop.
+ * the client side speaks hikari1 with plain crypto
+ * <p>
+ * Yukinomiu
+ * 2018/2/20
+ */
+class ServerTestSupport implements AutoCloseable {
+    static final String PRIVATE_KEY = "hikari";
+    static final int BUFFER_SIZE = 2048;
+
+    private final HikariResolver resolver;
+    private final HikariEventLoopGroup workerGroup;
+    private final ServerSocketChannel acceptChannel;
+
+    ServerTestSupport(final ServerConfig config) throws IOException {
+        resolver = new HikariResolver("test-resolver", config);
+        final ServerCircuitBreaker circuitBreaker = new ServerCircuitBreaker(0, 0, 16);
+        final ServerEgressPool egressPool = new ServerEgressPool(null, null);
+        final Map<Long, ServerBond> bondMap = new ConcurrentHashMap<>();
+
+        final int workerCount = config.getWorkerCount() != null ? config.getWorkerCount() : 1;
+        workerGroup = new HikariEventLoopGroup("test-worker", workerCount, config, loop -> new ServerHandler(config, resolver, circuitBreaker, egressPool, bondMap, loop));
+        workerGroup.start();
+
+        acceptChannel = ServerSocketChannel.open();
+        acceptChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    static ServerConfig config(final int workerCount) {
+        final ServerConfig config = new ServerConfig();
+        config.setWorkerCount(workerCount);
+        config.setPrivateKeyList(Collections.singletonList(PRIVATE_KEY));
+        config.setBufferSize(BUFFER_SIZE);
+        config.setEncryptType("plain");
+        config.setSecret("hikari-secret");
+        return config;
+    }
+
+    HikariEventLoop[] loops() {
+        return workerGroup.loops();
+    }
+
+    /**
+     * a client connection served by the loop
+     */
+    Socket connect(final HikariEventLoop loop) throws IOException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), acceptChannel.socket().getLocalPort());
+        socket.setSoTimeout(5000);
+
+        final SocketChannel channel = acceptChannel.accept();
+        loop.register(channel);
+        return socket;
+    }
+
+    /**
+     * a client connection proxied to the target, the ok response is read
+     */
+    Socket connectTarget(final HikariEventLoop loop, final InetSocketAddress target) throws IOException {
+        final Socket socket = connect(loop);
+        writeAuthRequest(socket.getOutputStream(), target);
+
+        final byte[] response = readPacket(new DataInputStream(socket.getInputStream()));
+        if (response == null || response[1] != HikariProtocol.AUTH_RESPONSE_OK) {
+            socket.close();
+            throw new IOException("hikari auth fail");
+        }
+        return socket;
+    }
+
+    @Override
+    public void close() throws IOException {
+        acceptChannel.close();
+        workerGroup.stop();
+        workerGroup.close();
+        resolver.stop();
+    }
+
+    static void writeAuthRequest(final OutputStream out, final InetSocketAddress target) throws IOException {
+        final ByteBuffer request = ByteBuffer.allocate(1 + 16 + 1 + 4 + 2);
+        request.put(HikariProtocol.VERSION_HIKARI1);
+        request.put(Md5Util.getInstance().md5(PRIVATE_KEY));
+        request.put(HikariProtocol.ADDRESS_TYPE_IPV4);
+        request.put(target.getAddress().getAddress());
+        request.putShort((short) target.getPort());
+        writePacket(out, request.array(), 0, request.position());
+    }
+
+    /**
+     * in one write, the server may read a request in one go
+     */
+    static void writePacket(final OutputStream out, final byte[] data, final int offset, final int length) throws IOException {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(data, offset, length);
+
+        final ByteBuffer packet = ByteBuffer.allocate(length + 6);
+        packet.putShort((short) (length + 4));
+        packet.putInt((int) crc32.getValue());
+        packet.put(data, offset, length);
+        out.write(packet.array());
+    }
+
+    /**
+     * data of the next packet, null at the end of the stream
+     */
+    static byte[] readPacket(final DataInputStream in) throws IOException {
+        final int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+
+        final int length = ((first << 8) | in.readUnsignedByte()) - 4;
+        in.readInt();
+        final byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    /**
+     * true when the server closed the connection within the time, data still arriving is skipped
+     */
+    static boolean awaitClose(final Socket socket, final long millis) throws IOException {
+        final long deadline = System.currentTimeMillis() + millis;
+        final InputStream in = socket.getInputStream();
+        final byte[] buffer = new byte[4096];
+        while (System.currentTimeMillis() < deadline) {
+            socket.setSoTimeout((int) Math.max(deadline - System.currentTimeMillis(), 1));
+            try {
+                if (in.read(buffer) == -1) {
+                    return true;
+                }
+            } catch (SocketTimeoutException e) {
+                return false;
+            } catch (IOException e) {
+                // reset by the server
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * blocking echo target
+     */
+    static class EchoTarget extends Thread implements AutoCloseable {
+        private final ServerSocket serverSocket;
+
+        EchoTarget() throws IOException {
+            super("echo-target");
+            setDaemon(true);
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            start();
+        }
+
+        InetSocketAddress getAddress() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    final Thread thread = new Thread(() -> echo(socket), "echo-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void echo(final Socket socket) {
+            try (Socket s = socket) {
+                final InputStream in = s.getInputStream();
+                final OutputStream out = s.getOutputStream();
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                // connection gone
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.yukinomiu.hikari.server;
+
+import com.github.yukinomiu.hikari.common.protocol.HikariProtocol;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * stalled connections of a server loop, each timeout on its own
+ * <p>
+ * Yukinomiu
+ * 2018/2/20
+ */
+public class ServerTimeoutTest {
+    private static final int TIMEOUT = 300;
+    private static final int WAIT = 5000;
+
+    private ServerTestSupport support;
+
+    @After
+    public void tearDown() throws IOException {
+        if (support != null) {
+            support.close();
+        }
+    }
+
+    private void start(final int connectTimeout, final int handshakeTimeout, final int idleTimeout) throws IOException {
+        final ServerConfig config = ServerTestSupport.config(1);
+        config.setConnectTimeout(connectTimeout);
+        config.setHandshakeTimeout(handshakeTimeout);
+        config.setIdleTimeout(idleTimeout);
+        support = new ServerTestSupport(config);
+    }
+
+    @Test
+    public void testHandshakeTimeout() throws IOException {
+        start(0, TIMEOUT, 0);
+
+        // connected, never sends the auth request
+        try (Socket socket = support.connect(support.loops()[0])) {
+            final long start = System.currentTimeMillis();
+            Assert.assertTrue(ServerTestSupport.awaitClose(socket, WAIT));
+            Assert.assertTrue(System.currentTimeMillis() - start >= TIMEOUT - 50);
+        }
+    }
+
+    @Test
+    public void testConnectTimeout() throws IOException {
+        start(TIMEOUT, 0, 0);
+
+        // a full accept queue drops further syns, a connect to it neither completes nor fails
+        try (ServerSocket target = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final InetSocketAddress targetAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), target.getLocalPort());
+            final List<SocketChannel> fillerList = new ArrayList<>();
+            try {
+                for (int i = 0; i < 8; i++) {
+                    final SocketChannel filler = SocketChannel.open();
+                    filler.configureBlocking(false);
+                    filler.connect(targetAddress);
+                    fillerList.add(filler);
+                }
+
+                try (Socket socket = support.connect(support.loops()[0])) {
+                    ServerTestSupport.writeAuthRequest(socket.getOutputStream(), targetAddress);
+
+                    final long start = System.currentTimeMillis();
+                    final byte[] response = ServerTestSupport.readPacket(new DataInputStream(socket.getInputStream()));
+                    Assert.assertNotNull(response);
+                    Assert.assertEquals(HikariProtocol.AUTH_RESPONSE_CONNECT_TARGET_FAIL, response[1]);
+                    Assert.assertTrue(System.currentTimeMillis() - start >= TIMEOUT - 50);
+                    Assert.assertTrue(ServerTestSupport.awaitClose(socket, WAIT));
+                }
+            } finally {
+                for (SocketChannel filler : fillerList) {
+                    filler.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIdleTimeout() throws IOException {
+        start(0, 0, TIMEOUT);
+
+        try (ServerTestSupport.EchoTarget target = new ServerTestSupport.EchoTarget();
+             Socket socket = support.connectTarget(support.loops()[0], target.getAddress())) {
+            final byte[] data = "hikari".getBytes();
+            ServerTestSupport.writePacket(socket.getOutputStream(), data, 0, data.length);
+            Assert.assertArrayEquals(data, ServerTestSupport.readPacket(new DataInputStream(socket.getInputStream())));
+
+            // the pair is up, nothing moves any more
+            final long start = System.currentTimeMillis();
+            Assert.assertTrue(ServerTestSupport.awaitClose(socket, WAIT));
+            Assert.assertTrue(System.currentTimeMillis() - start >= TIMEOUT - 50);
+        }
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        start(0, 0, 0);
+
+        try (Socket socket = support.connect(support.loops()[0])) {
+            Assert.assertFalse(ServerTestSupport.awaitClose(socket, TIMEOUT * 3));
+        }
+    }
+}